@@ -0,0 +1,229 @@
+-- Triggers de combined_flights con interruptor para la fusión en Java.
+--
+-- Con COMBINED_MERGE=true en el .env del ingestor Java, cada conexión del pool
+-- ejecuta SET @ingestor_combined_merge = 1 y el propio ingestor escribe
+-- combined_flights y fullyscraped_combined_flights con sentencias por lotes.
+-- Estos triggers son los de flights.sql con una única diferencia: no hacen nada
+-- en las sesiones que tienen esa variable, así que no duplican el trabajo del
+-- ingestor. El resto de escritores (tidy_flight_arrivals desde el scraper JS,
+-- consultas manuales) no la definen y siguen propagando como antes.
+--
+-- Aplicar una vez sobre la base de datos flights:
+--   mysql -u root -p flights < db/combined_merge_triggers.sql
+
+DROP TRIGGER IF EXISTS `trg_dyxml_arrivals_ai`;
+DROP TRIGGER IF EXISTS `trg_dyxml_arrivals_au`;
+DROP TRIGGER IF EXISTS `trg_combined_flights_ai`;
+DROP TRIGGER IF EXISTS `trg_combined_flights_au`;
+
+DELIMITER ;;
+CREATE TRIGGER `trg_dyxml_arrivals_ai` AFTER INSERT ON `dy_xml_arrivals` FOR EACH ROW BEGIN
+    IF @ingestor_combined_merge IS NULL THEN
+        INSERT INTO combined_flights (
+           unique_id, airline, flight_id, dom_int, schedule_time, arr_dep,
+           airport, status_code, status_time, belt, check_in, gate, dlayed,
+           last_update, sta
+        )
+        VALUES (
+           NEW.unique_id, NEW.airline, NEW.flight_id, NEW.dom_int, NEW.schedule_time,
+           NEW.arr_dep, NEW.airport, NEW.status_code, NEW.status_time, NEW.belt,
+           NEW.check_in, NEW.gate, NEW.dlayed, NEW.last_update, NEW.sta
+        )
+        ON DUPLICATE KEY UPDATE
+           airline       = NEW.airline,
+           dom_int       = NEW.dom_int,
+           schedule_time = NEW.schedule_time,
+           arr_dep       = NEW.arr_dep,
+           airport       = NEW.airport,
+           status_code   = NEW.status_code,
+           status_time   = NEW.status_time,
+           belt          = NEW.belt,
+           check_in      = NEW.check_in,
+           gate          = NEW.gate,
+           dlayed        = NEW.dlayed,
+           last_update   = NEW.last_update,
+           sta           = NEW.sta;
+    END IF;
+END;;
+
+CREATE TRIGGER `trg_dyxml_arrivals_au` AFTER UPDATE ON `dy_xml_arrivals` FOR EACH ROW BEGIN
+    IF @ingestor_combined_merge IS NULL THEN
+        INSERT INTO combined_flights (
+           unique_id, airline, flight_id, dom_int, schedule_time, arr_dep,
+           airport, status_code, status_time, belt, check_in, gate, dlayed,
+           last_update, sta
+        )
+        VALUES (
+           NEW.unique_id, NEW.airline, NEW.flight_id, NEW.dom_int, NEW.schedule_time,
+           NEW.arr_dep, NEW.airport, NEW.status_code, NEW.status_time, NEW.belt,
+           NEW.check_in, NEW.gate, NEW.dlayed, NEW.last_update, NEW.sta
+        )
+        ON DUPLICATE KEY UPDATE
+           airline       = NEW.airline,
+           dom_int       = NEW.dom_int,
+           schedule_time = NEW.schedule_time,
+           arr_dep       = NEW.arr_dep,
+           airport       = NEW.airport,
+           status_code   = NEW.status_code,
+           status_time   = NEW.status_time,
+           belt          = NEW.belt,
+           check_in      = NEW.check_in,
+           gate          = NEW.gate,
+           dlayed        = NEW.dlayed,
+           last_update   = NEW.last_update,
+           sta           = NEW.sta;
+    END IF;
+END;;
+
+CREATE TRIGGER `trg_combined_flights_ai` AFTER INSERT ON `combined_flights` FOR EACH ROW BEGIN
+    IF @ingestor_combined_merge IS NULL
+        AND NEW.status IS NOT NULL
+        AND NEW.status_time IS NOT NULL
+        AND NEW.stand IS NOT NULL
+        AND NEW.bag_transfer_status IS NOT NULL
+        AND NEW.tidy_updated_at IS NOT NULL
+        AND NEW.sta IS NOT NULL
+    THEN
+        INSERT INTO fullyscraped_combined_flights (
+          unique_id,
+          airline,
+          flight_id,
+          ac_reg,
+          dom_int,
+          schedule_time,
+          arr_dep,
+          airport,
+          status,
+          status_code,
+          status_time,
+          belt,
+          check_in,
+          gate,
+          stand,
+          bag_transfer_status,
+          dlayed,
+          last_update,
+          tidy_updated_at,
+          sta
+        )
+        VALUES (
+          NEW.unique_id,
+          NEW.airline,
+          NEW.flight_id,
+          NEW.ac_reg,
+          NEW.dom_int,
+          NEW.schedule_time,
+          NEW.arr_dep,
+          NEW.airport,
+          NEW.status,
+          NEW.status_code,
+          NEW.status_time,
+          NEW.belt,
+          NEW.check_in,
+          NEW.gate,
+          NEW.stand,
+          NEW.bag_transfer_status,
+          NEW.dlayed,
+          NEW.last_update,
+          NEW.tidy_updated_at,
+          NEW.sta
+        )
+        ON DUPLICATE KEY UPDATE
+          airline             = VALUES(airline),
+          flight_id           = VALUES(flight_id),
+          ac_reg              = VALUES(ac_reg),
+          dom_int             = VALUES(dom_int),
+          schedule_time       = VALUES(schedule_time),
+          arr_dep             = VALUES(arr_dep),
+          airport             = VALUES(airport),
+          status              = VALUES(status),
+          status_code         = VALUES(status_code),
+          status_time         = VALUES(status_time),
+          belt                = VALUES(belt),
+          check_in            = VALUES(check_in),
+          gate                = VALUES(gate),
+          stand               = VALUES(stand),
+          bag_transfer_status = VALUES(bag_transfer_status),
+          dlayed              = VALUES(dlayed),
+          last_update         = VALUES(last_update),
+          tidy_updated_at     = VALUES(tidy_updated_at),
+          sta                 = VALUES(sta);
+    END IF;
+END;;
+
+CREATE TRIGGER `trg_combined_flights_au` AFTER UPDATE ON `combined_flights` FOR EACH ROW BEGIN
+    IF @ingestor_combined_merge IS NULL
+        AND NEW.status IS NOT NULL
+        AND NEW.status_time IS NOT NULL
+        AND NEW.stand IS NOT NULL
+        AND NEW.bag_transfer_status IS NOT NULL
+        AND NEW.tidy_updated_at IS NOT NULL
+        AND NEW.sta IS NOT NULL
+    THEN
+        INSERT INTO fullyscraped_combined_flights (
+          unique_id,
+          airline,
+          flight_id,
+          ac_reg,
+          dom_int,
+          schedule_time,
+          arr_dep,
+          airport,
+          status,
+          status_code,
+          status_time,
+          belt,
+          check_in,
+          gate,
+          stand,
+          bag_transfer_status,
+          dlayed,
+          last_update,
+          tidy_updated_at,
+          sta
+        )
+        VALUES (
+          NEW.unique_id,
+          NEW.airline,
+          NEW.flight_id,
+          NEW.ac_reg,
+          NEW.dom_int,
+          NEW.schedule_time,
+          NEW.arr_dep,
+          NEW.airport,
+          NEW.status,
+          NEW.status_code,
+          NEW.status_time,
+          NEW.belt,
+          NEW.check_in,
+          NEW.gate,
+          NEW.stand,
+          NEW.bag_transfer_status,
+          NEW.dlayed,
+          NEW.last_update,
+          NEW.tidy_updated_at,
+          NEW.sta
+        )
+        ON DUPLICATE KEY UPDATE
+          airline             = VALUES(airline),
+          flight_id           = VALUES(flight_id),
+          ac_reg              = VALUES(ac_reg),
+          dom_int             = VALUES(dom_int),
+          schedule_time       = VALUES(schedule_time),
+          arr_dep             = VALUES(arr_dep),
+          airport             = VALUES(airport),
+          status              = VALUES(status),
+          status_code         = VALUES(status_code),
+          status_time         = VALUES(status_time),
+          belt                = VALUES(belt),
+          check_in            = VALUES(check_in),
+          gate                = VALUES(gate),
+          stand               = VALUES(stand),
+          bag_transfer_status = VALUES(bag_transfer_status),
+          dlayed              = VALUES(dlayed),
+          last_update         = VALUES(last_update),
+          tidy_updated_at     = VALUES(tidy_updated_at),
+          sta                 = VALUES(sta);
+    END IF;
+END;;
+DELIMITER ;
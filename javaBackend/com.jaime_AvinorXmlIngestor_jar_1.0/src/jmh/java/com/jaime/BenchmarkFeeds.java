@@ -0,0 +1,107 @@
+package com.jaime;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.h2.Driver;
+
+/**
+ * Utilidades comunes de los benchmarks: carga de los feeds grabados en
+ * <code>src/jmh/resources/feeds</code> y base de datos H2 embebida en modo
+ * MySQL.
+ * <p>
+ * Feeds disponibles (aeropuerto OSL, llegadas y salidas mezcladas):
+ * <ul>
+ * <li><b>osl-small</b>: 25 vuelos, un poll incremental típico.</li>
+ * <li><b>osl-typical</b>: 450 vuelos, un feed completo de un día
+ * normal.</li>
+ * <li><b>osl-peak</b>: 1500 vuelos, un día punta.</li>
+ * </ul>
+ * Los benchmarks no usan {@link Config} ni {@link Database}, que necesitan el
+ * <code>.env</code> y un MySQL real.
+ *
+ * @author Jaime Villalba
+ */
+final class BenchmarkFeeds {
+
+    private BenchmarkFeeds() {
+    }
+
+    /**
+     * @param name nombre del feed sin extensión (p. ej. osl-typical)
+     * @return el XML tal cual se grabó
+     */
+    static byte[] load(String name) throws IOException {
+        try (InputStream in = BenchmarkFeeds.class.getResourceAsStream("/feeds/" + name + ".xml")) {
+            if (in == null) {
+                throw new IOException("No existe el feed de prueba " + name);
+            }
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * @return los vuelos del feed, ya parseados
+     */
+    static List<AvinorFlight> flights(String name) throws Exception {
+        List<AvinorFlight> flights = new ArrayList<>();
+        AvinorXmlParser.parse(new ByteArrayInputStream(load(name)), flights::add);
+        return flights;
+    }
+
+    /**
+     * Abre una base de datos H2 en memoria con las tablas de llegadas
+     * (<code>avinor_xml_arrivals</code>, <code>dy_xml_arrivals</code> y
+     * <code>gate_history_arrivals</code>). La base vive mientras quede alguna
+     * conexión abierta.
+     */
+    static Connection openDatabase(String name) throws IOException, SQLException {
+        // El JAR sombreado sólo conserva el META-INF/services de un driver; se registra H2 a mano.
+        Driver.load();
+        Connection conn = DriverManager.getConnection("jdbc:h2:mem:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE");
+        try (InputStream in = BenchmarkFeeds.class.getResourceAsStream("/h2-schema.sql");
+                Statement stmt = conn.createStatement()) {
+            String ddl = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            for (String sql : ddl.split(";")) {
+                String trimmed = stripComments(sql);
+                if (!trimmed.isEmpty()) {
+                    stmt.execute(trimmed);
+                }
+            }
+        }
+        return conn;
+    }
+
+    /**
+     * Vacía las tablas de llegadas (el historial primero, por la clave
+     * foránea).
+     */
+    static void truncate(Connection conn) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(true);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM gate_history_arrivals");
+            stmt.execute("DELETE FROM dy_xml_arrivals");
+            stmt.execute("DELETE FROM avinor_xml_arrivals");
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static String stripComments(String sql) {
+        StringBuilder out = new StringBuilder();
+        for (String line : sql.split("\n")) {
+            if (!line.trim().startsWith("--")) {
+                out.append(line).append('\n');
+            }
+        }
+        return out.toString().trim();
+    }
+}
@@ -0,0 +1,74 @@
+package com.jaime;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Normalización de <code>schedule_time</code> (2025-01-16T10:00:00Z) para
+ * MySQL, sobre todo el lote de horas del feed típico:
+ * <ul>
+ * <li><b>replaceSplit</b>: los ingestores originales, que quitaban la "Z" y
+ * extraían la hora con <code>split("T")</code> para enviar ambas como
+ * texto.</li>
+ * <li><b>javaTime</b>: <code>Instant.parse</code> de java.time.</li>
+ * <li><b>avinorTime</b>: {@link AvinorTime#parseEpochSeconds(CharSequence)},
+ * lo que hace {@link AvinorXmlParser}.</li>
+ * </ul>
+ *
+ * @author Jaime Villalba
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NormalizeBenchmark {
+
+    private String[] scheduleTimes;
+
+    @Setup
+    public void setup() throws Exception {
+        List<AvinorFlight> flights = BenchmarkFeeds.flights("osl-typical");
+        scheduleTimes = new String[flights.size()];
+        for (int i = 0; i < scheduleTimes.length; i++) {
+            // Se reconstruye el valor crudo del feed a partir del vuelo ya parseado.
+            scheduleTimes[i] = AvinorTime.format(flights.get(i).getScheduleEpoch()) + "Z";
+        }
+    }
+
+    @Benchmark
+    public void replaceSplit(Blackhole bh) {
+        for (String raw : scheduleTimes) {
+            String scheduleTime = raw.replace("Z", "");
+            bh.consume(scheduleTime);
+            bh.consume(scheduleTime.contains("T") ? scheduleTime.split("T")[1] : scheduleTime);
+        }
+    }
+
+    @Benchmark
+    public void javaTime(Blackhole bh) {
+        for (String raw : scheduleTimes) {
+            bh.consume(Instant.parse(raw).getEpochSecond());
+        }
+    }
+
+    @Benchmark
+    public void avinorTime(Blackhole bh) {
+        for (String raw : scheduleTimes) {
+            bh.consume(AvinorTime.parseEpochSeconds(raw));
+        }
+    }
+}
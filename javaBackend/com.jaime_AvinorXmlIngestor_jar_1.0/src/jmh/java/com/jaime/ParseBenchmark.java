@@ -0,0 +1,109 @@
+package com.jaime;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Parseo de un feed completo: el árbol DOM con
+ * <code>getElementsByTagName</code> que usaban los ingestores originales
+ * frente al parser en streaming {@link AvinorXmlParser}.
+ *
+ * @author Jaime Villalba
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"osl-small", "osl-typical", "osl-peak"})
+    public String feed;
+
+    private byte[] xml;
+
+    @Setup
+    public void setup() throws Exception {
+        xml = BenchmarkFeeds.load(feed);
+    }
+
+    @Benchmark
+    public int stax(Blackhole bh) throws Exception {
+        return AvinorXmlParser.parse(new ByteArrayInputStream(xml), bh::consume);
+    }
+
+    /**
+     * Reproduce el recorrido de los ingestores originales: documento completo
+     * en memoria y una búsqueda por etiqueta (dos, si existe) para cada campo.
+     */
+    @Benchmark
+    public int dom(Blackhole bh) throws Exception {
+        DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        Document doc = builder.parse(new ByteArrayInputStream(xml));
+        NodeList flights = doc.getElementsByTagName("flight");
+        for (int i = 0; i < flights.getLength(); i++) {
+            Element flight = (Element) flights.item(i);
+            String uniqueID = flight.getAttribute("uniqueID");
+            if (uniqueID == null || uniqueID.isEmpty()) {
+                uniqueID = "N/A";
+            }
+            bh.consume(uniqueID);
+            bh.consume(text(flight, "airline"));
+            bh.consume(text(flight, "flight_id"));
+            bh.consume(text(flight, "dom_int"));
+            String scheduleTime = text(flight, "schedule_time");
+            String sta = "N/A";
+            if (!"N/A".equals(scheduleTime)) {
+                scheduleTime = scheduleTime.replace("Z", "");
+                sta = scheduleTime.contains("T") ? scheduleTime.split("T")[1] : scheduleTime;
+            }
+            bh.consume(scheduleTime);
+            bh.consume(sta);
+            bh.consume(text(flight, "arr_dep"));
+            bh.consume(text(flight, "airport"));
+            bh.consume(text(flight, "check_in"));
+            bh.consume(text(flight, "gate"));
+            String statusCode = "N/A";
+            String statusTime = "1970-01-01T00:00:00";
+            if (flight.getElementsByTagName("status").getLength() > 0) {
+                Element statusElem = (Element) flight.getElementsByTagName("status").item(0);
+                if (statusElem.hasAttribute("code")) {
+                    statusCode = statusElem.getAttribute("code");
+                }
+                if (statusElem.hasAttribute("time")) {
+                    statusTime = statusElem.getAttribute("time").replace("Z", "");
+                }
+            }
+            bh.consume(statusCode);
+            bh.consume(statusTime);
+            bh.consume(text(flight, "belt"));
+            bh.consume(text(flight, "delayed"));
+        }
+        return flights.getLength();
+    }
+
+    private static String text(Element flight, String tag) {
+        if (flight.getElementsByTagName(tag).getLength() > 0) {
+            return flight.getElementsByTagName(tag).item(0).getTextContent();
+        }
+        return "N/A";
+    }
+}
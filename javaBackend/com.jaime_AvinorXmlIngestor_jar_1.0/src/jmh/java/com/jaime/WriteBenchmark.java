@@ -0,0 +1,127 @@
+package com.jaime;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Escritura de un feed completo con {@link FlightBatchWriter} contra H2 en
+ * memoria en modo MySQL (ver {@link BenchmarkFeeds#openDatabase(String)}).
+ * <ul>
+ * <li><b>bind</b>: sólo la preparación de los parámetros de los upserts y el
+ * <code>addBatch()</code>, sin ejecutar nada (se descarta con
+ * rollback).</li>
+ * <li><b>insertNew</b>: el feed entero contra tablas vacías, con una fila de
+ * historial de puertas por vuelo (primer poll del día).</li>
+ * <li><b>upsertExisting</b>: el feed entero contra filas que ya existen y sin
+ * cambios de puerta (la rama ON DUPLICATE KEY UPDATE).</li>
+ * </ul>
+ * H2 no reproduce la latencia de red ni los triggers de MySQL: los números
+ * sirven para comparar versiones del ingestor, no para estimar la producción.
+ *
+ * @author Jaime Villalba
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmark {
+
+    @Param({"osl-small", "osl-typical", "osl-peak"})
+    public String feed;
+
+    @Param({"500"})
+    public int chunkSize;
+
+    private List<AvinorFlight> flights;
+    private Connection conn;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        flights = BenchmarkFeeds.flights(feed);
+        conn = BenchmarkFeeds.openDatabase("write_" + feed + "_" + chunkSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        conn.close();
+    }
+
+    /**
+     * Estado para insertNew: vacía las tablas antes de cada invocación.
+     */
+    @State(Scope.Benchmark)
+    public static class EmptyTables {
+
+        @Setup(Level.Invocation)
+        public void truncate(WriteBenchmark bench) throws Exception {
+            BenchmarkFeeds.truncate(bench.conn);
+        }
+    }
+
+    /**
+     * Estado para upsertExisting: escribe el feed una vez para que todas las
+     * filas existan.
+     */
+    @State(Scope.Benchmark)
+    public static class LoadedTables {
+
+        @Setup(Level.Trial)
+        public void load(WriteBenchmark bench) throws Exception {
+            BenchmarkFeeds.truncate(bench.conn);
+            bench.write(false);
+        }
+    }
+
+    @Benchmark
+    public int bind() throws Exception {
+        FlightStateCache cache = new FlightStateCache(Direction.ARRIVALS, 1);
+        // chunkSize mayor que el feed: nunca se llega a ejecutar el lote y close() hace rollback.
+        try (FlightBatchWriter writer = new FlightBatchWriter(conn, Direction.ARRIVALS, Integer.MAX_VALUE, cache)) {
+            for (AvinorFlight flight : flights) {
+                writer.add(flight, null);
+            }
+        }
+        return cache.size();
+    }
+
+    @Benchmark
+    public String insertNew(EmptyTables tables) throws Exception {
+        return write(false);
+    }
+
+    @Benchmark
+    public String upsertExisting(LoadedTables tables) throws Exception {
+        return write(true);
+    }
+
+    /**
+     * @param existing si es cierto, cada vuelo se escribe como ya conocido y
+     * con la misma puerta (sin historial)
+     */
+    private String write(boolean existing) throws Exception {
+        FlightStateCache cache = new FlightStateCache(Direction.ARRIVALS, 1);
+        try (FlightBatchWriter writer = new FlightBatchWriter(conn, Direction.ARRIVALS, chunkSize, cache)) {
+            for (AvinorFlight flight : flights) {
+                writer.add(flight, existing ? flight.getGate() : null);
+            }
+            writer.flush();
+            return writer.summary();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+-- Tablas del ingestor (ver db/flights.sql) en sintaxis compatible con H2 en modo MySQL.
+-- Sin triggers: los benchmarks miden sólo el coste del ingestor.
+
+CREATE TABLE IF NOT EXISTS avinor_xml_arrivals (
+  unique_id varchar(12) NOT NULL,
+  airline varchar(10) NOT NULL DEFAULT 'N/A',
+  flight_id varchar(20) NOT NULL DEFAULT 'N/A',
+  dom_int char(5) NOT NULL DEFAULT 'N/A',
+  schedule_time datetime NOT NULL DEFAULT '1970-01-01 00:00:00',
+  arr_dep char(5) NOT NULL DEFAULT 'N/A',
+  airport varchar(10) NOT NULL DEFAULT 'N/A',
+  status_code char(5) NOT NULL DEFAULT 'N/A',
+  status_time datetime DEFAULT '1970-01-01 00:00:00',
+  belt varchar(5) NOT NULL DEFAULT 'N/A',
+  check_in varchar(50) NOT NULL DEFAULT 'N/A',
+  gate varchar(10) NOT NULL DEFAULT 'N/A',
+  dlayed char(5) NOT NULL DEFAULT 'N/A',
+  last_update datetime NOT NULL DEFAULT '1970-01-01 00:00:00',
+  sta time DEFAULT NULL,
+  eta time DEFAULT NULL,
+  ata time DEFAULT NULL,
+  PRIMARY KEY (unique_id)
+);
+
+CREATE TABLE IF NOT EXISTS dy_xml_arrivals (
+  unique_id varchar(12) NOT NULL,
+  airline varchar(10) NOT NULL DEFAULT 'N/A',
+  flight_id varchar(20) NOT NULL DEFAULT 'N/A',
+  dom_int char(5) NOT NULL DEFAULT 'N/A',
+  schedule_time datetime NOT NULL DEFAULT '1970-01-01 00:00:00',
+  arr_dep char(5) NOT NULL DEFAULT 'N/A',
+  airport varchar(10) NOT NULL DEFAULT 'N/A',
+  status_code char(5) NOT NULL DEFAULT 'N/A',
+  status_time datetime DEFAULT '1970-01-01 00:00:00',
+  belt varchar(5) NOT NULL DEFAULT 'N/A',
+  check_in varchar(50) NOT NULL DEFAULT 'N/A',
+  gate varchar(10) NOT NULL DEFAULT 'N/A',
+  dlayed char(5) NOT NULL DEFAULT 'N/A',
+  last_update datetime NOT NULL DEFAULT '1970-01-01 00:00:00',
+  sta time DEFAULT NULL,
+  eta time DEFAULT NULL,
+  ata time DEFAULT NULL,
+  PRIMARY KEY (unique_id)
+);
+
+CREATE TABLE IF NOT EXISTS gate_history_arrivals (
+  id int NOT NULL AUTO_INCREMENT,
+  unique_id varchar(12) NOT NULL,
+  gate varchar(10) DEFAULT NULL,
+  update_time datetime DEFAULT NULL,
+  flight_id varchar(20) DEFAULT NULL,
+  dom_int char(1) DEFAULT NULL,
+  schedule_time varchar(25) DEFAULT NULL,
+  airport varchar(10) DEFAULT NULL,
+  PRIMARY KEY (id),
+  CONSTRAINT fk_unique_id FOREIGN KEY (unique_id) REFERENCES avinor_xml_arrivals (unique_id) ON DELETE CASCADE
+);
@@ -0,0 +1,245 @@
+package com.jaime;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Handler de java.util.logging que escribe en segundo plano.
+ * <p>
+ * Quien registra un evento sólo lo deja en un buffer circular de tamaño fijo
+ * ({@link Config#LOG_BUFFER_SIZE}); un hilo aparte les da formato con
+ * {@link LogfmtFormatter} y los escribe por lotes en la salida estándar. Los
+ * polls y los escritores nunca esperan a la consola: si el buffer está lleno
+ * el evento se descarta, y el hilo escritor informa de cuántos se perdieron
+ * (también en la métrica <code>log_dropped_total</code>).
+ * <p>
+ * Los avisos y errores repetidos se limitan: de cada tipo (logger, mensaje,
+ * clase de la excepción y campos de texto del evento, como el feed) se escribe
+ * uno cada {@link Config#LOG_ERROR_INTERVAL_SECONDS} segundos, y el siguiente
+ * que se escribe lleva <code>suppressed=N</code> con los descartados entre
+ * medias. Un MySQL caído produce así una línea por minuto y feed, no una por
+ * lote.
+ *
+ * @author Jaime Villalba
+ */
+public final class AsyncLogHandler extends Handler {
+
+    // Por encima de esto se olvidan las ventanas de errores: el mensaje puede llevar datos variables (URLs...).
+    private static final int MAX_ERROR_KEYS = 1024;
+
+    // Errores repetidos de un mismo tipo dentro del intervalo actual
+    private static final class Window {
+
+        long start;
+        int suppressed;
+    }
+
+    private final LogfmtFormatter formatter = new LogfmtFormatter();
+    private final PrintStream out;
+    private final long errorIntervalNanos;
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+    private final Metrics.Counter droppedTotal;
+    private final Metrics.Counter suppressedTotal;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final LogRecord[] ring;
+    private final int[] ringSuppressed;
+    private int head;
+    private int size;
+    private long dropped;
+    private boolean closed;
+    private final Thread writer;
+
+    /**
+     * @param out salida en la que se escribe
+     * @param capacity eventos que caben en el buffer
+     * @param errorIntervalSeconds intervalo mínimo entre dos avisos o errores
+     * del mismo tipo
+     */
+    public AsyncLogHandler(PrintStream out, int capacity, long errorIntervalSeconds) {
+        this.out = out;
+        this.ring = new LogRecord[Math.max(16, capacity)];
+        this.ringSuppressed = new int[ring.length];
+        this.errorIntervalNanos = TimeUnit.SECONDS.toNanos(Math.max(0, errorIntervalSeconds));
+        setFormatter(formatter);
+        Metrics metrics = Metrics.registry();
+        droppedTotal = metrics.counter("log_dropped_total", "Eventos de log descartados por buffer lleno");
+        suppressedTotal = metrics.counter("log_suppressed_total", "Avisos y errores repetidos no escritos");
+        writer = new Thread(this::drain, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Sustituye los handlers del logger raíz por uno asíncrono configurado con
+     * {@link Config#LOG_LEVEL}, {@link Config#LOG_BUFFER_SIZE} y
+     * {@link Config#LOG_ERROR_INTERVAL_SECONDS}.
+     */
+    public static void install() {
+        install(Level.parse(Config.LOG_LEVEL), Config.LOG_BUFFER_SIZE, Config.LOG_ERROR_INTERVAL_SECONDS);
+    }
+
+    /**
+     * Igual que {@link #install()}, sin leer {@link Config} (para
+     * herramientas que no usan el <code>.env</code>, como
+     * {@link FeedSimulator}).
+     */
+    public static void install(Level level, int capacity, long errorIntervalSeconds) {
+        Logger root = Logger.getLogger("");
+        for (Handler handler : root.getHandlers()) {
+            root.removeHandler(handler);
+            handler.close();
+        }
+        AsyncLogHandler handler = new AsyncLogHandler(System.out, capacity, errorIntervalSeconds);
+        handler.setLevel(level);
+        root.setLevel(level);
+        root.addHandler(handler);
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (!isLoggable(record)) {
+            return;
+        }
+        int suppressed = 0;
+        if (record.getLevel().intValue() >= Level.WARNING.intValue() && errorIntervalNanos > 0) {
+            if (windows.size() > MAX_ERROR_KEYS) {
+                windows.clear();
+            }
+            Window window = windows.computeIfAbsent(key(record), k -> new Window());
+            long now = System.nanoTime();
+            synchronized (window) {
+                if (window.start != 0 && now - window.start < errorIntervalNanos) {
+                    window.suppressed++;
+                    suppressedTotal.inc();
+                    return;
+                }
+                suppressed = window.suppressed;
+                window.suppressed = 0;
+                window.start = now;
+            }
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            if (size == ring.length) {
+                dropped++;
+                droppedTotal.inc();
+                return;
+            }
+            int slot = (head + size) % ring.length;
+            ring[slot] = record;
+            ringSuppressed[slot] = suppressed;
+            size++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static String key(LogRecord record) {
+        StringBuilder key = new StringBuilder(64).append(record.getLoggerName()).append('|')
+                .append(record.getMessage());
+        if (record.getThrown() != null) {
+            key.append('|').append(record.getThrown().getClass().getName());
+        }
+        if (record instanceof LogEvent) {
+            Object[] fields = ((LogEvent) record).getFields();
+            for (int i = 1; i < fields.length; i += 2) {
+                if (fields[i] instanceof String) {
+                    key.append('|').append(fields[i]);
+                }
+            }
+        }
+        return key.toString();
+    }
+
+    // Hilo escritor: vacía el buffer de una vez, da formato fuera del cerrojo y escribe el lote.
+    private void drain() {
+        LogRecord[] batch = new LogRecord[ring.length];
+        int[] batchSuppressed = new int[ring.length];
+        StringBuilder text = new StringBuilder(8192);
+        while (true) {
+            int count;
+            long lost;
+            lock.lock();
+            try {
+                while (size == 0 && !closed) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (size == 0) {
+                    return;
+                }
+                count = size;
+                for (int i = 0; i < count; i++) {
+                    int slot = (head + i) % ring.length;
+                    batch[i] = ring[slot];
+                    batchSuppressed[i] = ringSuppressed[slot];
+                    ring[slot] = null;
+                }
+                head = (head + count) % ring.length;
+                size = 0;
+                lost = dropped;
+                dropped = 0;
+            } finally {
+                lock.unlock();
+            }
+            text.setLength(0);
+            if (lost > 0) {
+                text.append("ts=").append(Instant.ofEpochMilli(System.currentTimeMillis()))
+                        .append(" level=WARNING logger=AsyncLogHandler event=log_dropped count=").append(lost)
+                        .append('\n');
+            }
+            for (int i = 0; i < count; i++) {
+                try {
+                    formatter.format(batch[i], batchSuppressed[i], text);
+                } catch (RuntimeException ex) {
+                    text.append("ts=").append(Instant.ofEpochMilli(System.currentTimeMillis()))
+                            .append(" level=WARNING logger=AsyncLogHandler event=format_error error=\"").append(ex)
+                            .append("\"\n");
+                }
+                batch[i] = null;
+            }
+            out.print(text);
+            out.flush();
+        }
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+    }
+
+    /**
+     * Deja de aceptar eventos y espera (hasta un segundo) a que se escriban
+     * los que quedan en el buffer.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join(1000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,203 @@
+package com.jaime;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * Representa un único elemento &lt;flight&gt; del feed XML de Avinor, con los
+ * campos ya normalizados y tipados para su inserción en MySQL:
+ * <ul>
+ * <li>Las fechas (<code>schedule_time</code>, <code>status_time</code>) se
+ * guardan como segundos epoch UTC (ver {@link AvinorTime}) y se enlazan como
+ * DATETIME/TIME, sin que MySQL tenga que interpretar texto.</li>
+ * <li>El estado es un {@link FlightStatus}; <code>delayed</code>, un
+ * boolean.</li>
+ * <li>Los códigos cortos que se repiten en todos los vuelos (aerolínea,
+ * aeropuerto, puerta...) se comparten a través de {@link CodePool}.</li>
+ * <li>Los textos ausentes son "N/A", igual que el valor por defecto de las
+ * columnas de <code>avinor_xml_arrivals</code> /
+ * <code>avinor_xml_departures</code>.</li>
+ * </ul>
+ *
+ * @author Jaime Villalba
+ */
+public final class AvinorFlight {
+
+    // Constantes de FNV-1a de 64 bits, usadas por fingerprint()
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final String uniqueId;
+    private final String airline;
+    private final String flightId;
+    private final String domInt;
+    private final long scheduleEpoch;
+    private final String arrDep;
+    private final String airport;
+    private final String checkIn;
+    private final String gate;
+    private final FlightStatus status;
+    private final String statusCode;
+    private final long statusEpoch;
+    private final String belt;
+    private final boolean delayed;
+
+    /**
+     * @param scheduleEpoch schedule_time en segundos epoch UTC, o
+     * {@link AvinorTime#NONE}
+     * @param statusCode código de estado tal cual, o "N/A"
+     * @param statusEpoch hora del estado en segundos epoch UTC (0 si no
+     * hay), o {@link AvinorTime#NONE} si no se pudo interpretar
+     */
+    AvinorFlight(String uniqueId, String airline, String flightId, String domInt,
+            long scheduleEpoch, String arrDep, String airport, String checkIn, String gate,
+            String statusCode, long statusEpoch, String belt, boolean delayed) {
+        this.uniqueId = uniqueId;
+        this.airline = CodePool.intern(airline);
+        this.flightId = flightId;
+        this.domInt = CodePool.intern(domInt);
+        this.scheduleEpoch = scheduleEpoch;
+        this.arrDep = CodePool.intern(arrDep);
+        this.airport = CodePool.intern(airport);
+        this.checkIn = checkIn;
+        this.gate = CodePool.intern(gate);
+        this.statusCode = CodePool.intern(statusCode);
+        this.status = FlightStatus.fromCode(statusCode);
+        this.statusEpoch = statusEpoch;
+        this.belt = CodePool.intern(belt);
+        this.delayed = delayed;
+    }
+
+    public String getUniqueId() {
+        return uniqueId;
+    }
+
+    public String getAirline() {
+        return airline;
+    }
+
+    public String getFlightId() {
+        return flightId;
+    }
+
+    public String getDomInt() {
+        return domInt;
+    }
+
+    /**
+     * @return schedule_time en segundos epoch UTC, o {@link AvinorTime#NONE}
+     * si el feed no lo traía
+     */
+    public long getScheduleEpoch() {
+        return scheduleEpoch;
+    }
+
+    /**
+     * @return schedule_time (UTC), o <code>null</code> si el feed no lo
+     * traía
+     */
+    public LocalDateTime getScheduleTime() {
+        return AvinorTime.toLocalDateTime(scheduleEpoch);
+    }
+
+    /**
+     * @return la parte horaria de schedule_time (columna <code>sta</code> en
+     * llegadas y <code>std</code> en salidas), o <code>null</code>
+     */
+    public LocalTime getLocalTime() {
+        return AvinorTime.toLocalTime(scheduleEpoch);
+    }
+
+    public String getArrDep() {
+        return arrDep;
+    }
+
+    public String getAirport() {
+        return airport;
+    }
+
+    public String getCheckIn() {
+        return checkIn;
+    }
+
+    public String getGate() {
+        return gate;
+    }
+
+    public FlightStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @return el código de estado tal como venía en el feed, o "N/A"
+     */
+    public String getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return status_time en segundos epoch UTC (0, es decir
+     * 1970-01-01T00:00:00, si no había estado)
+     */
+    public long getStatusEpoch() {
+        return statusEpoch;
+    }
+
+    /**
+     * @return status_time (UTC), o <code>null</code> si no se pudo
+     * interpretar
+     */
+    public LocalDateTime getStatusTime() {
+        return AvinorTime.toLocalDateTime(statusEpoch);
+    }
+
+    public String getBelt() {
+        return belt;
+    }
+
+    public boolean isDelayed() {
+        return delayed;
+    }
+
+    /**
+     * Huella de 64 bits (FNV-1a) de todos los campos normalizados. Dos vuelos
+     * con la misma huella producirían exactamente la misma fila en
+     * <code>avinor_xml_*</code>, así que no hace falta volver a escribirlos.
+     *
+     * @return hash del contenido del vuelo
+     */
+    public long fingerprint() {
+        long hash = FNV_OFFSET_BASIS;
+        hash = mix(hash, uniqueId);
+        hash = mix(hash, airline);
+        hash = mix(hash, flightId);
+        hash = mix(hash, domInt);
+        hash = mix(hash, scheduleEpoch);
+        hash = mix(hash, arrDep);
+        hash = mix(hash, airport);
+        hash = mix(hash, checkIn);
+        hash = mix(hash, gate);
+        hash = mix(hash, statusCode);
+        hash = mix(hash, statusEpoch);
+        hash = mix(hash, belt);
+        hash = mix(hash, delayed ? 1L : 0L);
+        return hash;
+    }
+
+    private static long mix(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        // Separador entre campos, para que "AB"+"C" no coincida con "A"+"BC"
+        return (hash ^ 0x1f) * FNV_PRIME;
+    }
+
+    private static long mix(long hash, long value) {
+        for (int shift = 0; shift < 64; shift += 8) {
+            hash = (hash ^ ((value >>> shift) & 0xff)) * FNV_PRIME;
+        }
+        return (hash ^ 0x1f) * FNV_PRIME;
+    }
+}
@@ -0,0 +1,174 @@
+package com.jaime;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+
+/**
+ * Conversión entre las fechas del feed de Avinor y segundos epoch (UTC).
+ * <p>
+ * El feed usa siempre el formato ISO <code>2025-01-16T10:00:00Z</code>. En vez
+ * de limpiar la cadena con <code>replace("Z", "")</code> y
+ * <code>split("T")</code> y dejar que MySQL la vuelva a interpretar, se lee
+ * carácter a carácter y se convierte a un <code>long</code> sin crear objetos
+ * intermedios. Se aceptan también el separador espacio (formato DATETIME de
+ * MySQL), la ausencia de la 'Z' y fracciones de segundo, que se descartan.
+ *
+ * @author Jaime Villalba
+ */
+public final class AvinorTime {
+
+    /**
+     * Valor que indica que la fecha no venía en el feed o no se pudo
+     * interpretar.
+     */
+    public static final long NONE = Long.MIN_VALUE;
+
+    private static final int SECONDS_PER_DAY = 86400;
+    // Días entre 0000-03-01 y 1970-01-01 en el calendario gregoriano proléptico
+    private static final int DAYS_0000_TO_1970 = 719468;
+    private static final int DAYS_PER_ERA = 146097;
+
+    private AvinorTime() {
+    }
+
+    /**
+     * @param text fecha como <code>yyyy-MM-ddTHH:mm:ss</code> seguida
+     * opcionalmente de fracción de segundo y 'Z'
+     * @return segundos epoch en UTC, o {@link #NONE} si <code>text</code> es
+     * null o no tiene ese formato
+     */
+    public static long parseEpochSeconds(CharSequence text) {
+        if (text == null || text.length() < 19) {
+            return NONE;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        int second = digits(text, 17, 2);
+        char separator = text.charAt(10);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59
+                || text.charAt(4) != '-' || text.charAt(7) != '-' || (separator != 'T' && separator != ' ')
+                || text.charAt(13) != ':' || text.charAt(16) != ':' || !validSuffix(text)) {
+            return NONE;
+        }
+        return epochDay(year, month, day) * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second;
+    }
+
+    // Tras los segundos sólo se admite ".fff..." y/o una 'Z' final.
+    private static boolean validSuffix(CharSequence text) {
+        int i = 19;
+        int length = text.length();
+        if (i < length && text.charAt(i) == '.') {
+            i++;
+            while (i < length && Character.isDigit(text.charAt(i))) {
+                i++;
+            }
+        }
+        if (i < length && text.charAt(i) == 'Z') {
+            i++;
+        }
+        return i == length;
+    }
+
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    // Algoritmo days_from_civil de Howard Hinnant: días desde 1970-01-01.
+    private static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return (long) era * DAYS_PER_ERA + dayOfEra - DAYS_0000_TO_1970;
+    }
+
+    /**
+     * @return la fecha y hora UTC para enlazarla a una columna DATETIME, o
+     * <code>null</code> si es {@link #NONE}
+     */
+    public static LocalDateTime toLocalDateTime(long epochSeconds) {
+        return epochSeconds == NONE ? null : LocalDateTime.ofEpochSecond(epochSeconds, 0, ZoneOffset.UTC);
+    }
+
+    /**
+     * @return la hora del día (UTC), para las columnas TIME
+     * <code>sta</code>/<code>std</code>, o <code>null</code> si es
+     * {@link #NONE}
+     */
+    public static LocalTime toLocalTime(long epochSeconds) {
+        return epochSeconds == NONE ? null : LocalTime.ofSecondOfDay(Math.floorMod(epochSeconds, SECONDS_PER_DAY));
+    }
+
+    /**
+     * @return la fecha en el formato que se guardaba hasta ahora como texto
+     * (<code>2025-01-16T10:00:00</code>), o "N/A" si es {@link #NONE}
+     */
+    public static String format(long epochSeconds) {
+        if (epochSeconds == NONE) {
+            return "N/A";
+        }
+        long epochDay = Math.floorDiv(epochSeconds, SECONDS_PER_DAY);
+        int secondOfDay = Math.floorMod(epochSeconds, SECONDS_PER_DAY);
+
+        // civil_from_days, inverso de epochDay()
+        long z = epochDay + DAYS_0000_TO_1970;
+        long era = Math.floorDiv(z, DAYS_PER_ERA);
+        int dayOfEra = (int) (z - era * DAYS_PER_ERA);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        char[] out = new char[19];
+        pad(out, 0, (int) year, 4);
+        out[4] = '-';
+        pad(out, 5, month, 2);
+        out[7] = '-';
+        pad(out, 8, day, 2);
+        out[10] = 'T';
+        pad(out, 11, secondOfDay / 3600, 2);
+        out[13] = ':';
+        pad(out, 14, secondOfDay / 60 % 60, 2);
+        out[16] = ':';
+        pad(out, 17, secondOfDay % 60, 2);
+        return new String(out);
+    }
+
+    private static void pad(char[] out, int start, int value, int width) {
+        for (int i = start + width - 1; i >= start; i--) {
+            out[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
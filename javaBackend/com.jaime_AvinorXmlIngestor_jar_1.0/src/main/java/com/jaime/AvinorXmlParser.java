@@ -0,0 +1,177 @@
+package com.jaime;
+
+import java.io.InputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Parser en streaming (StAX) del feed XML de Avinor.
+ * <p>
+ * En lugar de materializar todo el documento como un árbol DOM, recorre el
+ * flujo de entrada una sola vez y entrega un {@link AvinorFlight} por cada
+ * elemento &lt;flight&gt; en cuanto se cierra. La memoria usada es la de un
+ * único vuelo, independientemente del tamaño del feed.
+ *
+ * @author Jaime Villalba
+ */
+public final class AvinorXmlParser {
+
+    /**
+     * Recibe cada vuelo parseado. Puede lanzar cualquier excepción (p. ej.
+     * SQLException al escribir en base de datos), que se propaga a quien llamó
+     * a {@link #parse(InputStream, FlightHandler)}.
+     */
+    @FunctionalInterface
+    public interface FlightHandler {
+
+        void onFlight(AvinorFlight flight) throws Exception;
+    }
+
+    private static final String NA = "N/A";
+    // 1970-01-01T00:00:00, valor por defecto de status_time en MySQL.
+    private static final long DEFAULT_STATUS_EPOCH = 0;
+
+    // XMLInputFactory es costosa de crear pero thread-safe una vez configurada.
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private AvinorXmlParser() {
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // El feed no usa DTD ni entidades externas; se desactivan por seguridad (XXE).
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * Parsea el feed y llama a <code>handler</code> una vez por cada
+     * &lt;flight&gt;, en el orden del documento.
+     *
+     * @param xmlStream flujo XML tal cual llega de la API de Avinor
+     * @param handler receptor de cada vuelo
+     * @return número de vuelos entregados
+     * @throws Exception si el XML está mal formado o el handler falla
+     */
+    public static int parse(InputStream xmlStream, FlightHandler handler) throws Exception {
+        XMLStreamReader reader = FACTORY.createXMLStreamReader(xmlStream);
+        int count = 0;
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT
+                        && "flight".equals(reader.getLocalName())) {
+                    handler.onFlight(readFlight(reader));
+                    count++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+    /**
+     * Lee un &lt;flight&gt; completo. Se espera que el reader esté posicionado
+     * en su START_ELEMENT; al terminar queda en el END_ELEMENT correspondiente.
+     */
+    private static AvinorFlight readFlight(XMLStreamReader reader) throws XMLStreamException {
+        String uniqueId = reader.getAttributeValue(null, "uniqueID");
+        String airline = null;
+        String flightId = null;
+        String domInt = null;
+        String scheduleTime = null;
+        String arrDep = null;
+        String airport = null;
+        String checkIn = null;
+        String gate = null;
+        String statusCode = null;
+        String statusTime = null;
+        String belt = null;
+        String delayed = null;
+
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            switch (reader.getLocalName()) {
+                case "airline":
+                    airline = firstOf(airline, reader.getElementText());
+                    break;
+                case "flight_id":
+                    flightId = firstOf(flightId, reader.getElementText());
+                    break;
+                case "dom_int":
+                    domInt = firstOf(domInt, reader.getElementText());
+                    break;
+                case "schedule_time":
+                    scheduleTime = firstOf(scheduleTime, reader.getElementText());
+                    break;
+                case "arr_dep":
+                    arrDep = firstOf(arrDep, reader.getElementText());
+                    break;
+                case "airport":
+                    airport = firstOf(airport, reader.getElementText());
+                    break;
+                case "check_in":
+                    checkIn = firstOf(checkIn, reader.getElementText());
+                    break;
+                case "gate":
+                    gate = firstOf(gate, reader.getElementText());
+                    break;
+                case "belt":
+                    belt = firstOf(belt, reader.getElementText());
+                    break;
+                case "delayed":
+                    delayed = firstOf(delayed, reader.getElementText());
+                    break;
+                case "status":
+                    // code y time son atributos de <status>
+                    if (statusCode == null) {
+                        statusCode = reader.getAttributeValue(null, "code");
+                        statusTime = reader.getAttributeValue(null, "time");
+                    }
+                    depth++;
+                    break;
+                default:
+                    // Elemento no usado: se desciende en él y se ignora su contenido.
+                    depth++;
+                    break;
+            }
+            // getElementText() deja el reader en el END_ELEMENT del campo, que ya
+            // queda consumido sin modificar la profundidad.
+        }
+
+        if (uniqueId == null || uniqueId.isEmpty()) {
+            uniqueId = NA;
+        }
+
+        // schedule_time llega como 2025-01-16T10:00:00Z; se convierte a epoch sin crear cadenas intermedias.
+        long scheduleEpoch = AvinorTime.parseEpochSeconds(scheduleTime);
+
+        //TODO: Si status_code = 'C' (Cancelado), sería deseable que statusTime no muestre el valor por defecto "1970-01-01T00:00:00"
+        long statusEpoch = statusTime != null ? AvinorTime.parseEpochSeconds(statusTime) : DEFAULT_STATUS_EPOCH;
+
+        return new AvinorFlight(uniqueId, orNA(airline), orNA(flightId), orNA(domInt),
+                scheduleEpoch, orNA(arrDep), orNA(airport), orNA(checkIn),
+                orNA(gate), orNA(statusCode), statusEpoch, orNA(belt), "Y".equals(delayed));
+    }
+
+    // Igual que item(0) en DOM: se conserva la primera aparición del campo.
+    private static String firstOf(String current, String text) {
+        return current != null ? current : text;
+    }
+
+    private static String orNA(String value) {
+        return value != null ? value : NA;
+    }
+}
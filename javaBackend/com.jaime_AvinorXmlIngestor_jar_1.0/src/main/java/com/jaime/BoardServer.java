@@ -0,0 +1,355 @@
+package com.jaime;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * API HTTP/JSON de sólo lectura sobre el {@link LiveBoard}, en el puerto
+ * {@link Config#BOARD_PORT}. Nunca consulta MySQL.
+ * <ul>
+ * <li><code>GET /board</code>: feeds disponibles, con su versión, hora de
+ * actualización y número de vuelos.</li>
+ * <li><code>GET /board/OSL/D?airline=DY&amp;gate=A12&amp;status=E&amp;airport=BGO&amp;from=...&amp;to=...&amp;limit=50</code>:
+ * vuelos del feed por <code>schedule_time</code>. Todos los filtros son
+ * opcionales; <code>airport</code> es el origen o destino del vuelo,
+ * <code>status=N/A</code> los que no tienen estado, y <code>from</code>/
+ * <code>to</code> instantes ISO-8601 (UTC).</li>
+ * <li><code>GET /board/OSL/D/{uniqueID}</code>: un vuelo.</li>
+ * <li><code>GET /events?feed=OSL-D,OSL-A&amp;type=gate,status&amp;airline=DY&amp;flight=DY604&amp;airport=BGO</code>:
+ * los cambios de vuelos en cuanto se detectan, como Server-Sent Events (ver
+ * {@link ChangeStream}), con los mismos filtros opcionales. Cada evento lleva
+ * su <code>id</code>; al reconectarse con <code>Last-Event-ID</code> se
+ * reciben los que se perdieron, o un evento <code>reset</code> si ya no
+ * están en el buffer y hay que recargar el panel.</li>
+ * </ul>
+ * Cada respuesta de un feed lleva como <code>ETag</code> la versión de su
+ * panel; con <code>If-None-Match</code> se contesta 304 mientras no cambie
+ * ningún vuelo. El JSON del panel completo se genera una vez por versión.
+ *
+ * @author Jaime Villalba
+ */
+public final class BoardServer implements AutoCloseable {
+
+    // Comentario SSE cada tanto para que proxies y clientes no den la conexión por muerta
+    private static final long KEEPALIVE_SECONDS = 15;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final LiveBoard board;
+    private final ChangeStream stream;
+
+    private BoardServer(HttpServer server, ExecutorService executor, LiveBoard board, ChangeStream stream) {
+        this.server = server;
+        this.executor = executor;
+        this.board = board;
+        this.stream = stream;
+    }
+
+    /**
+     * @param port puerto de escucha
+     * @param board panel a publicar
+     * @param stream cambios que publica el panel, o <code>null</code> para no
+     * servir <code>/events</code>
+     * @return el servidor ya escuchando
+     */
+    public static BoardServer start(int port, LiveBoard board, ChangeStream stream) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        // Cada cliente de /events ocupa un hilo mientras está conectado; ChangeStream limita cuántos hay.
+        ExecutorService executor = Executors.newCachedThreadPool(IngestExecutors.daemonThreads("board-http"));
+        BoardServer boardServer = new BoardServer(server, executor, board, stream);
+        server.createContext("/board", boardServer::handle);
+        if (stream != null) {
+            server.createContext("/events", boardServer::events);
+        }
+        server.setExecutor(executor);
+        server.start();
+        return boardServer;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+            if (path.length == 1) {
+                send(exchange, 200, feeds(), null);
+                return;
+            }
+            if (path.length < 3 || path.length > 4) {
+                error(exchange, 404, "Ruta desconocida");
+                return;
+            }
+            LiveBoard.Snapshot snapshot = board.get(path[1].toUpperCase() + "-" + path[2].toUpperCase());
+            if (snapshot == null) {
+                error(exchange, 404, "Feed desconocido o aún sin datos");
+                return;
+            }
+            String etag = "\"" + snapshot.getFeed().getName() + "-" + snapshot.getVersion() + "\"";
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.getResponseHeaders().set("ETag", etag);
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            if (path.length == 4) {
+                AvinorFlight flight = snapshot.get(path[3]);
+                if (flight == null) {
+                    error(exchange, 404, "Vuelo desconocido");
+                    return;
+                }
+                StringBuilder json = new StringBuilder(400);
+                FlightJson.flight(json, flight);
+                send(exchange, 200, json.toString().getBytes(StandardCharsets.UTF_8), etag);
+                return;
+            }
+            LiveBoard.Query query;
+            try {
+                query = query(exchange.getRequestURI().getRawQuery());
+            } catch (IllegalArgumentException | DateTimeParseException ex) {
+                error(exchange, 400, ex.getMessage());
+                return;
+            }
+            byte[] body;
+            if (query.isEmpty()) {
+                body = snapshot.json;
+                if (body == null) {
+                    body = render(snapshot, snapshot.flights());
+                    snapshot.json = body;
+                }
+            } else {
+                body = render(snapshot, snapshot.query(query));
+            }
+            send(exchange, 200, body, etag);
+        }
+    }
+
+    private void events(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            Predicate<FlightEvent> filter;
+            long lastEventId;
+            try {
+                filter = filter(exchange.getRequestURI().getRawQuery());
+                String header = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+                lastEventId = header != null && !header.isBlank() ? Long.parseLong(header.trim()) : 0;
+            } catch (IllegalArgumentException ex) {
+                error(exchange, 400, ex.getMessage());
+                return;
+            }
+            ChangeStream.Subscription subscription = stream.subscribe(lastEventId, filter);
+            if (subscription == null) {
+                error(exchange, 503, "Demasiados clientes conectados");
+                return;
+            }
+            try (subscription) {
+                exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+                exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = exchange.getResponseBody();
+                StringBuilder text = new StringBuilder(8192).append("retry: 3000\n\n");
+                if (subscription.hasGap()) {
+                    text.append("event: reset\ndata: {}\n\n");
+                }
+                append(text, subscription.getBacklog());
+                write(out, text);
+                List<FlightEvent> batch = new ArrayList<>();
+                // Si el cliente no lee a tiempo se cierra la conexión; al reconectarse recupera lo pendiente.
+                while (!subscription.isOverflowed()) {
+                    batch.clear();
+                    if (subscription.poll(batch, KEEPALIVE_SECONDS, TimeUnit.SECONDS) == 0) {
+                        text.append(": keepalive\n\n");
+                    } else {
+                        append(text, batch);
+                    }
+                    write(out, text);
+                }
+            } catch (InterruptedException ex) {
+                // Servidor cerrándose
+                Thread.currentThread().interrupt();
+            } catch (IOException ex) {
+                // El cliente se desconectó
+            }
+        }
+    }
+
+    private static void append(StringBuilder text, List<FlightEvent> events) {
+        for (FlightEvent event : events) {
+            text.append("id: ").append(event.getId()).append("\nevent: ").append(event.getType().getName())
+                    .append("\ndata: ").append(event.toJson()).append("\n\n");
+        }
+    }
+
+    private static void write(OutputStream out, StringBuilder text) throws IOException {
+        out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        text.setLength(0);
+    }
+
+    private static Predicate<FlightEvent> filter(String rawQuery) {
+        Predicate<FlightEvent> filter = event -> true;
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return filter;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) {
+                continue;
+            }
+            String value = URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8).trim().toUpperCase();
+            Set<String> values = new HashSet<>(Arrays.asList(value.split(",")));
+            switch (URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8)) {
+                case "feed":
+                    filter = filter.and(event -> values.contains(event.getFeed()));
+                    break;
+                case "type":
+                    Set<FlightEvent.Type> types = EnumSet.noneOf(FlightEvent.Type.class);
+                    for (String type : values) {
+                        types.add(FlightEvent.Type.fromName(type));
+                    }
+                    filter = filter.and(event -> types.contains(event.getType()));
+                    break;
+                case "airline":
+                    filter = filter.and(event -> values.contains(event.getFlight().getAirline()));
+                    break;
+                case "flight":
+                    filter = filter.and(event -> values.contains(event.getFlight().getFlightId()));
+                    break;
+                case "airport":
+                    filter = filter.and(event -> values.contains(event.getFlight().getAirport()));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Filtro desconocido: " + pair.substring(0, eq));
+            }
+        }
+        return filter;
+    }
+
+    private static LiveBoard.Query query(String rawQuery) {
+        LiveBoard.Query query = new LiveBoard.Query();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) {
+                continue;
+            }
+            String value = URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8).trim();
+            switch (URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8)) {
+                case "airline":
+                    query.airline(value.toUpperCase());
+                    break;
+                case "gate":
+                    query.gate(value.toUpperCase());
+                    break;
+                case "status":
+                    query.statusCode(value.toUpperCase());
+                    break;
+                case "airport":
+                    query.airport(value.toUpperCase());
+                    break;
+                case "from":
+                    from = Instant.parse(value).getEpochSecond();
+                    break;
+                case "to":
+                    to = Instant.parse(value).getEpochSecond();
+                    break;
+                case "limit":
+                    int limit = Integer.parseInt(value);
+                    if (limit < 0) {
+                        throw new IllegalArgumentException("limit no puede ser negativo: " + value);
+                    }
+                    query.limit(limit);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Filtro desconocido: " + pair.substring(0, eq));
+            }
+        }
+        if (from != Long.MIN_VALUE || to != Long.MAX_VALUE) {
+            query.scheduled(from, to);
+        }
+        return query;
+    }
+
+    private static byte[] render(LiveBoard.Snapshot snapshot, List<AvinorFlight> flights) {
+        StringBuilder json = new StringBuilder(128 + flights.size() * 330);
+        json.append("{\"feed\":\"").append(snapshot.getFeed().getName()).append("\",\"version\":")
+                .append(snapshot.getVersion()).append(",\"updated\":\"")
+                .append(Instant.ofEpochMilli(snapshot.getUpdatedMillis())).append("\",\"count\":")
+                .append(flights.size()).append(",\"flights\":[");
+        for (int i = 0; i < flights.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            FlightJson.flight(json, flights.get(i));
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] feeds() {
+        StringBuilder json = new StringBuilder(256).append("{\"feeds\":[");
+        boolean first = true;
+        for (LiveBoard.Snapshot snapshot : board.snapshots()) {
+            json.append(first ? "" : ",").append("{\"feed\":\"").append(snapshot.getFeed().getName())
+                    .append("\",\"version\":").append(snapshot.getVersion()).append(",\"updated\":\"")
+                    .append(Instant.ofEpochMilli(snapshot.getUpdatedMillis())).append("\",\"flights\":")
+                    .append(snapshot.size()).append('}');
+            first = false;
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void error(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder json = new StringBuilder(64).append("{\"error\":");
+        FlightJson.string(json, message);
+        send(exchange, status, json.append('}').toString().getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body, String etag) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (etag != null) {
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * @return puerto en el que escucha (útil si se arrancó con el puerto 0)
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
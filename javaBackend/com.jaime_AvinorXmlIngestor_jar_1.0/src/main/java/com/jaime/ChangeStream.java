@@ -0,0 +1,200 @@
+package com.jaime;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Difusión de los {@link FlightEvent} del {@link LiveBoard} a los clientes
+ * conectados a <code>/events</code> ({@link BoardServer}).
+ * <p>
+ * Los últimos {@link Config#STREAM_BUFFER_SIZE} eventos se guardan en un
+ * buffer circular: un cliente que se reconecta con <code>Last-Event-ID</code>
+ * recibe lo que se perdió, y si ya no está en el buffer se le avisa para que
+ * recargue el panel. Cada suscriptor tiene su propia cola acotada; publicar
+ * nunca espera a un cliente lento: si su cola se llena se le desconecta y al
+ * reconectarse recupera los eventos del buffer.
+ *
+ * @author Jaime Villalba
+ */
+public final class ChangeStream {
+
+    // Eventos pendientes de enviar a un suscriptor antes de desconectarlo por lento
+    private static final int SUBSCRIBER_QUEUE = 4096;
+
+    /**
+     * Un cliente suscrito. Hay que cerrarlo al desconectarse.
+     */
+    public final class Subscription implements AutoCloseable {
+
+        private final Predicate<FlightEvent> filter;
+        private final BlockingQueue<FlightEvent> queue = new ArrayBlockingQueue<>(SUBSCRIBER_QUEUE);
+        private final List<FlightEvent> backlog;
+        private final boolean gap;
+        private volatile boolean overflowed;
+
+        private Subscription(Predicate<FlightEvent> filter, List<FlightEvent> backlog, boolean gap) {
+            this.filter = filter;
+            this.backlog = backlog;
+            this.gap = gap;
+        }
+
+        /**
+         * @return eventos posteriores a <code>Last-Event-ID</code> que ya
+         * estaban en el buffer, filtrados
+         */
+        public List<FlightEvent> getBacklog() {
+            return backlog;
+        }
+
+        /**
+         * @return cierto si faltan eventos que ya salieron del buffer: el
+         * cliente debe recargar el panel
+         */
+        public boolean hasGap() {
+            return gap;
+        }
+
+        /**
+         * @return cierto si se desconectó por no leer a tiempo
+         */
+        public boolean isOverflowed() {
+            return overflowed;
+        }
+
+        /**
+         * Espera al siguiente evento y añade a <code>out</code> ése y los que
+         * ya estén en cola.
+         *
+         * @return número de eventos añadidos (0 si venció la espera)
+         */
+        public int poll(List<FlightEvent> out, long timeout, TimeUnit unit) throws InterruptedException {
+            FlightEvent first = queue.poll(timeout, unit);
+            if (first == null) {
+                return 0;
+            }
+            out.add(first);
+            return 1 + queue.drainTo(out);
+        }
+
+        private void offer(FlightEvent event) {
+            if (!overflowed && filter.test(event) && !queue.offer(event)) {
+                overflowed = true;
+                overflows.inc();
+                subscribers.remove(this);
+            }
+        }
+
+        @Override
+        public void close() {
+            subscribers.remove(this);
+        }
+    }
+
+    private final FlightEvent[] ring;
+    private int head;
+    private int size;
+    private long nextId = 1;
+    private final Set<Subscription> subscribers = new CopyOnWriteArraySet<>();
+    private final int maxSubscribers;
+    private final Metrics.Counter overflows;
+    private final Map<FlightEvent.Type, Metrics.Counter> published = new EnumMap<>(FlightEvent.Type.class);
+
+    /**
+     * @param capacity eventos que se conservan para las reconexiones
+     * @param maxSubscribers clientes conectados a la vez como máximo
+     */
+    public ChangeStream(int capacity, int maxSubscribers) {
+        this.ring = new FlightEvent[Math.max(1, capacity)];
+        this.maxSubscribers = maxSubscribers;
+        Metrics metrics = Metrics.registry();
+        metrics.gauge("stream_subscribers", "Clientes conectados a /events", subscribers::size);
+        overflows = metrics.counter("stream_overflows_total", "Clientes desconectados por no leer a tiempo");
+        for (FlightEvent.Type type : FlightEvent.Type.values()) {
+            published.put(type, metrics.counter("stream_events_total", "Cambios de vuelos publicados",
+                    "type", type.getName()));
+        }
+    }
+
+    /**
+     * Asigna identificadores consecutivos a los cambios y los envía a los
+     * suscriptores.
+     *
+     * @param changes cambios de un poll
+     */
+    synchronized void publish(List<Change> changes) {
+        for (Change change : changes) {
+            FlightEvent event = new FlightEvent(nextId++, change.type, change.feed, change.version, change.flight,
+                    change.oldValue, change.newValue);
+            ring[(head + size) % ring.length] = event;
+            if (size < ring.length) {
+                size++;
+            } else {
+                head = (head + 1) % ring.length;
+            }
+            published.get(change.type).inc();
+            for (Subscription subscription : subscribers) {
+                subscription.offer(event);
+            }
+        }
+    }
+
+    /**
+     * @param lastEventId último evento que recibió el cliente, o 0 si es una
+     * conexión nueva (sin eventos anteriores)
+     * @param filter eventos que interesan al cliente
+     * @return la suscripción, o <code>null</code> si ya hay
+     * {@link Config#STREAM_MAX_SUBSCRIBERS} clientes
+     */
+    public synchronized Subscription subscribe(long lastEventId, Predicate<FlightEvent> filter) {
+        if (subscribers.size() >= maxSubscribers) {
+            return null;
+        }
+        List<FlightEvent> backlog = new ArrayList<>();
+        boolean gap = false;
+        if (lastEventId > 0) {
+            // Un identificador posterior al último publicado viene de antes de un reinicio del ingestor.
+            long oldest = size == 0 ? nextId : ring[head].getId();
+            gap = lastEventId + 1 < oldest || lastEventId >= nextId;
+            for (int i = 0; i < size; i++) {
+                FlightEvent event = ring[(head + i) % ring.length];
+                if (event.getId() > lastEventId && filter.test(event)) {
+                    backlog.add(event);
+                }
+            }
+        }
+        Subscription subscription = new Subscription(filter, backlog, gap);
+        subscribers.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Cambio detectado por {@link LiveBoard}, antes de numerarlo.
+     */
+    static final class Change {
+
+        final FlightEvent.Type type;
+        final String feed;
+        final long version;
+        final AvinorFlight flight;
+        final String oldValue;
+        final String newValue;
+
+        Change(FlightEvent.Type type, String feed, long version, AvinorFlight flight, String oldValue,
+                String newValue) {
+            this.type = type;
+            this.feed = feed;
+            this.version = version;
+            this.flight = flight;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+    }
+}
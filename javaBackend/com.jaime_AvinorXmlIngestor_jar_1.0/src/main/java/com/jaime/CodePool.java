@@ -0,0 +1,45 @@
+package com.jaime;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pool de cadenas cortas que se repiten en todos los vuelos (aerolínea,
+ * aeropuerto, dom_int, puerta, cinta...). Cada valor distinto se guarda una
+ * sola vez, de modo que los vuelos parseados y la {@link FlightStateCache}
+ * comparten la misma instancia en lugar de miles de copias iguales.
+ * <p>
+ * El pool está acotado a {@link #MAX_SIZE} valores para que un feed con datos
+ * inesperados no lo haga crecer sin límite; a partir de ahí los valores nuevos
+ * se devuelven sin compartir.
+ *
+ * @author Jaime Villalba
+ */
+final class CodePool {
+
+    static final int MAX_SIZE = 8192;
+
+    private static final Map<String, String> POOL = new ConcurrentHashMap<>();
+
+    private CodePool() {
+    }
+
+    /**
+     * @return la instancia compartida de <code>value</code> (o el propio
+     * <code>value</code> si es null o el pool está lleno)
+     */
+    static String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String shared = POOL.get(value);
+        if (shared != null) {
+            return shared;
+        }
+        if (POOL.size() >= MAX_SIZE) {
+            return value;
+        }
+        shared = POOL.putIfAbsent(value, value);
+        return shared != null ? shared : value;
+    }
+}
@@ -0,0 +1,166 @@
+package com.jaime;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Propagación de los vuelos DY/D8 a <code>combined_flights</code> y
+ * <code>fullyscraped_combined_flights</code> desde el ingestor, en lugar de con
+ * los triggers <code>trg_dyxml_arrivals_*</code> y
+ * <code>trg_combined_flights_*</code>.
+ * <p>
+ * Con los triggers, cada fila de <code>dy_xml_arrivals</code> dispara un upsert
+ * de una fila en <code>combined_flights</code>, que a su vez dispara otro en
+ * <code>fullyscraped_combined_flights</code>, todos fila a fila. Aquí, en la
+ * misma transacción que el lote de {@link FlightBatchWriter}:
+ * <ol>
+ * <li>los vuelos se upsertan en <code>combined_flights</code> con un único
+ * lote (un INSERT multi-fila con <code>rewriteBatchedStatements</code>), con
+ * las mismas columnas que el trigger; las del scraper (<code>ac_reg</code>,
+ * <code>status</code>, <code>stand</code>...) no se tocan;</li>
+ * <li>las filas ya completas de esos vuelos se copian a
+ * <code>fullyscraped_combined_flights</code> con un solo
+ * <code>INSERT ... SELECT</code>, con la misma condición que el trigger.</li>
+ * </ol>
+ * Sólo se activa con {@link Config#COMBINED_MERGE}, que además hace que cada
+ * conexión del pool defina <code>@ingestor_combined_merge</code> para que los
+ * triggers de <code>db/combined_merge_triggers.sql</code> no repitan el
+ * trabajo.
+ *
+ * @author Jaime Villalba
+ */
+final class CombinedFlightMerger implements AutoCloseable {
+
+    private static final String FULLY_SCRAPED_TABLE = "fullyscraped_combined_flights";
+    private static final String COLUMNS = "unique_id, airline, flight_id, ac_reg, dom_int, schedule_time, "
+            + "arr_dep, airport, status, status_code, status_time, belt, check_in, gate, stand, "
+            + "bag_transfer_status, dlayed, last_update, tidy_updated_at, sta";
+    /**
+     * Columnas que los triggers <code>trg_dyxml_arrivals_*</code> actualizan
+     * cuando el vuelo ya está en <code>combined_flights</code>; ni
+     * <code>flight_id</code> ni las del scraper se tocan.
+     */
+    static final String[] UPDATED_COLUMNS = {"airline", "dom_int", "schedule_time", "arr_dep", "airport",
+        "status_code", "status_time", "belt", "check_in", "gate", "dlayed", "last_update", "sta"};
+
+    private final Connection conn;
+    private final String combinedTable;
+    private final PreparedStatement upsertStmt;
+    private final List<String> pendingIds = new ArrayList<>();
+
+    /**
+     * @param conn conexión del {@link FlightBatchWriter}, con el autocommit ya
+     * desactivado
+     * @param direction dirección del feed; debe tener
+     * {@link Direction#getCombinedTable()}
+     */
+    CombinedFlightMerger(Connection conn, Direction direction) throws SQLException {
+        this.conn = conn;
+        this.combinedTable = direction.getCombinedTable();
+        this.upsertStmt = conn.prepareStatement(upsertQuery(combinedTable, direction.getTimeColumn()));
+    }
+
+    // Se inserta como FlightBatchWriter.upsertQuery (mismo bindUpsert) y se actualiza como el trigger.
+    private static String upsertQuery(String table, String timeColumn) {
+        return "INSERT INTO " + table + " ("
+                + "  unique_id, flight_id, airline, dom_int, schedule_time, arr_dep, "
+                + "  airport, check_in, gate, belt, status_code, status_time, dlayed, " + timeColumn + ", last_update"
+                + ") VALUES ("
+                + "  ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, NOW()"
+                + ") ON DUPLICATE KEY UPDATE " + updateClause();
+    }
+
+    /**
+     * @return la lista <code>columna=VALUES(columna)</code> de
+     * {@link #UPDATED_COLUMNS} para un <code>ON DUPLICATE KEY UPDATE</code>
+     * sobre <code>combined_flights</code>
+     */
+    static String updateClause() {
+        StringBuilder sql = new StringBuilder();
+        for (String column : UPDATED_COLUMNS) {
+            sql.append(sql.length() == 0 ? "" : ", ").append(column).append("=VALUES(").append(column).append(")");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Añade un vuelo DY/D8 al lote actual.
+     */
+    void add(AvinorFlight flight) throws SQLException {
+        FlightBatchWriter.bindUpsert(upsertStmt, flight);
+        upsertStmt.addBatch();
+        pendingIds.add(flight.getUniqueId());
+    }
+
+    /**
+     * @return vuelos en el lote actual
+     */
+    int size() {
+        return pendingIds.size();
+    }
+
+    /**
+     * Ejecuta el lote dentro de la transacción en curso, sin confirmarla.
+     *
+     * @return filas afectadas en <code>fullyscraped_combined_flights</code>
+     * (como en MySQL: 1 por inserción, 2 por actualización)
+     */
+    int execute() throws SQLException {
+        if (pendingIds.isEmpty()) {
+            return 0;
+        }
+        upsertStmt.executeBatch();
+        StringBuilder ids = new StringBuilder();
+        for (int i = 0; i < pendingIds.size(); i++) {
+            ids.append(i == 0 ? "?" : ", ?");
+        }
+        try (PreparedStatement copy = conn.prepareStatement(fullyScrapedQuery(combinedTable, ids.toString()))) {
+            for (int i = 0; i < pendingIds.size(); i++) {
+                copy.setString(i + 1, pendingIds.get(i));
+            }
+            int rows = copy.executeUpdate();
+            pendingIds.clear();
+            return rows;
+        }
+    }
+
+    /**
+     * Misma condición que trg_combined_flights_*: sólo se copian las filas sin
+     * huecos.
+     *
+     * @param ids lista de parámetros (<code>?, ?</code>) o subconsulta con los
+     * <code>unique_id</code> a copiar
+     */
+    static String fullyScrapedQuery(String combinedTable, String ids) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(FULLY_SCRAPED_TABLE)
+                .append(" (").append(COLUMNS).append(") SELECT ").append(COLUMNS)
+                .append(" FROM ").append(combinedTable).append(" WHERE unique_id IN (").append(ids);
+        sql.append(") AND status IS NOT NULL AND status_time IS NOT NULL AND stand IS NOT NULL"
+                + " AND bag_transfer_status IS NOT NULL AND tidy_updated_at IS NOT NULL AND sta IS NOT NULL"
+                + " ON DUPLICATE KEY UPDATE ");
+        boolean first = true;
+        for (String column : COLUMNS.split(", ")) {
+            if (!column.equals("unique_id")) {
+                sql.append(first ? "" : ", ").append(column).append("=VALUES(").append(column).append(")");
+                first = false;
+            }
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Descarta el lote actual (el rollback lo hace el escritor).
+     */
+    void clear() throws SQLException {
+        upsertStmt.clearBatch();
+        pendingIds.clear();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        upsertStmt.close();
+    }
+}
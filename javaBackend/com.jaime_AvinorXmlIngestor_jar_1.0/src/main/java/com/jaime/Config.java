@@ -2,6 +2,11 @@
 package com.jaime;
 
 import io.github.cdimascio.dotenv.Dotenv;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  *
@@ -17,6 +22,86 @@ public class Config {
     public static final String API_URL_ARRIVALS;
     public static final String API_URL_DEPARTURES;
 
+    // URL JDBC construida a partir de DB_HOST/DB_PORT/DB_NAME. rewriteBatchedStatements permite a Connector/J
+    // enviar cada lote de addBatch() como un único INSERT multi-fila.
+    public static final String DB_URL;
+    // Número de vuelos por transacción en las escrituras por lotes.
+    public static final int DB_BATCH_SIZE;
+    // Pool de conexiones (HikariCP). Si DB_POOL_VALIDATION_QUERY está vacío se valida con Connection.isValid().
+    public static final int DB_POOL_MIN_IDLE;
+    public static final int DB_POOL_MAX_SIZE;
+    public static final long DB_POOL_IDLE_TIMEOUT_MS;
+    public static final String DB_POOL_VALIDATION_QUERY;
+    // Feeds a ingerir. Si AVINOR_AIRPORTS tiene valor se genera un feed por aeropuerto y dirección a partir de
+    // API_URL_TEMPLATE; si no, se usan API_URL_ARRIVALS y API_URL_DEPARTURES (un único aeropuerto).
+    public static final List<FeedDescriptor> FEEDS;
+    // Máximo de feeds descargándose/parseándose a la vez.
+    public static final int INGEST_FETCH_CONCURRENCY;
+    // Hilos que escriben en MySQL a la vez, compartidos por todos los feeds.
+    public static final int DB_WRITER_THREADS;
+    // Vuelos pendientes de escribir a partir de los cuales los polls esperan a los escritores (backpressure).
+    public static final int WRITE_QUEUE_CAPACITY;
+    // Polling incremental con el parámetro lastUpdate de Avinor. Cada FULL_RESYNC_MINUTES se descarga el feed completo
+    // para corregir desviaciones; INCREMENTAL_OVERLAP_SECONDS solapa las ventanas para no perder cambios en el límite.
+    public static final boolean INCREMENTAL_POLLING;
+    public static final long INCREMENTAL_OVERLAP_SECONDS;
+    public static final long FULL_RESYNC_MINUTES;
+    // Días anteriores a hoy cuyos vuelos se mantienen en la caché de puertas en memoria.
+    public static final int CACHE_RETENTION_DAYS;
+    // Intervalo de polling por defecto y, en POLL_INTERVALS, por feed (p. ej. OSL-A=60,BGO-D=300), en segundos.
+    public static final long POLL_INTERVAL_SECONDS;
+    public static final Map<String, Long> POLL_INTERVALS;
+    // Polling adaptativo: intervalo rápido si hay vuelos en los próximos POLL_NEAR_WINDOW_MINUTES, lento si no hay
+    // ninguno en los próximos POLL_QUIET_WINDOW_MINUTES (noche). POLL_JITTER_PERCENT desplaza cada poll al azar.
+    public static final long POLL_FAST_INTERVAL_SECONDS;
+    public static final long POLL_SLOW_INTERVAL_SECONDS;
+    public static final long POLL_NEAR_WINDOW_MINUTES;
+    public static final long POLL_QUIET_WINDOW_MINUTES;
+    public static final int POLL_JITTER_PERCENT;
+    // Tiempo máximo para terminar los polls en curso y vaciar la cola de escritura al detener la JVM. Debe ser
+    // menor que el plazo de docker stop (10 s por defecto, o el indicado con -t).
+    public static final long SHUTDOWN_TIMEOUT_SECONDS;
+    // Los cambios de puerta se acumulan y se vuelcan en gate_history_* al llegar a GATE_HISTORY_FLUSH_SIZE vuelos
+    // o cuando el más antiguo lleva GATE_HISTORY_FLUSH_MS milisegundos esperando. Con WAL_DIR no se usan: los cambios
+    // de puerta se insertan en la transacción de cada lote.
+    public static final int GATE_HISTORY_FLUSH_SIZE;
+    public static final long GATE_HISTORY_FLUSH_MS;
+    // Si es true, el ingestor escribe él mismo combined_flights y fullyscraped_combined_flights y desactiva en sus
+    // conexiones los triggers de db/combined_merge_triggers.sql (que hay que aplicar antes).
+    public static final boolean COMBINED_MERGE;
+    // Si es true, cada lote informa de las escrituras de fila que hizo MySQL (incluidas las de triggers) según
+    // los contadores Handler_write/Handler_update de la sesión. Cuesta dos consultas más por lote.
+    public static final boolean MEASURE_WRITE_AMPLIFICATION;
+    // Puerto del endpoint /metrics (formato Prometheus); 0 lo desactiva. Las métricas se publican siempre por JMX.
+    public static final int METRICS_PORT;
+    // Puerto de la API JSON del panel en memoria de vuelos activos (BoardServer); 0 la desactiva.
+    public static final int BOARD_PORT;
+    // Stream de cambios /events (en el mismo puerto): eventos que se guardan para las reconexiones y clientes a la vez.
+    public static final int STREAM_BUFFER_SIZE;
+    public static final int STREAM_MAX_SUBSCRIBERS;
+    // Directorio donde se graban comprimidas las respuestas de los feeds (vacío: no se graban) y días que se
+    // conservan (0: todos). Ver SnapshotArchive y SnapshotReplay.
+    public static final String SNAPSHOT_DIR;
+    public static final int SNAPSHOT_RETENTION_DAYS;
+    // Write-ahead log local (vacío: desactivado). Los vuelos se guardan en WAL_DIR antes de escribirse en MySQL y
+    // se aplican desde ahí, reintentando mientras la base de datos no responda. Tamaño de cada segmento (MB), si
+    // se fuerza a disco cada poll, y segmentos cerrados sin aplicar a partir de los cuales se compactan (0: nunca).
+    public static final String WAL_DIR;
+    public static final int WAL_SEGMENT_MB;
+    public static final boolean WAL_SYNC;
+    public static final int WAL_COMPACT_SEGMENTS;
+    // Directorio con las exportaciones CSV de Movement Progress de Tidy que se cargan en movement_progress (vacío:
+    // no se cargan) y segundos entre revisiones. Ver MovementCsvIngestor.
+    public static final String MOVEMENTS_CSV_DIR;
+    public static final long MOVEMENTS_SCAN_SECONDS;
+    // Segundos entre resúmenes de rendimiento en el log (evento throughput); 0 los desactiva.
+    public static final long THROUGHPUT_REPORT_SECONDS;
+    // Log asíncrono: nivel (INFO, FINE...), eventos que caben en el buffer antes de descartar, y segundos mínimos
+    // entre dos avisos o errores iguales.
+    public static final String LOG_LEVEL;
+    public static final int LOG_BUFFER_SIZE;
+    public static final long LOG_ERROR_INTERVAL_SECONDS;
+
     // Bloque estático para inicializar las variables. Se ejecuta para cargar las variables de entorno una vez cuando se carga la clase en memoria
     static {
         Dotenv dotenv = Dotenv.load();
@@ -27,6 +112,92 @@ public class Config {
         DB_PASSWORD = dotenv.get("DB_PASSWORD");
         API_URL_ARRIVALS = dotenv.get("API_URL_ARRIVALS");
         API_URL_DEPARTURES = dotenv.get("API_URL_DEPARTURES");
+        DB_URL = "jdbc:mysql://" + DB_HOST + ":" + DB_PORT + "/" + DB_NAME
+                + "?rewriteBatchedStatements=" + dotenv.get("DB_REWRITE_BATCHED_STATEMENTS", "true");
+        DB_BATCH_SIZE = Integer.parseInt(dotenv.get("DB_BATCH_SIZE", "500"));
+        DB_POOL_MIN_IDLE = Integer.parseInt(dotenv.get("DB_POOL_MIN_IDLE", "1"));
+        DB_POOL_MAX_SIZE = Integer.parseInt(dotenv.get("DB_POOL_MAX_SIZE", "4"));
+        DB_POOL_IDLE_TIMEOUT_MS = Long.parseLong(dotenv.get("DB_POOL_IDLE_TIMEOUT_MS", "600000"));
+        DB_POOL_VALIDATION_QUERY = dotenv.get("DB_POOL_VALIDATION_QUERY", "");
+        FEEDS = buildFeeds(dotenv);
+        INGEST_FETCH_CONCURRENCY = Integer.parseInt(dotenv.get("INGEST_FETCH_CONCURRENCY",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        DB_WRITER_THREADS = Integer.parseInt(dotenv.get("DB_WRITER_THREADS", "1"));
+        WRITE_QUEUE_CAPACITY = Integer.parseInt(dotenv.get("WRITE_QUEUE_CAPACITY", "10000"));
+        INCREMENTAL_POLLING = Boolean.parseBoolean(dotenv.get("INCREMENTAL_POLLING", "true"));
+        INCREMENTAL_OVERLAP_SECONDS = Long.parseLong(dotenv.get("INCREMENTAL_OVERLAP_SECONDS", "60"));
+        FULL_RESYNC_MINUTES = Long.parseLong(dotenv.get("FULL_RESYNC_MINUTES", "60"));
+        CACHE_RETENTION_DAYS = Integer.parseInt(dotenv.get("CACHE_RETENTION_DAYS", "1"));
+        POLL_INTERVAL_SECONDS = Long.parseLong(dotenv.get("POLL_INTERVAL_SECONDS", "180"));
+        POLL_INTERVALS = parseIntervals(dotenv.get("POLL_INTERVALS", ""));
+        POLL_FAST_INTERVAL_SECONDS = Long.parseLong(dotenv.get("POLL_FAST_INTERVAL_SECONDS", "60"));
+        POLL_SLOW_INTERVAL_SECONDS = Long.parseLong(dotenv.get("POLL_SLOW_INTERVAL_SECONDS", "600"));
+        POLL_NEAR_WINDOW_MINUTES = Long.parseLong(dotenv.get("POLL_NEAR_WINDOW_MINUTES", "60"));
+        POLL_QUIET_WINDOW_MINUTES = Long.parseLong(dotenv.get("POLL_QUIET_WINDOW_MINUTES", "180"));
+        POLL_JITTER_PERCENT = Integer.parseInt(dotenv.get("POLL_JITTER_PERCENT", "10"));
+        SHUTDOWN_TIMEOUT_SECONDS = Long.parseLong(dotenv.get("SHUTDOWN_TIMEOUT_SECONDS", "8"));
+        GATE_HISTORY_FLUSH_SIZE = Integer.parseInt(dotenv.get("GATE_HISTORY_FLUSH_SIZE", "200"));
+        GATE_HISTORY_FLUSH_MS = Long.parseLong(dotenv.get("GATE_HISTORY_FLUSH_MS", "5000"));
+        COMBINED_MERGE = Boolean.parseBoolean(dotenv.get("COMBINED_MERGE", "false"));
+        MEASURE_WRITE_AMPLIFICATION = Boolean.parseBoolean(dotenv.get("MEASURE_WRITE_AMPLIFICATION", "false"));
+        METRICS_PORT = Integer.parseInt(dotenv.get("METRICS_PORT", "9464"));
+        BOARD_PORT = Integer.parseInt(dotenv.get("BOARD_PORT", "8090"));
+        STREAM_BUFFER_SIZE = Integer.parseInt(dotenv.get("STREAM_BUFFER_SIZE", "10000"));
+        STREAM_MAX_SUBSCRIBERS = Integer.parseInt(dotenv.get("STREAM_MAX_SUBSCRIBERS", "64"));
+        SNAPSHOT_DIR = dotenv.get("SNAPSHOT_DIR", "");
+        SNAPSHOT_RETENTION_DAYS = Integer.parseInt(dotenv.get("SNAPSHOT_RETENTION_DAYS", "7"));
+        WAL_DIR = dotenv.get("WAL_DIR", "");
+        WAL_SEGMENT_MB = Integer.parseInt(dotenv.get("WAL_SEGMENT_MB", "64"));
+        WAL_SYNC = Boolean.parseBoolean(dotenv.get("WAL_SYNC", "true"));
+        WAL_COMPACT_SEGMENTS = Integer.parseInt(dotenv.get("WAL_COMPACT_SEGMENTS", "4"));
+        MOVEMENTS_CSV_DIR = dotenv.get("MOVEMENTS_CSV_DIR", "");
+        MOVEMENTS_SCAN_SECONDS = Long.parseLong(dotenv.get("MOVEMENTS_SCAN_SECONDS", "300"));
+        THROUGHPUT_REPORT_SECONDS = Long.parseLong(dotenv.get("THROUGHPUT_REPORT_SECONDS", "0"));
+        LOG_LEVEL = dotenv.get("LOG_LEVEL", "INFO");
+        LOG_BUFFER_SIZE = Integer.parseInt(dotenv.get("LOG_BUFFER_SIZE", "8192"));
+        LOG_ERROR_INTERVAL_SECONDS = Long.parseLong(dotenv.get("LOG_ERROR_INTERVAL_SECONDS", "60"));
+    }
+
+    private static List<FeedDescriptor> buildFeeds(Dotenv dotenv) {
+        List<FeedDescriptor> feeds = new ArrayList<>();
+        String airports = dotenv.get("AVINOR_AIRPORTS", "");
+        if (airports.isBlank()) {
+            feeds.add(FeedDescriptor.fromUrl(Direction.ARRIVALS, API_URL_ARRIVALS));
+            feeds.add(FeedDescriptor.fromUrl(Direction.DEPARTURES, API_URL_DEPARTURES));
+        } else {
+            String template = dotenv.get("API_URL_TEMPLATE",
+                    "https://asrv.avinor.no/XmlFeed/v1.0?TimeFrom=1&TimeTo=7&airport={airport}&direction={direction}");
+            String[] directions = dotenv.get("AVINOR_DIRECTIONS", "A,D").split(",");
+            for (String airport : airports.split(",")) {
+                for (String code : directions) {
+                    Direction direction = Direction.fromCode(code.trim());
+                    String url = template.replace("{airport}", airport.trim())
+                            .replace("{direction}", direction.getCode());
+                    feeds.add(new FeedDescriptor(airport.trim(), direction, url));
+                }
+            }
+        }
+        return Collections.unmodifiableList(feeds);
+    }
+
+    // Formato: NOMBRE_FEED=segundos separados por comas, p. ej. OSL-A=60,BGO-D=300
+    private static Map<String, Long> parseIntervals(String value) {
+        Map<String, Long> intervals = new HashMap<>();
+        for (String entry : value.split(",")) {
+            int eq = entry.indexOf('=');
+            if (eq > 0) {
+                intervals.put(entry.substring(0, eq).trim(), Long.parseLong(entry.substring(eq + 1).trim()));
+            }
+        }
+        return Collections.unmodifiableMap(intervals);
+    }
+
+    /**
+     * @return intervalo base de polling del feed en segundos:
+     * {@link #POLL_INTERVALS} si lo define, si no {@link #POLL_INTERVAL_SECONDS}
+     */
+    public static long pollIntervalSeconds(FeedDescriptor feed) {
+        return POLL_INTERVALS.getOrDefault(feed.getName(), POLL_INTERVAL_SECONDS);
     }
 
 }
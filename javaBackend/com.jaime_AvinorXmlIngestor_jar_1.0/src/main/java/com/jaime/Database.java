@@ -0,0 +1,96 @@
+package com.jaime;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Pool de conexiones MySQL compartido por todos los ingestores.
+ * <p>
+ * Sustituye al <code>DriverManager.getConnection()</code> que cada tarea abría
+ * y cerraba en cada ejecución: las conexiones se mantienen abiertas y se
+ * reutilizan, así que llegadas y salidas ya no pagan el handshake TCP y de
+ * autenticación en cada poll. Cerrar una conexión obtenida de aquí la devuelve
+ * al pool.
+ * <p>
+ * Los PreparedStatement se preparan en el servidor y se cachean por conexión
+ * (<code>useServerPrepStmts</code>/<code>cachePrepStmts</code>), de modo que
+ * las mismas sentencias de upsert no se vuelven a parsear en cada poll.
+ *
+ * @author Jaime Villalba
+ */
+public final class Database {
+
+    private static final PoolMetrics METRICS = new PoolMetrics();
+    private static volatile HikariDataSource dataSource;
+
+    private Database() {
+    }
+
+    private static HikariDataSource dataSource() {
+        HikariDataSource ds = dataSource;
+        if (ds == null) {
+            synchronized (Database.class) {
+                ds = dataSource;
+                if (ds == null) {
+                    ds = new HikariDataSource(buildConfig());
+                    dataSource = ds;
+                }
+            }
+        }
+        return ds;
+    }
+
+    private static HikariConfig buildConfig() {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("AvinorXmlIngestor");
+        config.setJdbcUrl(Config.DB_URL);
+        config.setUsername(Config.DB_USER);
+        config.setPassword(Config.DB_PASSWORD);
+        config.setMinimumIdle(Config.DB_POOL_MIN_IDLE);
+        config.setMaximumPoolSize(Config.DB_POOL_MAX_SIZE);
+        config.setIdleTimeout(Config.DB_POOL_IDLE_TIMEOUT_MS);
+        // Si no se indica, Hikari valida con Connection.isValid(), que es lo recomendado con drivers JDBC4.
+        if (Config.DB_POOL_VALIDATION_QUERY != null && !Config.DB_POOL_VALIDATION_QUERY.isEmpty()) {
+            config.setConnectionTestQuery(Config.DB_POOL_VALIDATION_QUERY);
+        }
+        // Caché de sentencias preparadas en el servidor (Connector/J)
+        config.addDataSourceProperty("useServerPrepStmts", "true");
+        config.addDataSourceProperty("cachePrepStmts", "true");
+        config.addDataSourceProperty("prepStmtCacheSize", "250");
+        config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        // Los triggers de db/combined_merge_triggers.sql no propagan a combined_flights en estas sesiones.
+        if (Config.COMBINED_MERGE) {
+            config.setConnectionInitSql("SET @ingestor_combined_merge = 1");
+        }
+        config.setMetricsTrackerFactory(METRICS);
+        // Publica HikariPoolMXBean por JMX (activas, ociosas, en espera)
+        config.setRegisterMbeans(true);
+        return config;
+    }
+
+    /**
+     * @return una conexión del pool; cerrarla la devuelve al pool
+     */
+    public static Connection getConnection() throws SQLException {
+        return dataSource().getConnection();
+    }
+
+    /**
+     * @return métricas del pool (conexiones activas/ociosas, tiempos de espera)
+     */
+    public static PoolMetrics metrics() {
+        return METRICS;
+    }
+
+    /**
+     * Cierra el pool y todas sus conexiones.
+     */
+    public static void close() {
+        HikariDataSource ds = dataSource;
+        if (ds != null) {
+            ds.close();
+        }
+    }
+}
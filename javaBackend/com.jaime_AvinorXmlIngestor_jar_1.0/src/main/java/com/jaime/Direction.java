@@ -0,0 +1,78 @@
+package com.jaime;
+
+/**
+ * Dirección de un feed de Avinor (parámetro <code>direction</code> de la API)
+ * y conjunto de tablas en las que se guardan sus vuelos.
+ *
+ * @author Jaime Villalba
+ */
+public enum Direction {
+
+    ARRIVALS("A", "avinor_xml_arrivals", "dy_xml_arrivals", "gate_history_arrivals", "sta", "combined_flights"),
+    DEPARTURES("D", "avinor_xml_departures", "dy_xml_departures", "gate_history_departures", "std", null);
+
+    private final String code;
+    private final String table;
+    private final String dyTable;
+    private final String gateHistoryTable;
+    private final String timeColumn;
+    private final String combinedTable;
+
+    Direction(String code, String table, String dyTable, String gateHistoryTable, String timeColumn,
+            String combinedTable) {
+        this.code = code;
+        this.table = table;
+        this.dyTable = dyTable;
+        this.gateHistoryTable = gateHistoryTable;
+        this.timeColumn = timeColumn;
+        this.combinedTable = combinedTable;
+    }
+
+    /**
+     * @return "A" o "D", como en la API de Avinor
+     */
+    public String getCode() {
+        return code;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getDyTable() {
+        return dyTable;
+    }
+
+    public String getGateHistoryTable() {
+        return gateHistoryTable;
+    }
+
+    /**
+     * @return columna con la hora local programada (<code>sta</code> o
+     * <code>std</code>)
+     */
+    public String getTimeColumn() {
+        return timeColumn;
+    }
+
+    /**
+     * @return tabla que combina los vuelos DY/D8 con los datos del scraper
+     * (<code>combined_flights</code>), o <code>null</code> si la dirección no
+     * tiene
+     */
+    public String getCombinedTable() {
+        return combinedTable;
+    }
+
+    /**
+     * @param code "A" o "D" (sin distinguir mayúsculas)
+     */
+    public static Direction fromCode(String code) {
+        for (Direction direction : values()) {
+            if (direction.code.equalsIgnoreCase(code)) {
+                return direction;
+            }
+        }
+        throw new IllegalArgumentException("Dirección desconocida: " + code);
+    }
+}
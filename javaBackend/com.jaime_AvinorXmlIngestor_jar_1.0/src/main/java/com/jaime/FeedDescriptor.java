@@ -0,0 +1,59 @@
+package com.jaime;
+
+/**
+ * Describe un feed a ingerir: aeropuerto, dirección (y con ella las tablas de
+ * destino) y URL de la API.
+ *
+ * @author Jaime Villalba
+ */
+public final class FeedDescriptor {
+
+    private final String airport;
+    private final Direction direction;
+    private final String url;
+
+    public FeedDescriptor(String airport, Direction direction, String url) {
+        this.airport = airport;
+        this.direction = direction;
+        this.url = url;
+    }
+
+    /**
+     * Crea el descriptor a partir de una URL completa de la API, tomando el
+     * aeropuerto de su parámetro <code>airport</code>.
+     */
+    public static FeedDescriptor fromUrl(Direction direction, String url) {
+        String airport = "N/A";
+        int start = url.indexOf("airport=");
+        if (start >= 0) {
+            start += "airport=".length();
+            int end = url.indexOf('&', start);
+            airport = end >= 0 ? url.substring(start, end) : url.substring(start);
+        }
+        return new FeedDescriptor(airport, direction, url);
+    }
+
+    public String getAirport() {
+        return airport;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return nombre corto para logs, p. ej. "OSL-A"
+     */
+    public String getName() {
+        return airport + "-" + direction.getCode();
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
@@ -0,0 +1,224 @@
+package com.jaime;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Descarga condicional de un feed de Avinor.
+ * <p>
+ * Guarda el <code>ETag</code> y el <code>Last-Modified</code> de la última
+ * respuesta procesada y los reenvía como <code>If-None-Match</code> /
+ * <code>If-Modified-Since</code>. Si el servidor contesta 304 Not Modified, el
+ * poll no tiene nada que parsear ni escribir. Además pide la respuesta
+ * comprimida (gzip/deflate) y la descomprime en streaming.
+ * <p>
+ * Los validadores sólo se actualizan con {@link #accept(Response)}, que debe
+ * llamarse cuando la respuesta se ha procesado y escrito sin errores: si la
+ * escritura falla, el siguiente poll vuelve a descargar el feed completo en
+ * lugar de recibir un 304 y perder esos cambios.
+ *
+ * @author Jaime Villalba
+ */
+public class FeedFetcher {
+
+    /**
+     * Respuesta de una descarga. Si {@link #isNotModified()} es cierto no hay
+     * cuerpo.
+     */
+    public static final class Response implements AutoCloseable {
+
+        private final InputStream body;
+        private final CountingInputStream wire;
+        // Cierto si la respuesta corresponde a la URL base (y sus validadores valen para la siguiente petición)
+        private final boolean baseUrl;
+        private final String etag;
+        private final String lastModified;
+
+        private Response(InputStream body, CountingInputStream wire, boolean baseUrl, String etag,
+                String lastModified) {
+            this.body = body;
+            this.wire = wire;
+            this.baseUrl = baseUrl;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        public boolean isNotModified() {
+            return body == null;
+        }
+
+        /**
+         * @return el XML ya descomprimido
+         */
+        public InputStream getBody() {
+            return body;
+        }
+
+        /**
+         * @return bytes recibidos hasta ahora, tal como llegan por la red
+         * (comprimidos si el servidor comprimió)
+         */
+        public long getWireBytes() {
+            return wire != null ? wire.count : 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (body != null) {
+                body.close();
+            }
+        }
+    }
+
+    // Cuenta los bytes leídos del cuerpo sin comprimir ni copiar nada.
+    private static final class CountingInputStream extends FilterInputStream {
+
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    private final URI uri;
+    private final HttpClient client;
+    private volatile String etag;
+    private volatile String lastModified;
+
+    /**
+     * @param url URL base del feed; los validadores de caché sólo se aplican a
+     * esta URL
+     * @param client cliente HTTP, compartido por todos los feeds (ver
+     * {@link #newHttpClient()})
+     */
+    public FeedFetcher(String url, HttpClient client) {
+        this.uri = URI.create(url);
+        this.client = client;
+    }
+
+    /**
+     * @return un cliente HTTP para los feeds de Avinor. Es thread-safe y
+     * mantiene las conexiones abiertas entre polls, así que basta uno para
+     * toda la ingesta.
+     */
+    public static HttpClient newHttpClient() {
+        return HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    /**
+     * Realiza la petición GET condicional a la URL base.
+     *
+     * @return la respuesta; hay que cerrarla
+     * @throws IOException si la petición falla o el servidor responde con un
+     * código distinto de 2xx/304
+     */
+    public Response fetch() throws IOException, InterruptedException {
+        return fetch(uri);
+    }
+
+    /**
+     * Realiza la petición GET a una URL derivada de la base (p. ej. con
+     * <code>lastUpdate</code>). Sólo se envían validadores si la URL es la
+     * base, porque el ETag de una consulta no vale para otra.
+     */
+    public Response fetch(URI target) throws IOException, InterruptedException {
+        boolean conditional = target.equals(uri);
+        HttpRequest.Builder request = HttpRequest.newBuilder(target)
+                .timeout(REQUEST_TIMEOUT)
+                .header("Accept", "application/xml")
+                .header("Accept-Encoding", "gzip, deflate")
+                .GET();
+        if (conditional && etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        if (conditional && lastModified != null) {
+            request.header("If-Modified-Since", lastModified);
+        }
+
+        HttpResponse<InputStream> response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        int status = response.statusCode();
+        String newEtag = response.headers().firstValue("ETag").orElse(null);
+        String newLastModified = response.headers().firstValue("Last-Modified").orElse(null);
+
+        if (status == 304) {
+            response.body().close();
+            return new Response(null, null, conditional, newEtag != null ? newEtag : etag,
+                    newLastModified != null ? newLastModified : lastModified);
+        }
+        if (status < 200 || status >= 300) {
+            response.body().close();
+            throw new IOException("HTTP " + status + " al descargar " + target);
+        }
+        CountingInputStream wire = new CountingInputStream(response.body());
+        return new Response(decode(response, wire), wire, conditional, newEtag, newLastModified);
+    }
+
+    private static InputStream decode(HttpResponse<InputStream> response, InputStream body) throws IOException {
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+        if (encoding.equalsIgnoreCase("gzip")) {
+            return new GZIPInputStream(body, 8192);
+        }
+        if (encoding.equalsIgnoreCase("deflate")) {
+            return new InflaterInputStream(body);
+        }
+        return body;
+    }
+
+    /**
+     * Memoriza los validadores de una respuesta ya procesada con éxito, para
+     * la próxima petición condicional.
+     */
+    public void accept(Response response) {
+        if (!response.baseUrl) {
+            return;
+        }
+        etag = response.etag;
+        lastModified = response.lastModified;
+    }
+
+    /**
+     * Olvida los validadores; la próxima petición descargará el feed completo.
+     */
+    public void reset() {
+        etag = null;
+        lastModified = null;
+    }
+}
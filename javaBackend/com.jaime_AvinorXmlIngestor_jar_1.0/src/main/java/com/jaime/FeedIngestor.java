@@ -0,0 +1,378 @@
+package com.jaime;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ejecución (poll) de un feed de Avinor, común a llegadas y salidas.
+ * <p>
+ * Todo lo que distingue un feed de otro (URL, tablas de destino y columna
+ * <code>sta</code>/<code>std</code>) viene en su {@link FeedDescriptor}, así
+ * que el mismo código sirve para cualquier aeropuerto y dirección. Pasos de
+ * cada ejecución:
+ * <ol>
+ * <li>Carga la {@link FlightStateCache} de la dirección si aún no lo está y
+ * descarta los vuelos de días pasados.</li>
+ * <li>Decide si el poll es completo o incremental: tras un poll correcto se
+ * piden sólo los vuelos modificados desde entonces (parámetro
+ * <code>lastUpdate</code>), con una resincronización completa cada
+ * {@link Config#FULL_RESYNC_MINUTES} minutos.</li>
+ * <li>Realiza la petición HTTP GET condicional y comprimida con
+ * {@link FeedFetcher}; si el feed no cambió (304) termina aquí.</li>
+ * <li>Parsea el XML en streaming con {@link AvinorXmlParser}.</li>
+ * <li>Descarta los vuelos sin cambios desde el último poll (misma
+ * huella).</li>
+ * <li>Encola los vuelos nuevos o cambiados en el {@link FlightWriteService}
+ * compartido, que los inserta o actualiza en <code>avinor_xml_*</code> (y
+ * <code>dy_xml_*</code> para DY/D8) y registra los cambios de puerta en
+ * <code>gate_history_*</code>, en lotes de {@link Config#DB_BATCH_SIZE} vuelos
+ * por transacción.</li>
+ * </ol>
+ * El poll no espera a que se escriban los vuelos: la escritura termina en
+ * segundo plano y sólo entonces se da el poll por bueno (validadores HTTP e
+ * instante de <code>lastUpdate</code>). Si falla, el siguiente poll vuelve a
+ * pedir esos cambios. Con {@link Config#WAL_DIR} el poll se da por bueno en
+ * cuanto sus vuelos están en el {@link WriteAheadLog}, aunque MySQL no
+ * responda.
+ * <p>
+ * Con {@link Config#SNAPSHOT_DIR} cada respuesta se graba en un
+ * {@link SnapshotArchive}; {@link #replay} procesa después esas respuestas por
+ * el mismo camino (parseo, comparación y escritura) sin descargar nada. Si
+ * hay {@link LiveBoard}, se actualiza con cada poll.
+ * <p>
+ * Cada poll alimenta las {@link Metrics} del feed (etiqueta
+ * <code>feed</code>): tiempos de descarga y parseo, bytes recibidos y vuelos
+ * nuevos, cambiados, sin cambios y omitidos.
+ *
+ * @author Jaime Villalba
+ */
+public class FeedIngestor implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(FeedIngestor.class.getName());
+    // Vuelos ya pasados que se siguen considerando al decidir la frecuencia de polling
+    private static final Duration SCHEDULE_HORIZON = Duration.ofHours(1);
+
+    private final FeedDescriptor feed;
+    private final FlightStateCache cache;
+    private final FlightWriteService writeService;
+    private final FeedFetcher fetcher;
+    private final SnapshotArchive archive;
+    private final LiveBoard board;
+    // Inicio del último poll procesado con éxito y de la última descarga completa (sin lastUpdate)
+    private volatile Instant lastSuccessfulPoll;
+    private volatile Instant lastFullSync;
+    // schedule_time (epoch UTC) de los vuelos vistos en el feed, para adaptar la frecuencia de polling
+    private final Map<String, Long> schedule = new ConcurrentHashMap<>();
+
+    private final Metrics.Counter polls;
+    private final Metrics.Counter pollErrors;
+    private final Metrics.Counter notModified;
+    private final Metrics.Histogram fetchSeconds;
+    private final Metrics.Counter fetchBytes;
+    private final Metrics.Histogram parseSeconds;
+    private final Metrics.Counter flightsNew;
+    private final Metrics.Counter flightsChanged;
+    private final Metrics.Counter flightsUnchanged;
+    private final Metrics.Counter flightsSkipped;
+    private volatile int lastPollFlights;
+
+    /**
+     * @param feed feed a ingerir
+     * @param cache caché de estado de la tabla de destino; la comparten todos
+     * los feeds de la misma dirección
+     * @param writeService escritor compartido por todos los feeds
+     * @param httpClient cliente HTTP compartido por todos los feeds
+     * @param archive dónde grabar las respuestas, o <code>null</code> para no
+     * grabarlas
+     * @param board panel en memoria que se actualiza tras cada poll, o
+     * <code>null</code>
+     */
+    public FeedIngestor(FeedDescriptor feed, FlightStateCache cache, FlightWriteService writeService,
+            HttpClient httpClient, SnapshotArchive archive, LiveBoard board) {
+        this.feed = feed;
+        this.cache = cache;
+        this.writeService = writeService;
+        this.fetcher = new FeedFetcher(feed.getUrl(), httpClient);
+        this.archive = archive;
+        this.board = board;
+
+        Metrics metrics = Metrics.registry();
+        String name = feed.getName();
+        polls = metrics.counter("ingest_polls_total", "Polls ejecutados", "feed", name);
+        pollErrors = metrics.counter("ingest_poll_errors_total",
+                "Polls fallidos (descarga, parseo o escritura)", "feed", name);
+        notModified = metrics.counter("ingest_not_modified_total", "Respuestas 304 Not Modified", "feed", name);
+        fetchSeconds = metrics.histogram("ingest_fetch_seconds",
+                "Tiempo hasta recibir las cabeceras de la respuesta HTTP", "feed", name);
+        fetchBytes = metrics.counter("ingest_fetch_bytes_total", "Bytes recibidos del feed (comprimidos)",
+                "feed", name);
+        parseSeconds = metrics.histogram("ingest_parse_seconds",
+                "Tiempo de lectura del cuerpo, parseo y comparación con la caché", "feed", name);
+        String flightsHelp = "Vuelos leídos del feed según el resultado de compararlos con la caché";
+        flightsNew = metrics.counter("ingest_flights_total", flightsHelp, "feed", name, "result", "new");
+        flightsChanged = metrics.counter("ingest_flights_total", flightsHelp, "feed", name, "result", "changed");
+        flightsUnchanged = metrics.counter("ingest_flights_total", flightsHelp, "feed", name, "result", "unchanged");
+        flightsSkipped = metrics.counter("ingest_flights_total", flightsHelp, "feed", name, "result", "skipped");
+        metrics.gauge("ingest_poll_flights", "Vuelos en el último poll", () -> lastPollFlights, "feed", name);
+    }
+
+    public FeedDescriptor getFeed() {
+        return feed;
+    }
+
+    /**
+     * Ejecuta un poll capturando cualquier error, para que el scheduler siga
+     * programando las siguientes ejecuciones.
+     */
+    @Override
+    public void run() {
+        try {
+            poll();
+        } catch (Exception ex) {
+            LogEvent.log(LOGGER, Level.SEVERE, "poll_error", ex, "feed", feed.getName());
+        }
+    }
+
+    /**
+     * Ejecuta un poll completo del feed: descarga, parseo y comparación en el
+     * hilo actual; la escritura se encola en el {@link FlightWriteService}
+     * compartido y no se espera (sólo se bloquea si su cola está llena).
+     *
+     * @return estadísticas de la ejecución
+     */
+    public PollStats poll() throws Exception {
+        polls.inc();
+        try {
+            return doPoll();
+        } catch (Exception ex) {
+            pollErrors.inc();
+            throw ex;
+        }
+    }
+
+    private PollStats doPoll() throws Exception {
+        // La puerta anterior de cada vuelo se consulta en la caché en memoria, cargada una sola vez.
+        if (!cache.isLoaded()) {
+            try (Connection conn = Database.getConnection()) {
+                cache.ensureLoaded(conn);
+            } catch (SQLException | RuntimeException ex) {
+                if (!writeService.hasWal()) {
+                    throw ex;
+                }
+                // Con WAL se ingiere sin caché: todo cuenta como nuevo y el escritor la carga antes de aplicar el log.
+                LogEvent.log(LOGGER, Level.WARNING, "cache_unavailable", ex, "feed", feed.getName());
+            }
+        }
+        cache.evictExpired();
+
+        // Tras un poll correcto se piden sólo los vuelos modificados desde entonces (lastUpdate), salvo cuando
+        // toca la resincronización completa periódica.
+        Instant pollStart = Instant.now();
+        boolean fullSync = needsFullSync(pollStart);
+        URI target = fullSync ? URI.create(feed.getUrl())
+                : incrementalUri(lastSuccessfulPoll.minusSeconds(Config.INCREMENTAL_OVERLAP_SECONDS));
+        PollStats stats = new PollStats();
+        stats.setIncremental(!fullSync);
+
+        // Petición HTTP GET condicional: si el feed no cambió (304) no hay nada que parsear ni escribir.
+        long fetchStart = System.nanoTime();
+        try (FeedFetcher.Response response = fetcher.fetch(target)) {
+            fetchSeconds.observeNanos(System.nanoTime() - fetchStart);
+            if (response.isNotModified()) {
+                notModified.inc();
+                lastPollFlights = 0;
+                stats.markNotModified();
+                markSuccess(pollStart, fullSync, response);
+                LogEvent.info(LOGGER, "poll", "feed", feed.getName(), "mode", fullSync ? "full" : "incremental",
+                        "result", "not_modified");
+                return stats;
+            }
+
+            // Con SNAPSHOT_DIR la respuesta se graba mientras se parsea.
+            CompletableFuture<Integer> written;
+            InputStream body = archive != null ? archive.record(feed, pollStart, fullSync, response.getBody())
+                    : response.getBody();
+            try (body) {
+                written = ingest(body, stats, pollStart, fullSync);
+            }
+            fetchBytes.add(response.getWireBytes());
+
+            // La escritura se encola y el poll termina sin esperar a MySQL; el resto ocurre al confirmarse.
+            written.whenComplete((count, error) -> {
+                if (error != null) {
+                    pollErrors.inc();
+                    LogEvent.log(LOGGER, Level.SEVERE, "write_error", error, "feed", feed.getName());
+                    return;
+                }
+                // Sólo tras escribir con éxito se guardan ETag/Last-Modified para el siguiente poll.
+                markSuccess(pollStart, fullSync, response);
+                // Una sola línea por poll, con los contadores agregados (no una por vuelo).
+                LogEvent.info(LOGGER, "poll", "feed", feed.getName(), "mode", fullSync ? "full" : "incremental",
+                        "flights", stats.getTotal(), "new", stats.getNew(), "changed", stats.getChanged(),
+                        "unchanged", stats.getUnchanged(), "skipped", stats.getSkipped(), "written", count);
+            });
+        }
+        return stats;
+    }
+
+    /**
+     * Procesa una respuesta grabada por {@link SnapshotArchive} como si
+     * acabara de descargarse: parseo, comparación con la caché y escritura,
+     * igual que un poll. No hay petición HTTP ni se tocan los validadores.
+     *
+     * @param xml XML de la respuesta
+     * @param recordedAt inicio del poll que la grabó
+     * @param fullSync cierto si era una descarga completa
+     * @param stats estadísticas a rellenar
+     * @return se completa con los vuelos escritos cuando termina la escritura
+     */
+    public CompletableFuture<Integer> replay(InputStream xml, Instant recordedAt, boolean fullSync, PollStats stats)
+            throws Exception {
+        polls.inc();
+        stats.setIncremental(!fullSync);
+        try {
+            CompletableFuture<Integer> written = ingest(xml, stats, recordedAt, fullSync);
+            written.whenComplete((count, error) -> {
+                if (error != null) {
+                    pollErrors.inc();
+                }
+            });
+            return written;
+        } catch (Exception ex) {
+            pollErrors.inc();
+            throw ex;
+        }
+    }
+
+    // Parseo y comparación en el hilo actual; devuelve la escritura ya encolada.
+    private CompletableFuture<Integer> ingest(InputStream body, PollStats stats, Instant pollStart, boolean fullSync)
+            throws Exception {
+        // Un poll completo trae todos los vuelos del feed: los que ya no aparecen se olvidan.
+        if (fullSync) {
+            schedule.clear();
+        }
+        List<AvinorFlight> toWrite = new ArrayList<>();
+        List<AvinorFlight> parsed = board != null ? new ArrayList<>() : null;
+        Set<String> seen = new HashSet<>();
+        long parseStart = System.nanoTime();
+        AvinorXmlParser.parse(body, flight -> {
+            if (flight.getScheduleEpoch() != AvinorTime.NONE) {
+                schedule.put(flight.getUniqueId(), flight.getScheduleEpoch());
+            }
+            if (parsed != null && !"N/A".equals(flight.getUniqueId()) && !seen.contains(flight.getUniqueId())) {
+                parsed.add(flight);
+            }
+            if (shouldWrite(flight, stats, seen)) {
+                toWrite.add(flight);
+            }
+        });
+        parseSeconds.observeNanos(System.nanoTime() - parseStart);
+        record(stats);
+        // El panel en memoria refleja el feed en cuanto se parsea, sin esperar a MySQL.
+        if (board != null) {
+            board.update(feed, parsed, fullSync, pollStart.getEpochSecond());
+        }
+        long horizon = pollStart.minus(SCHEDULE_HORIZON).getEpochSecond();
+        schedule.values().removeIf(epoch -> epoch < horizon);
+        return writeService.submit(feed, toWrite);
+    }
+
+    private void record(PollStats stats) {
+        flightsNew.add(stats.getNew());
+        flightsChanged.add(stats.getChanged());
+        flightsUnchanged.add(stats.getUnchanged());
+        flightsSkipped.add(stats.getSkipped());
+        lastPollFlights = stats.getTotal();
+    }
+
+    /**
+     * @return cierto si algún vuelo del feed está programado entre
+     * <code>from</code> y <code>to</code> (según los últimos polls)
+     */
+    public boolean hasFlightsBetween(Instant from, Instant to) {
+        long start = from.getEpochSecond();
+        long end = to.getEpochSecond();
+        for (long epoch : schedule.values()) {
+            if (epoch >= start && epoch <= end) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean needsFullSync(Instant now) {
+        if (!Config.INCREMENTAL_POLLING || lastSuccessfulPoll == null || lastFullSync == null) {
+            return true;
+        }
+        return Duration.between(lastFullSync, now).toMinutes() >= Config.FULL_RESYNC_MINUTES;
+    }
+
+    /**
+     * @param since instante a partir del cual se piden cambios
+     * @return la URL del feed con el parámetro <code>lastUpdate</code> de la
+     * API de Avinor (UTC, p. ej. 2025-01-16T09:00:00Z)
+     */
+    private URI incrementalUri(Instant since) {
+        String url = feed.getUrl();
+        String separator = url.indexOf('?') >= 0 ? "&" : "?";
+        return URI.create(url + separator + "lastUpdate="
+                + DateTimeFormatter.ISO_INSTANT.format(since.truncatedTo(ChronoUnit.SECONDS)));
+    }
+
+    // Se toma el inicio del poll (y no el final) para no perder cambios publicados mientras se descargaba. Las
+    // escrituras de dos polls pueden confirmarse en otro orden, así que nunca se retrocede a un poll anterior.
+    private synchronized void markSuccess(Instant pollStart, boolean fullSync, FeedFetcher.Response response) {
+        if (lastSuccessfulPoll != null && pollStart.isBefore(lastSuccessfulPoll)) {
+            return;
+        }
+        fetcher.accept(response);
+        lastSuccessfulPoll = pollStart;
+        if (fullSync) {
+            lastFullSync = pollStart;
+        }
+    }
+
+    /**
+     * Decide si un vuelo del feed debe escribirse. Sólo se escriben los vuelos
+     * nuevos o cuyo contenido cambió desde el último poll: los upserts sin
+     * cambios no aportan nada y disparan igualmente la cadena de triggers de
+     * <code>dy_xml_*</code>.
+     *
+     * @param seen unique_id ya procesados en este feed, para descartar
+     * repetidos
+     */
+    private boolean shouldWrite(AvinorFlight flight, PollStats stats, Set<String> seen) {
+        String uniqueID = flight.getUniqueId();
+        if ("N/A".equals(uniqueID) || !seen.add(uniqueID)) {
+            stats.countSkipped();
+            return false;
+        }
+        switch (cache.diff(flight)) {
+            case NEW:
+                stats.countNew();
+                return true;
+            case CHANGED:
+                stats.countChanged();
+                return true;
+            default:
+                stats.countUnchanged();
+                return false;
+        }
+    }
+}
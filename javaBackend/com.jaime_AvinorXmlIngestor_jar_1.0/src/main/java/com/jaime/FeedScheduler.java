@@ -0,0 +1,120 @@
+package com.jaime;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Programa los polls de cada feed con un intervalo adaptativo.
+ * <p>
+ * En lugar de <code>scheduleAtFixedRate</code>, cada feed se vuelve a programar
+ * cuando termina su poll, así que nunca hay dos polls del mismo feed a la vez y
+ * un poll lento no encadena retrasos en los siguientes. El intervalo hasta el
+ * siguiente poll depende de los vuelos del feed:
+ * <ul>
+ * <li>{@link Config#POLL_FAST_INTERVAL_SECONDS} si hay vuelos programados en
+ * los próximos {@link Config#POLL_NEAR_WINDOW_MINUTES} minutos (o que debían
+ * haber salido/llegado hace poco).</li>
+ * <li>{@link Config#POLL_SLOW_INTERVAL_SECONDS} si no hay ninguno en los
+ * próximos {@link Config#POLL_QUIET_WINDOW_MINUTES} minutos (típicamente de
+ * noche).</li>
+ * <li>El intervalo base del feed ({@link Config#pollIntervalSeconds}) en otro
+ * caso.</li>
+ * </ul>
+ * A cada intervalo se le suma o resta un {@link Config#POLL_JITTER_PERCENT}% al
+ * azar para que los feeds no se disparen todos en el mismo instante. El
+ * retraso entre la hora programada y el inicio real de cada ejecución se
+ * publica por feed en {@link Metrics} (<code>ingest_schedule_lag_seconds</code>)
+ * y, con nivel FINE, en el evento <code>schedule</code>.
+ *
+ * @author Jaime Villalba
+ */
+public class FeedScheduler {
+
+    private static final Logger LOGGER = Logger.getLogger(FeedScheduler.class.getName());
+
+    // Los vuelos de hace menos de esto todavía cuentan como "cercanos" (retrasos, puertas de última hora).
+    private static final Duration RECENT_WINDOW = Duration.ofMinutes(15);
+
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService fetchExecutor;
+
+    /**
+     * @param scheduler temporizador; sólo dispara los polls, no los ejecuta
+     * @param fetchExecutor executor en el que se ejecuta cada poll
+     */
+    public FeedScheduler(ScheduledExecutorService scheduler, ExecutorService fetchExecutor) {
+        this.scheduler = scheduler;
+        this.fetchExecutor = fetchExecutor;
+    }
+
+    /**
+     * Programa el primer poll del feed, desplazado al azar dentro del margen
+     * de jitter para repartir el arranque de los feeds.
+     */
+    public void start(FeedIngestor task) {
+        long base = baseInterval(task).toMillis();
+        long spread = base * Math.max(0, Config.POLL_JITTER_PERCENT) / 100;
+        long delay = spread > 0 ? ThreadLocalRandom.current().nextLong(spread) : 0;
+        schedule(task, Duration.ofMillis(delay));
+    }
+
+    private void schedule(FeedIngestor task, Duration delay) {
+        Instant scheduledAt = Instant.now().plus(delay);
+        try {
+            scheduler.schedule(() -> fetchExecutor.execute(() -> run(task, scheduledAt)),
+                    delay.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            // El scheduler se está deteniendo: no se programan más polls.
+        }
+    }
+
+    private void run(FeedIngestor task, Instant scheduledAt) {
+        Instant start = Instant.now();
+        long lagMs = Duration.between(scheduledAt, start).toMillis();
+        Metrics.registry().histogram("ingest_schedule_lag_seconds",
+                "Retraso entre la hora programada de cada poll y su inicio real", "feed", task.getFeed().getName())
+                .observeNanos(TimeUnit.MILLISECONDS.toNanos(Math.max(0, lagMs)));
+        try {
+            task.poll();
+        } catch (Exception ex) {
+            LogEvent.log(LOGGER, Level.SEVERE, "poll_error", ex, "feed", task.getFeed().getName());
+        } finally {
+            Duration next = nextInterval(task, Instant.now());
+            LogEvent.log(LOGGER, Level.FINE, "schedule", "feed", task.getFeed().getName(), "lag_ms", lagMs,
+                    "duration_ms", Duration.between(start, Instant.now()).toMillis(), "next_s", next.toSeconds());
+            schedule(task, next);
+        }
+    }
+
+    private static Duration baseInterval(FeedIngestor task) {
+        return Duration.ofSeconds(Math.max(1, Config.pollIntervalSeconds(task.getFeed())));
+    }
+
+    /**
+     * @return intervalo hasta el siguiente poll del feed, con jitter
+     */
+    private static Duration nextInterval(FeedIngestor task, Instant now) {
+        long base = baseInterval(task).getSeconds();
+        long seconds;
+        if (task.hasFlightsBetween(now.minus(RECENT_WINDOW), now.plus(Duration.ofMinutes(Config.POLL_NEAR_WINDOW_MINUTES)))) {
+            seconds = Math.min(base, Config.POLL_FAST_INTERVAL_SECONDS);
+        } else if (!task.hasFlightsBetween(now, now.plus(Duration.ofMinutes(Config.POLL_QUIET_WINDOW_MINUTES)))) {
+            seconds = Math.max(base, Config.POLL_SLOW_INTERVAL_SECONDS);
+        } else {
+            seconds = base;
+        }
+        long millis = Math.max(1, seconds) * 1000;
+        long jitter = millis * Math.max(0, Config.POLL_JITTER_PERCENT) / 100;
+        if (jitter > 0) {
+            millis += ThreadLocalRandom.current().nextLong(-jitter, jitter + 1);
+        }
+        return Duration.ofMillis(millis);
+    }
+}
@@ -0,0 +1,616 @@
+package com.jaime;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Simulador del XmlFeed de Avinor para pruebas de carga y de larga duración
+ * sin depender de la API real.
+ * <p>
+ * Sirve <code>/XmlFeed/v1.0?airport=OSL&amp;direction=A</code> con el mismo
+ * XML que Avinor para cada aeropuerto configurado. Los vuelos son sintéticos y
+ * evolucionan con el tiempo: en cada tick cambian de puerta y de estado (sin
+ * estado, E con hora estimada, A/D, alguno C) con las probabilidades
+ * indicadas, y los que quedan más de una hora atrás se sustituyen por vuelos
+ * nuevos al final de la ventana, así que el número de vuelos se mantiene.
+ * Entiende <code>lastUpdate</code> (sólo los vuelos modificados desde
+ * entonces), <code>If-None-Match</code> y gzip, y puede añadir latencia,
+ * respuestas 503 y XML cortado para probar los reintentos.
+ * <p>
+ * Se arranca con
+ * <pre>
+ * java -cp AvinorXmlIngestor-1.0.jar com.jaime.FeedSimulator --airports=OSL,BGO --flights=1500
+ * </pre>
+ * y el ingestor se apunta a él con <code>API_URL_TEMPLATE</code> (ver
+ * README). No lee el <code>.env</code>: todo se configura con argumentos
+ * <code>--nombre=valor</code> (ver {@link Settings}).
+ *
+ * @author Jaime Villalba
+ */
+public final class FeedSimulator implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(FeedSimulator.class.getName());
+
+    private static final String[] AIRLINES = {"DY", "SK", "WF", "D8", "KL", "LH", "BA", "AY", "AF", "FR"};
+    private static final String[] AIRPORTS = {"OSL", "BGO", "TRD", "SVG", "TOS", "BOO", "AES", "KRS", "CPH", "ARN",
+        "HEL", "LHR", "AMS", "CDG", "FRA", "MUC", "BCN", "AGP", "ALC", "KEF"};
+    private static final String[] GATE_PIERS = {"A", "B", "C", "D", "E", "F"};
+    private static final long HOUR = 3600;
+
+    /**
+     * Parámetros del simulador, con sus valores por defecto.
+     */
+    public static final class Settings {
+
+        /** --port: puerto de escucha */
+        int port = 8089;
+        /** --airports: aeropuertos servidos, separados por comas */
+        List<String> airports = List.of("OSL");
+        /** --flights: vuelos por aeropuerto y dirección */
+        int flights = 600;
+        /** --tick-seconds: cada cuánto evolucionan los vuelos */
+        long tickSeconds = 10;
+        /** --gate-change-rate: probabilidad por vuelo y tick de cambiar de puerta */
+        double gateChangeRate = 0.01;
+        /** --status-rate: probabilidad por vuelo y tick de avanzar de estado */
+        double statusRate = 0.05;
+        /** --cancel-rate: probabilidad por vuelo y tick de cancelarse */
+        double cancelRate = 0.0005;
+        /** --latency-ms y --latency-jitter-ms: espera antes de cada respuesta (fija más aleatoria) */
+        long latencyMs;
+        long latencyJitterMs;
+        /** --error-rate: probabilidad de responder 503 */
+        double errorRate;
+        /** --truncate-rate: probabilidad de cortar el XML a la mitad */
+        double truncateRate;
+        /** --report-seconds: cada cuánto se registra el resumen (0 lo desactiva) */
+        long reportSeconds = 10;
+        /** --seed: semilla de los vuelos, para repetir una prueba */
+        long seed = 42;
+
+        /**
+         * @param args argumentos <code>--nombre=valor</code>
+         * @return los parámetros, con los valores por defecto para los que
+         * no se indican
+         */
+        public static Settings parse(String... args) {
+            Settings settings = new Settings();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (!arg.startsWith("--") || eq < 0) {
+                    throw new IllegalArgumentException("Argumento no válido (se espera --nombre=valor): " + arg);
+                }
+                String value = arg.substring(eq + 1).trim();
+                switch (arg.substring(2, eq)) {
+                    case "port":
+                        settings.port = Integer.parseInt(value);
+                        break;
+                    case "airports":
+                        List<String> airports = new ArrayList<>();
+                        for (String airport : value.split(",")) {
+                            if (!airport.isBlank()) {
+                                airports.add(airport.trim().toUpperCase());
+                            }
+                        }
+                        settings.airports = airports;
+                        break;
+                    case "flights":
+                        settings.flights = Integer.parseInt(value);
+                        break;
+                    case "tick-seconds":
+                        settings.tickSeconds = Long.parseLong(value);
+                        break;
+                    case "gate-change-rate":
+                        settings.gateChangeRate = Double.parseDouble(value);
+                        break;
+                    case "status-rate":
+                        settings.statusRate = Double.parseDouble(value);
+                        break;
+                    case "cancel-rate":
+                        settings.cancelRate = Double.parseDouble(value);
+                        break;
+                    case "latency-ms":
+                        settings.latencyMs = Long.parseLong(value);
+                        break;
+                    case "latency-jitter-ms":
+                        settings.latencyJitterMs = Long.parseLong(value);
+                        break;
+                    case "error-rate":
+                        settings.errorRate = Double.parseDouble(value);
+                        break;
+                    case "truncate-rate":
+                        settings.truncateRate = Double.parseDouble(value);
+                        break;
+                    case "report-seconds":
+                        settings.reportSeconds = Long.parseLong(value);
+                        break;
+                    case "seed":
+                        settings.seed = Long.parseLong(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Parámetro desconocido: " + arg);
+                }
+            }
+            return settings;
+        }
+    }
+
+    // Un vuelo sintético. Sus campos sólo se leen y modifican con el cerrojo de su SimFeed.
+    private static final class SimFlight {
+
+        final String uniqueId;
+        final String airline;
+        final String flightId;
+        final String domInt;
+        final long scheduleEpoch;
+        final String otherAirport;
+        String checkIn;
+        String gate;
+        String belt;
+        String statusCode;
+        long statusEpoch;
+        boolean delayed;
+        long modifiedEpoch;
+
+        SimFlight(String uniqueId, String airline, String flightId, String domInt, long scheduleEpoch,
+                String otherAirport, long now) {
+            this.uniqueId = uniqueId;
+            this.airline = airline;
+            this.flightId = flightId;
+            this.domInt = domInt;
+            this.scheduleEpoch = scheduleEpoch;
+            this.otherAirport = otherAirport;
+            this.modifiedEpoch = now;
+        }
+    }
+
+    // Respuesta completa ya generada (y comprimida) para una versión del feed.
+    private static final class Rendered {
+
+        final long version;
+        final byte[] xml;
+        final byte[] gzip;
+        final int flights;
+
+        Rendered(long version, byte[] xml, byte[] gzip, int flights) {
+            this.version = version;
+            this.xml = xml;
+            this.gzip = gzip;
+            this.flights = flights;
+        }
+    }
+
+    // Vuelos de un aeropuerto en una dirección.
+    private final class SimFeed {
+
+        final String airport;
+        final Direction direction;
+        final Random random;
+        final List<SimFlight> flights = new ArrayList<>();
+        long nextId;
+        long version = 1;
+        long lastUpdateEpoch;
+        Rendered rendered;
+        // Vuelos incluidos en la última respuesta generada
+        int matched;
+
+        SimFeed(String airport, Direction direction, long seed, long now) {
+            this.airport = airport;
+            this.direction = direction;
+            this.random = new Random(seed);
+            this.nextId = 100_000_000L + Math.floorMod(seed, 1000) * 1_000_000L;
+            this.lastUpdateEpoch = now;
+            // Repartidos por igual en la ventana TimeFrom=1, TimeTo=7 que pide el ingestor.
+            long from = now - HOUR;
+            long span = 8 * HOUR;
+            for (int i = 0; i < settings.flights; i++) {
+                SimFlight flight = newFlight(from + span * i / Math.max(1, settings.flights), now);
+                flights.add(flight);
+                // Los que ya pasaron empiezan llegados/salidos.
+                while (advanceStatus(flight, now)) {
+                    if (!"E".equals(flight.statusCode) || flight.statusEpoch > now) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        private SimFlight newFlight(long scheduleEpoch, long now) {
+            String airline = AIRLINES[random.nextInt(AIRLINES.length)];
+            String other = AIRPORTS[random.nextInt(AIRPORTS.length)];
+            if (other.equals(airport)) {
+                other = "LHR";
+            }
+            SimFlight flight = new SimFlight(Long.toString(nextId++), airline, airline + (100 + random.nextInt(8900)),
+                    random.nextInt(3) == 0 ? "I" : "D", scheduleEpoch - scheduleEpoch % 300, other, now);
+            if (direction == Direction.DEPARTURES) {
+                int counter = 1 + random.nextInt(60);
+                flight.checkIn = counter + " " + (counter + 3);
+            }
+            flight.gate = randomGate();
+            return flight;
+        }
+
+        private String randomGate() {
+            return GATE_PIERS[random.nextInt(GATE_PIERS.length)] + (1 + random.nextInt(30));
+        }
+
+        // Sin estado -> E (hora estimada) -> A/D a su hora. Devuelve true si cambió algo.
+        private boolean advanceStatus(SimFlight flight, long now) {
+            if (flight.statusCode == null) {
+                if (flight.scheduleEpoch - now > 3 * HOUR) {
+                    return false;
+                }
+                long delay = random.nextInt(5) == 0 ? 300L * (1 + random.nextInt(12)) : 0;
+                flight.statusCode = "E";
+                flight.statusEpoch = flight.scheduleEpoch + delay;
+                flight.delayed = delay >= 900;
+            } else if ("E".equals(flight.statusCode)) {
+                if (flight.statusEpoch <= now) {
+                    flight.statusCode = direction == Direction.ARRIVALS ? "A" : "D";
+                    if (direction == Direction.ARRIVALS) {
+                        flight.belt = Integer.toString(1 + random.nextInt(9));
+                    }
+                } else {
+                    flight.statusEpoch += 60L * (random.nextInt(11) - 3);
+                    flight.delayed = flight.statusEpoch - flight.scheduleEpoch >= 900;
+                }
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        synchronized void tick(long now) {
+            boolean changed = false;
+            int removed = 0;
+            for (int i = 0; i < flights.size(); i++) {
+                SimFlight flight = flights.get(i);
+                boolean finished = "A".equals(flight.statusCode) || "D".equals(flight.statusCode)
+                        || "C".equals(flight.statusCode);
+                if (flight.scheduleEpoch < now - HOUR && finished) {
+                    flights.set(i, null);
+                    removed++;
+                    continue;
+                }
+                boolean flightChanged = false;
+                if (!finished && random.nextDouble() < settings.cancelRate) {
+                    flight.statusCode = "C";
+                    flight.statusEpoch = now;
+                    flightChanged = true;
+                } else if (!finished && random.nextDouble() < settings.statusRate) {
+                    flightChanged = advanceStatus(flight, now);
+                }
+                if (!finished && random.nextDouble() < settings.gateChangeRate) {
+                    flight.gate = randomGate();
+                    flightChanged = true;
+                }
+                if (flightChanged) {
+                    flight.modifiedEpoch = now;
+                    changed = true;
+                }
+            }
+            if (removed > 0) {
+                flights.removeIf(flight -> flight == null);
+                // Los sustitutos entran al final de la ventana, en orden de hora programada.
+                long last = flights.isEmpty() ? now : flights.get(flights.size() - 1).scheduleEpoch;
+                long step = Math.max(60, (now + 7 * HOUR - last) / removed);
+                for (int i = 1; i <= removed; i++) {
+                    flights.add(newFlight(last + step * i, now));
+                }
+                changed = true;
+            }
+            if (changed) {
+                version++;
+                lastUpdateEpoch = now;
+            }
+        }
+
+        synchronized Rendered renderFull() throws IOException {
+            if (rendered == null || rendered.version != version) {
+                byte[] xml = render(Long.MIN_VALUE).toString().getBytes(StandardCharsets.UTF_8);
+                rendered = new Rendered(version, xml, gzip(xml), matched);
+            }
+            return rendered;
+        }
+
+        synchronized String renderSince(long sinceEpoch) {
+            String xml = render(sinceEpoch).toString();
+            served.add(matched);
+            return xml;
+        }
+
+        // Mismo formato que asrv.avinor.no; sólo los vuelos modificados desde sinceEpoch.
+        private StringBuilder render(long sinceEpoch) {
+            StringBuilder xml = new StringBuilder(256 + flights.size() * 330);
+            matched = 0;
+            xml.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<airport name=\"").append(airport)
+                    .append("\">\n  <flights lastUpdate=\"").append(Instant.ofEpochSecond(lastUpdateEpoch))
+                    .append("\">\n");
+            for (SimFlight flight : flights) {
+                if (flight.modifiedEpoch < sinceEpoch) {
+                    continue;
+                }
+                xml.append("    <flight uniqueID=\"").append(flight.uniqueId).append("\">\n");
+                element(xml, "airline", flight.airline);
+                element(xml, "flight_id", flight.flightId);
+                element(xml, "dom_int", flight.domInt);
+                element(xml, "schedule_time", Instant.ofEpochSecond(flight.scheduleEpoch).toString());
+                element(xml, "arr_dep", direction.getCode());
+                element(xml, "airport", flight.otherAirport);
+                element(xml, "check_in", flight.checkIn);
+                element(xml, "gate", flight.gate);
+                element(xml, "belt", flight.belt);
+                if (flight.delayed) {
+                    element(xml, "delayed", "Y");
+                }
+                if (flight.statusCode != null) {
+                    xml.append("      <status code=\"").append(flight.statusCode).append("\" time=\"")
+                            .append(Instant.ofEpochSecond(flight.statusEpoch)).append("\"/>\n");
+                }
+                xml.append("    </flight>\n");
+                matched++;
+            }
+            return xml.append("  </flights>\n</airport>\n");
+        }
+
+        int size() {
+            synchronized (this) {
+                return flights.size();
+            }
+        }
+    }
+
+    private final Settings settings;
+    private final Map<String, SimFeed> feeds = new HashMap<>();
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService ticker;
+    // Totales para el resumen periódico
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder injectedErrors = new LongAdder();
+    private final LongAdder served = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    private FeedSimulator(Settings settings) throws IOException {
+        this.settings = settings;
+        long now = System.currentTimeMillis() / 1000;
+        long seed = settings.seed;
+        for (String airport : settings.airports) {
+            for (Direction direction : Direction.values()) {
+                feeds.put(airport + "-" + direction.getCode(), new SimFeed(airport, direction, seed++, now));
+            }
+        }
+        this.server = HttpServer.create(new InetSocketAddress(settings.port), 0);
+        // La latencia inyectada bloquea el hilo de la petición: un hilo por petición, sin límite.
+        this.executor = Executors.newCachedThreadPool(IngestExecutors.daemonThreads("sim-http"));
+        this.ticker = Executors.newSingleThreadScheduledExecutor(IngestExecutors.daemonThreads("sim-tick"));
+        server.createContext("/XmlFeed/v1.0", this::handle);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * @param settings parámetros del simulador
+     * @return el simulador ya escuchando
+     */
+    public static FeedSimulator start(Settings settings) throws IOException {
+        FeedSimulator simulator = new FeedSimulator(settings);
+        simulator.server.start();
+        long tick = Math.max(1, settings.tickSeconds);
+        simulator.ticker.scheduleAtFixedRate(simulator::tick, tick, tick, TimeUnit.SECONDS);
+        if (settings.reportSeconds > 0) {
+            simulator.ticker.scheduleAtFixedRate(simulator.new Report(), settings.reportSeconds,
+                    settings.reportSeconds, TimeUnit.SECONDS);
+        }
+        return simulator;
+    }
+
+    public static void main(String[] args) throws IOException {
+        AsyncLogHandler.install(Level.INFO, 8192, 60);
+        Settings settings = Settings.parse(args);
+        FeedSimulator simulator = start(settings);
+        Runtime.getRuntime().addShutdownHook(new Thread(simulator::close, "sim-shutdown"));
+        LogEvent.info(LOGGER, "simulator", "url", "http://localhost:" + simulator.getPort()
+                + "/XmlFeed/v1.0?TimeFrom=1&TimeTo=7&airport={airport}&direction={direction}",
+                "airports", String.join(",", settings.airports), "flights", settings.flights,
+                "tick_s", settings.tickSeconds, "gate_change_rate", settings.gateChangeRate,
+                "status_rate", settings.statusRate, "latency_ms", settings.latencyMs,
+                "error_rate", settings.errorRate, "truncate_rate", settings.truncateRate);
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis() / 1000;
+        for (SimFeed feed : feeds.values()) {
+            try {
+                feed.tick(now);
+            } catch (RuntimeException ex) {
+                LogEvent.log(LOGGER, Level.WARNING, "tick_error", ex, "feed", feed.airport + "-"
+                        + feed.direction.getCode());
+            }
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.increment();
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            SimFeed feed = feeds.get(query.getOrDefault("airport", "").toUpperCase() + "-"
+                    + query.getOrDefault("direction", "").toUpperCase());
+            if (feed == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            injectLatency();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (random.nextDouble() < settings.errorRate) {
+                injectedErrors.increment();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            boolean gzip = accepts(exchange, "gzip");
+            String since = query.get("lastUpdate");
+            byte[] body;
+            if (since == null) {
+                Rendered full = feed.renderFull();
+                String etag = "\"v" + full.version + "\"";
+                exchange.getResponseHeaders().set("ETag", etag);
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    notModified.increment();
+                    exchange.sendResponseHeaders(304, -1);
+                    return;
+                }
+                body = gzip ? full.gzip : full.xml;
+                served.add(full.flights);
+            } else {
+                long sinceEpoch;
+                try {
+                    sinceEpoch = Instant.parse(since).getEpochSecond();
+                } catch (DateTimeParseException ex) {
+                    exchange.sendResponseHeaders(400, -1);
+                    return;
+                }
+                byte[] xml = feed.renderSince(sinceEpoch).getBytes(StandardCharsets.UTF_8);
+                body = gzip ? gzip(xml) : xml;
+            }
+            if (random.nextDouble() < settings.truncateRate) {
+                // XML cortado: con gzip el stream comprimido también queda incompleto.
+                injectedErrors.increment();
+                byte[] cut = new byte[body.length / 2];
+                System.arraycopy(body, 0, cut, 0, cut.length);
+                body = cut;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+            if (gzip) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            bytes.add(body.length);
+        }
+    }
+
+    private void injectLatency() {
+        long delay = settings.latencyMs;
+        if (settings.latencyJitterMs > 0) {
+            delay += ThreadLocalRandom.current().nextLong(settings.latencyJitterMs + 1);
+        }
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static boolean accepts(HttpExchange exchange, String encoding) {
+        String header = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        return header != null && header.toLowerCase().contains(encoding);
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> params = new LinkedHashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    // Los valores son códigos y horas generados aquí, sin caracteres que haya que escapar.
+    private static void element(StringBuilder xml, String name, String value) {
+        if (value != null) {
+            xml.append("      <").append(name).append('>').append(value).append("</").append(name).append(">\n");
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 6 + 64);
+        try (GZIPOutputStream zip = new GZIPOutputStream(out)) {
+            zip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    // Resumen periódico: peticiones, vuelos y bytes servidos por segundo desde el anterior.
+    private final class Report implements Runnable {
+
+        private long lastNanos = System.nanoTime();
+        private long lastRequests;
+        private long lastServed;
+        private long lastBytes;
+
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+            double seconds = Math.max(1e-3, (now - lastNanos) / 1e9);
+            long totalRequests = requests.sum();
+            long totalServed = served.sum();
+            long totalBytes = bytes.sum();
+            int flights = 0;
+            for (SimFeed feed : feeds.values()) {
+                flights += feed.size();
+            }
+            LogEvent.info(LOGGER, "simulator_report",
+                    "requests_per_s", Math.round((totalRequests - lastRequests) / seconds),
+                    "flights_per_s", Math.round((totalServed - lastServed) / seconds),
+                    "kb_per_s", Math.round((totalBytes - lastBytes) / seconds / 1024),
+                    "requests", totalRequests, "not_modified", notModified.sum(),
+                    "injected_errors", injectedErrors.sum(), "flights", flights);
+            lastNanos = now;
+            lastRequests = totalRequests;
+            lastServed = totalServed;
+            lastBytes = totalBytes;
+        }
+    }
+
+    /**
+     * @return puerto en el que escucha (útil si se arrancó con el puerto 0)
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,327 @@
+package com.jaime;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Escritor por lotes de los vuelos de un feed en las tablas de una dirección
+ * (llegadas o salidas).
+ * <p>
+ * Los tres PreparedStatement (<code>avinor_xml_*</code>, <code>dy_xml_*</code>
+ * y <code>gate_history_*</code>) se preparan una única vez por ejecución y los
+ * vuelos se acumulan con <code>addBatch()</code>. Cada vez que se alcanzan
+ * <code>chunkSize</code> vuelos se ejecutan los tres lotes y se confirma una
+ * transacción. Con <code>rewriteBatchedStatements=true</code> en la URL (ver
+ * {@link Config#DB_URL}) Connector/J envía cada lote como un único INSERT
+ * multi-fila, por lo que un feed completo son unos pocos viajes de ida y vuelta
+ * a MySQL.
+ * <p>
+ * Tras cada commit, los vuelos confirmados se registran en la
+ * {@link FlightStateCache} de la dirección, de modo que la caché sólo refleja lo
+ * que realmente está en la base de datos.
+ * <p>
+ * Si se indica un {@link GateHistoryBuffer}, los cambios de puerta no se
+ * insertan en la misma transacción sino que se entregan al buffer tras el
+ * commit, que los agrupa y deduplica antes de volcarlos.
+ * <p>
+ * Con <code>mergeCombined</code>, los vuelos DY/D8 de llegadas se propagan
+ * también a <code>combined_flights</code> y
+ * <code>fullyscraped_combined_flights</code> en la misma transacción (ver
+ * {@link CombinedFlightMerger}), en lugar de dejarlo a los triggers.
+ * <p>
+ * Uso: llamar a {@link #add} por cada vuelo, a {@link #flush()} al terminar el
+ * feed, y cerrar siempre el escritor (try-with-resources). Si se cierra sin
+ * {@link #flush()}, los vuelos pendientes se descartan con un rollback.
+ *
+ * @author Jaime Villalba
+ */
+public class FlightBatchWriter implements AutoCloseable {
+
+    // Valor por defecto de schedule_time en las tablas avinor_xml_* y dy_xml_*
+    private static final LocalDateTime DEFAULT_DATETIME = AvinorTime.toLocalDateTime(0);
+
+    private final Connection conn;
+    private final boolean previousAutoCommit;
+    private final int chunkSize;
+    private final String table;
+    private final FlightStateCache cache;
+
+    private final PreparedStatement upsertStmt;
+    private final PreparedStatement upsertDyStmt;
+    private final PreparedStatement gateHistoryStmt;
+    private final GateHistoryBuffer gateHistory;
+    private final CombinedFlightMerger merger;
+
+    private final List<AvinorFlight> pending = new ArrayList<>();
+    // Cambios de puerta del lote actual que irán al buffer tras el commit (vuelo y puerta anterior)
+    private final List<AvinorFlight> pendingGateFlights = new ArrayList<>();
+    private final List<String> pendingOldGates = new ArrayList<>();
+    private int pendingFlights;
+    private int pendingDy;
+    private int pendingGateChanges;
+
+    private int totalFlights;
+    private int totalDy;
+    private int totalGateChanges;
+    private int totalCombined;
+    private int totalFullyScraped;
+    private int chunks;
+
+    /**
+     * @param conn conexión a MySQL; se desactiva el autocommit mientras el
+     * escritor esté abierto
+     * @param direction dirección del feed, que determina las tablas de
+     * destino
+     * @param chunkSize número de vuelos por transacción
+     * @param cache caché de estado que se actualiza tras cada commit
+     */
+    public FlightBatchWriter(Connection conn, Direction direction, int chunkSize,
+            FlightStateCache cache) throws SQLException {
+        this(conn, direction, chunkSize, cache, null);
+    }
+
+    /**
+     * @param gateHistory buffer al que se entregan los cambios de puerta tras
+     * cada commit, o <code>null</code> para insertarlos en la misma
+     * transacción
+     */
+    public FlightBatchWriter(Connection conn, Direction direction, int chunkSize,
+            FlightStateCache cache, GateHistoryBuffer gateHistory) throws SQLException {
+        this(conn, direction, chunkSize, cache, gateHistory, false);
+    }
+
+    /**
+     * @param mergeCombined si es cierto y la dirección tiene
+     * {@link Direction#getCombinedTable()}, los vuelos DY/D8 se escriben
+     * también en <code>combined_flights</code> y
+     * <code>fullyscraped_combined_flights</code>
+     */
+    public FlightBatchWriter(Connection conn, Direction direction, int chunkSize,
+            FlightStateCache cache, GateHistoryBuffer gateHistory, boolean mergeCombined) throws SQLException {
+        this.conn = conn;
+        this.table = direction.getTable();
+        this.cache = cache;
+        this.gateHistory = gateHistory;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.previousAutoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            this.upsertStmt = conn.prepareStatement(upsertQuery(direction.getTable(), direction.getTimeColumn()));
+            this.upsertDyStmt = conn.prepareStatement(upsertQuery(direction.getDyTable(), direction.getTimeColumn()));
+            this.gateHistoryStmt = gateHistory != null ? null : conn.prepareStatement(
+                    "INSERT INTO " + direction.getGateHistoryTable()
+                    + " (unique_id, gate, update_time, flight_id, dom_int, schedule_time, airport) "
+                    + "VALUES (?, ?, NOW(), ?, ?, ?, ?)");
+            this.merger = mergeCombined && direction.getCombinedTable() != null
+                    ? new CombinedFlightMerger(conn, direction) : null;
+        } catch (SQLException ex) {
+            conn.setAutoCommit(previousAutoCommit);
+            throw ex;
+        }
+    }
+
+    static String upsertQuery(String table, String timeColumn) {
+        return "INSERT INTO " + table + " ("
+                + "  unique_id, flight_id, airline, dom_int, schedule_time, arr_dep, "
+                + "  airport, check_in, gate, belt, status_code, status_time, dlayed, " + timeColumn + ", last_update"
+                + ") VALUES ("
+                + "  ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, NOW()"
+                + ") ON DUPLICATE KEY UPDATE "
+                + "  flight_id=VALUES(flight_id), airline=VALUES(airline), dom_int=VALUES(dom_int), "
+                + "  schedule_time=VALUES(schedule_time), arr_dep=VALUES(arr_dep), airport=VALUES(airport), "
+                + "  check_in=VALUES(check_in), gate=VALUES(gate), belt=VALUES(belt), status_code=VALUES(status_code), "
+                + "  status_time=VALUES(status_time), dlayed=VALUES(dlayed), " + timeColumn + "=VALUES(" + timeColumn + "), "
+                + "  last_update=NOW()";
+    }
+
+    /**
+     * Añade un vuelo al lote actual.
+     *
+     * @param flight vuelo parseado del feed
+     * @param oldGate puerta guardada hasta ahora, o <code>null</code> si el
+     * vuelo es nuevo. Si es nuevo o la puerta cambió, se añade también una
+     * fila a la tabla de historial de puertas.
+     */
+    public void add(AvinorFlight flight, String oldGate) throws SQLException {
+        bindUpsert(upsertStmt, flight);
+        upsertStmt.addBatch();
+
+        // Insertar/actualizar también en dy_xml_* si la aerolínea es DY o D8
+        if ("DY".equals(flight.getAirline()) || "D8".equals(flight.getAirline())) {
+            bindUpsert(upsertDyStmt, flight);
+            upsertDyStmt.addBatch();
+            pendingDy++;
+            if (merger != null) {
+                merger.add(flight);
+            }
+        }
+
+        // Vuelo nuevo o cambio de puerta: se registra en gate_history_* (directamente o a través del buffer)
+        if (oldGate == null || !oldGate.equals(flight.getGate())) {
+            if (gateHistory != null) {
+                pendingGateFlights.add(flight);
+                pendingOldGates.add(oldGate);
+            } else {
+                gateHistoryStmt.setString(1, flight.getUniqueId());
+                gateHistoryStmt.setString(2, flight.getGate());
+                gateHistoryStmt.setString(3, flight.getFlightId());
+                gateHistoryStmt.setString(4, flight.getDomInt());
+                gateHistoryStmt.setString(5, AvinorTime.format(flight.getScheduleEpoch()));
+                gateHistoryStmt.setString(6, flight.getAirport());
+                gateHistoryStmt.addBatch();
+            }
+            pendingGateChanges++;
+        }
+
+        pending.add(flight);
+        pendingFlights++;
+        if (pendingFlights >= chunkSize) {
+            flush();
+        }
+    }
+
+    // Las fechas se enlazan tipadas (DATETIME/TIME) y no como texto que MySQL tendría que volver a interpretar.
+    static void bindUpsert(PreparedStatement stmt, AvinorFlight flight) throws SQLException {
+        LocalDateTime scheduleTime = flight.getScheduleTime();
+        LocalDateTime statusTime = flight.getStatusTime();
+        LocalTime localTime = flight.getLocalTime();
+        stmt.setString(1, flight.getUniqueId());
+        stmt.setString(2, flight.getFlightId());
+        stmt.setString(3, flight.getAirline());
+        stmt.setString(4, flight.getDomInt());
+        // schedule_time es NOT NULL: sin hora programada se guarda el valor por defecto de la columna.
+        stmt.setObject(5, scheduleTime != null ? scheduleTime : DEFAULT_DATETIME);
+        stmt.setString(6, flight.getArrDep());
+        stmt.setString(7, flight.getAirport());
+        stmt.setString(8, flight.getCheckIn());
+        stmt.setString(9, flight.getGate());
+        stmt.setString(10, flight.getBelt());
+        stmt.setString(11, flight.getStatusCode());
+        if (statusTime != null) {
+            stmt.setObject(12, statusTime);
+        } else {
+            stmt.setNull(12, Types.TIMESTAMP);
+        }
+        stmt.setString(13, flight.isDelayed() ? "Y" : "N/A");
+        if (localTime != null) {
+            stmt.setObject(14, localTime);
+        } else {
+            stmt.setNull(14, Types.TIME);
+        }
+    }
+
+    /**
+     * Ejecuta los lotes pendientes y confirma la transacción. El historial de
+     * puertas va al final porque tiene clave foránea sobre la tabla principal.
+     * Si algo falla se hace rollback del lote completo y se relanza el error.
+     */
+    public void flush() throws SQLException {
+        if (pendingFlights == 0) {
+            return;
+        }
+        try {
+            upsertStmt.executeBatch();
+            if (pendingDy > 0) {
+                upsertDyStmt.executeBatch();
+            }
+            int combined = merger != null ? merger.size() : 0;
+            int fullyScraped = merger != null ? merger.execute() : 0;
+            if (pendingGateChanges > 0 && gateHistoryStmt != null) {
+                gateHistoryStmt.executeBatch();
+            }
+            conn.commit();
+            totalCombined += combined;
+            totalFullyScraped += fullyScraped;
+        } catch (SQLException ex) {
+            discardPending();
+            throw ex;
+        }
+        for (AvinorFlight flight : pending) {
+            cache.update(flight);
+        }
+        for (int i = 0; i < pendingGateFlights.size(); i++) {
+            gateHistory.append(pendingGateFlights.get(i), pendingOldGates.get(i));
+        }
+        pending.clear();
+        pendingGateFlights.clear();
+        pendingOldGates.clear();
+        totalFlights += pendingFlights;
+        totalDy += pendingDy;
+        totalGateChanges += pendingGateChanges;
+        chunks++;
+        pendingFlights = 0;
+        pendingDy = 0;
+        pendingGateChanges = 0;
+    }
+
+    private void discardPending() throws SQLException {
+        upsertStmt.clearBatch();
+        upsertDyStmt.clearBatch();
+        if (gateHistoryStmt != null) {
+            gateHistoryStmt.clearBatch();
+        }
+        if (merger != null) {
+            merger.clear();
+        }
+        pending.clear();
+        pendingGateFlights.clear();
+        pendingOldGates.clear();
+        pendingFlights = 0;
+        pendingDy = 0;
+        pendingGateChanges = 0;
+        conn.rollback();
+    }
+
+    /**
+     * @return vuelos confirmados hasta ahora
+     */
+    public int getFlights() {
+        return totalFlights;
+    }
+
+    /**
+     * @return vuelos nuevos o con cambio de puerta confirmados hasta ahora
+     */
+    public int getGateChanges() {
+        return totalGateChanges;
+    }
+
+    /**
+     * @return resumen de lo confirmado hasta ahora, para el log de cada
+     * ejecución
+     */
+    public String summary() {
+        String combined = merger == null ? ""
+                : ", " + totalCombined + " en combined_flights, " + totalFullyScraped + " filas afectadas en fullyscraped";
+        return table + ": " + totalFlights + " vuelos escritos (" + totalDy + " DY/D8, "
+                + totalGateChanges + " registros de puerta" + combined + ") en " + chunks + " lotes";
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            if (pendingFlights > 0) {
+                discardPending();
+            }
+        } finally {
+            try {
+                upsertStmt.close();
+                upsertDyStmt.close();
+                if (gateHistoryStmt != null) {
+                    gateHistoryStmt.close();
+                }
+                if (merger != null) {
+                    merger.close();
+                }
+            } finally {
+                conn.setAutoCommit(previousAutoCommit);
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.jaime;
+
+/**
+ * Cambio en un vuelo detectado al actualizar el {@link LiveBoard}, tal como se
+ * publica en el {@link ChangeStream}. Un vuelo con varios cambios en el mismo
+ * poll produce un evento por cada uno.
+ * <p>
+ * El JSON se genera una vez al crear el evento y se envía igual a todos los
+ * suscriptores:
+ * <pre>
+ * {"id":812,"type":"gate","feed":"OSL-D","version":41,"uniqueId":"123","old":"A12","new":"A14","flight":{...}}
+ * </pre>
+ *
+ * @author Jaime Villalba
+ */
+public final class FlightEvent {
+
+    /**
+     * Tipo de cambio; el nombre corto es el campo <code>event</code> de SSE.
+     */
+    public enum Type {
+        NEW_FLIGHT("new"),
+        GATE_CHANGE("gate"),
+        STATUS_CHANGE("status"),
+        DELAY_CHANGE("delayed"),
+        BELT_CHANGE("belt");
+
+        private final String name;
+
+        Type(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @param name nombre corto ("gate", "status"...)
+         */
+        public static Type fromName(String name) {
+            for (Type type : values()) {
+                if (type.name.equalsIgnoreCase(name)) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Tipo de evento desconocido: " + name);
+        }
+    }
+
+    private final long id;
+    private final Type type;
+    private final String feed;
+    private final AvinorFlight flight;
+    private final String json;
+
+    /**
+     * @param id número de secuencia, creciente en todo el stream
+     * @param version versión del panel del feed que incluye el cambio
+     * @param oldValue valor anterior (puerta, código de estado...), o
+     * <code>null</code> para {@link Type#NEW_FLIGHT}
+     * @param newValue valor nuevo
+     */
+    FlightEvent(long id, Type type, String feed, long version, AvinorFlight flight, String oldValue,
+            String newValue) {
+        this.id = id;
+        this.type = type;
+        this.feed = feed;
+        this.flight = flight;
+        StringBuilder out = new StringBuilder(480).append("{\"id\":").append(id).append(",\"type\":\"")
+                .append(type.getName()).append("\",\"feed\":\"").append(feed).append("\",\"version\":")
+                .append(version).append(",\"uniqueId\":");
+        FlightJson.string(out, flight.getUniqueId());
+        if (type != Type.NEW_FLIGHT) {
+            out.append(",\"old\":");
+            FlightJson.string(out, oldValue);
+            out.append(",\"new\":");
+            FlightJson.string(out, newValue);
+        }
+        out.append(",\"flight\":");
+        FlightJson.flight(out, flight);
+        this.json = out.append('}').toString();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return nombre del feed, p. ej. "OSL-D"
+     */
+    public String getFeed() {
+        return feed;
+    }
+
+    /**
+     * @return el vuelo ya con el cambio aplicado
+     */
+    public AvinorFlight getFlight() {
+        return flight;
+    }
+
+    public String toJson() {
+        return json;
+    }
+}
@@ -0,0 +1,99 @@
+package com.jaime;
+
+import java.time.Instant;
+
+/**
+ * Representación JSON de un {@link AvinorFlight}, escrita directamente en un
+ * <code>StringBuilder</code> (el proyecto no depende de ninguna librería de
+ * JSON):
+ * <pre>
+ * {"uniqueId":"123","airline":"DY","flightId":"DY604","domInt":"D","scheduleTime":"2025-01-16T10:00:00Z",
+ *  "arrDep":"D","airport":"BGO","checkIn":"7 38","gate":"A12","status":"E",
+ *  "statusTime":"2025-01-16T10:20:00Z","belt":null,"delayed":true}
+ * </pre>
+ * Los campos que en las tablas valen "N/A" se escriben como <code>null</code>.
+ *
+ * @author Jaime Villalba
+ */
+final class FlightJson {
+
+    private static final String NA = "N/A";
+
+    private FlightJson() {
+    }
+
+    static void flight(StringBuilder out, AvinorFlight flight) {
+        out.append("{\"uniqueId\":");
+        string(out, flight.getUniqueId());
+        out.append(",\"airline\":");
+        string(out, flight.getAirline());
+        out.append(",\"flightId\":");
+        string(out, flight.getFlightId());
+        out.append(",\"domInt\":");
+        string(out, flight.getDomInt());
+        out.append(",\"scheduleTime\":");
+        time(out, flight.getScheduleEpoch());
+        out.append(",\"arrDep\":");
+        string(out, flight.getArrDep());
+        out.append(",\"airport\":");
+        string(out, flight.getAirport());
+        out.append(",\"checkIn\":");
+        string(out, flight.getCheckIn());
+        out.append(",\"gate\":");
+        string(out, flight.getGate());
+        out.append(",\"status\":");
+        string(out, flight.getStatusCode());
+        out.append(",\"statusTime\":");
+        time(out, NA.equals(flight.getStatusCode()) ? AvinorTime.NONE : flight.getStatusEpoch());
+        out.append(",\"belt\":");
+        string(out, flight.getBelt());
+        out.append(",\"delayed\":").append(flight.isDelayed()).append('}');
+    }
+
+    static void time(StringBuilder out, long epoch) {
+        if (epoch == AvinorTime.NONE) {
+            out.append("null");
+        } else {
+            out.append('"').append(Instant.ofEpochSecond(epoch)).append('"');
+        }
+    }
+
+    /**
+     * Cadena JSON con escapes; "N/A" y <code>null</code> se escriben como
+     * <code>null</code>.
+     */
+    static void string(StringBuilder out, String value) {
+        if (value == null || NA.equals(value)) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,198 @@
+package com.jaime;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caché en memoria del último estado conocido de cada vuelo de una tabla
+ * <code>avinor_xml_*</code>, indexado por <code>unique_id</code>.
+ * <p>
+ * Sustituye al <code>SELECT gate ... WHERE unique_id = ?</code> que se lanzaba
+ * por cada vuelo para detectar cambios de puerta: se carga una sola vez con una
+ * consulta masiva, se actualiza después de cada escritura confirmada y se
+ * consulta sin ir a la base de datos.
+ * <p>
+ * Además guarda la huella ({@link AvinorFlight#fingerprint()}) de la última
+ * versión escrita de cada vuelo. {@link #diff(AvinorFlight)} la compara con la
+ * del feed para escribir sólo los vuelos nuevos o cambiados, evitando upserts
+ * sin efecto y la cascada de triggers que provocan. Los vuelos cuyo
+ * <code>schedule_time</code> queda fuera de la ventana de retención (días
+ * pasados) se eliminan con {@link #evictExpired()}. Los que no tienen
+ * <code>schedule_time</code> (o tienen el valor por defecto de la columna,
+ * 1970-01-01) se eliminan cuando llevan ese mismo tiempo sin aparecer en el
+ * feed; si se eliminaran en cada poll volverían como nuevos y se reescribirían
+ * siempre, con una fila más en el historial de puertas cada vez.
+ *
+ * @author Jaime Villalba
+ */
+public class FlightStateCache {
+
+    /**
+     * Resultado de comparar un vuelo del feed con el estado en caché.
+     */
+    public enum Change {
+        NEW, CHANGED, UNCHANGED
+    }
+
+    private static final class Entry {
+
+        final String gate;
+        // Segundos epoch (UTC) de schedule_time; AvinorTime.NONE si no se pudo interpretar.
+        final long scheduleEpoch;
+        final long fingerprint;
+        // Segundos epoch de la última vez que el vuelo apareció en el feed; sólo se usa si no hay schedule_time.
+        volatile long lastSeen;
+
+        Entry(String gate, long scheduleEpoch, long fingerprint, long lastSeen) {
+            this.gate = gate;
+            this.scheduleEpoch = scheduleEpoch;
+            this.fingerprint = fingerprint;
+            this.lastSeen = lastSeen;
+        }
+    }
+
+    private final String table;
+    private final int retentionDays;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    /**
+     * @param table tabla de la que se carga el estado, p. ej.
+     * <code>avinor_xml_arrivals</code>
+     * @param retentionDays días completos anteriores a hoy (UTC) que se
+     * conservan en memoria
+     */
+    public FlightStateCache(String table, int retentionDays) {
+        this.table = table;
+        this.retentionDays = Math.max(0, retentionDays);
+    }
+
+    /**
+     * Caché de la tabla principal de una dirección.
+     */
+    public FlightStateCache(Direction direction, int retentionDays) {
+        this(direction.getTable(), retentionDays);
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Carga la caché si todavía no se ha hecho. Varios feeds pueden compartir
+     * la misma caché (mismas tablas), así que sólo el primero la carga.
+     */
+    public synchronized void ensureLoaded(Connection conn) throws SQLException {
+        if (!loaded) {
+            load(conn);
+        }
+    }
+
+    /**
+     * Carga en una sola consulta todos los vuelos dentro de la ventana de
+     * retención (los que no tienen <code>schedule_time</code>, según su
+     * <code>last_update</code>). La huella se calcula sobre la fila tal como está guardada, de
+     * modo que tras un reinicio los vuelos sin cambios tampoco se reescriben.
+     */
+    public synchronized void load(Connection conn) throws SQLException {
+        String query = "SELECT unique_id, flight_id, airline, dom_int, schedule_time, arr_dep, airport, "
+                + "check_in, gate, belt, status_code, status_time, dlayed"
+                + " FROM " + table + " WHERE schedule_time >= ? OR (schedule_time = ? AND last_update >= ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setObject(1, cutoff());
+            stmt.setObject(2, AvinorTime.toLocalDateTime(0));
+            stmt.setObject(3, cutoff());
+            stmt.setFetchSize(1000);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    // MySQL devuelve DATETIME como "2025-01-16 10:00:00", que AvinorTime interpreta igual que el feed
+                    String statusTime = rs.getString("status_time");
+                    AvinorFlight stored = new AvinorFlight(
+                            rs.getString("unique_id"), rs.getString("airline"), rs.getString("flight_id"),
+                            rs.getString("dom_int"), AvinorTime.parseEpochSeconds(rs.getString("schedule_time")),
+                            rs.getString("arr_dep"), rs.getString("airport"), rs.getString("check_in"),
+                            rs.getString("gate"), rs.getString("status_code"),
+                            statusTime != null ? AvinorTime.parseEpochSeconds(statusTime) : AvinorTime.NONE,
+                            rs.getString("belt"), "Y".equals(rs.getString("dlayed")));
+                    update(stored);
+                }
+            }
+        }
+        loaded = true;
+    }
+
+    /**
+     * @return la última puerta escrita para el vuelo, o <code>null</code> si
+     * el vuelo no está en la tabla (vuelo nuevo)
+     */
+    public String getGate(String uniqueId) {
+        Entry entry = entries.get(uniqueId);
+        return entry != null ? entry.gate : null;
+    }
+
+    /**
+     * Compara el vuelo con la última versión escrita.
+     *
+     * @return {@link Change#NEW} si el vuelo no está en la tabla,
+     * {@link Change#UNCHANGED} si su huella coincide y {@link Change#CHANGED}
+     * en otro caso
+     */
+    public Change diff(AvinorFlight flight) {
+        Entry entry = entries.get(flight.getUniqueId());
+        if (entry == null) {
+            return Change.NEW;
+        }
+        if (!hasSchedule(entry.scheduleEpoch)) {
+            entry.lastSeen = now();
+        }
+        return entry.fingerprint == flight.fingerprint() ? Change.UNCHANGED : Change.CHANGED;
+    }
+
+    /**
+     * Registra el estado del vuelo. Llamar sólo después de que su escritura se
+     * haya confirmado en la base de datos.
+     */
+    public void update(AvinorFlight flight) {
+        entries.put(flight.getUniqueId(), new Entry(flight.getGate(),
+                flight.getScheduleEpoch(), flight.fingerprint(), now()));
+    }
+
+    /**
+     * Elimina los vuelos programados antes del inicio de la ventana de
+     * retención, y los que no tienen <code>schedule_time</code> si no han
+     * aparecido en el feed desde entonces.
+     *
+     * @return número de vuelos eliminados
+     */
+    public int evictExpired() {
+        long limit = cutoff().toEpochSecond(ZoneOffset.UTC);
+        int before = entries.size();
+        entries.values().removeIf(entry -> hasSchedule(entry.scheduleEpoch)
+                ? entry.scheduleEpoch < limit : entry.lastSeen < limit);
+        return before - entries.size();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Sin schedule_time el feed da NONE y la tabla el valor por defecto de la columna (epoch 0).
+    private static boolean hasSchedule(long scheduleEpoch) {
+        return scheduleEpoch != AvinorTime.NONE && scheduleEpoch != 0;
+    }
+
+    private static long now() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private LocalDateTime cutoff() {
+        return LocalDate.now(ZoneOffset.UTC).minusDays(retentionDays).atStartOfDay();
+    }
+}
@@ -0,0 +1,55 @@
+package com.jaime;
+
+/**
+ * Código de estado de un vuelo (atributo <code>code</code> de
+ * &lt;status&gt; en el feed de Avinor).
+ *
+ * @author Jaime Villalba
+ */
+public enum FlightStatus {
+
+    /**
+     * El feed no trae &lt;status&gt; (columna <code>status_code</code> =
+     * "N/A").
+     */
+    NONE("N/A"),
+    ARRIVED("A"),
+    CANCELLED("C"),
+    DEPARTED("D"),
+    NEW_TIME("E"),
+    NEW_INFO("N"),
+    /**
+     * Código que no está en la documentación de Avinor; se conserva tal cual
+     * en {@link AvinorFlight#getStatusCode()}.
+     */
+    OTHER(null);
+
+    private final String code;
+
+    FlightStatus(String code) {
+        this.code = code;
+    }
+
+    /**
+     * @return el código de la API, o <code>null</code> para {@link #OTHER}
+     */
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * @param code código del feed ("N/A" o <code>null</code> si no hay
+     * estado)
+     */
+    public static FlightStatus fromCode(String code) {
+        if (code == null) {
+            return NONE;
+        }
+        for (FlightStatus status : values()) {
+            if (code.equals(status.code)) {
+                return status;
+            }
+        }
+        return OTHER;
+    }
+}
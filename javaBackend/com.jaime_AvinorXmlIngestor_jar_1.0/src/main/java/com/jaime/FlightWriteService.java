@@ -0,0 +1,308 @@
+package com.jaime;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Etapa de escritura, compartida por todos los feeds (write-behind).
+ * <p>
+ * Los polls descargan, parsean y comparan en paralelo y entregan aquí los
+ * vuelos nuevos o cambiados sin esperar a MySQL: {@link #submit} los encola en
+ * una {@link WriteBehindQueue} acotada y devuelve un futuro. Un pool fijo de
+ * {@link Config#DB_WRITER_THREADS} hilos (uno por defecto) vacía la cola en
+ * lotes de hasta {@link Config#DB_BATCH_SIZE} vuelos de una misma dirección,
+ * cada uno en una transacción con un {@link FlightBatchWriter}. Así la
+ * concurrencia contra MySQL no crece con el número de aeropuertos, un MySQL
+ * lento no alarga la descarga de los feeds, y las actualizaciones repetidas de
+ * un mismo vuelo se fusionan antes de escribirse.
+ * <p>
+ * Los cambios de puerta no se insertan en cada lote: se acumulan en un
+ * {@link GateHistoryBuffer} por dirección que los propios escritores vuelcan
+ * con INSERT multi-fila cuando se llena o envejece, y una última vez antes de
+ * detenerse.
+ * <p>
+ * Con {@link Config#MEASURE_WRITE_AMPLIFICATION}, el resumen de cada lote
+ * incluye las escrituras de fila que hizo MySQL para él, triggers incluidos, y
+ * su media por vuelo: así se puede comparar la amplificación de escritura con
+ * y sin {@link Config#COMBINED_MERGE}.
+ * <p>
+ * Con {@link Config#WAL_DIR}, {@link #submit} no encola: añade los vuelos al
+ * {@link WriteAheadLog} y vuelve en cuanto están en él, y un
+ * {@link WalReplayer} los pasa a la cola en orden, reintentando mientras MySQL
+ * no responda. Los polls siguen a su ritmo aunque la base de datos esté
+ * parada. En este modo los cambios de puerta no pasan por el
+ * {@link GateHistoryBuffer}: se insertan en la misma transacción que el lote,
+ * porque el log da el lote por aplicado en cuanto se confirma y lo que quedara
+ * en el buffer se perdería si el proceso cae antes del volcado.
+ * <p>
+ * Publica en {@link Metrics}, por tabla, la latencia de cada lote (de obtener
+ * la conexión al commit), los vuelos escritos, los cambios de puerta y los
+ * errores, además del tamaño de la cola.
+ *
+ * @author Jaime Villalba
+ */
+public class FlightWriteService implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(FlightWriteService.class.getName());
+
+    private final ExecutorService executor;
+    private final WriteBehindQueue queue;
+    private final Thread replayer;
+    private final WriteAheadLog wal;
+    private final Map<Direction, FlightStateCache> caches;
+    private final Map<Direction, GateHistoryBuffer> gateHistory = new EnumMap<>(Direction.class);
+    private final int batchSize;
+    private final Map<Direction, Metrics.Histogram> batchSeconds = new EnumMap<>(Direction.class);
+    private final Map<Direction, Metrics.Counter> batchErrors = new EnumMap<>(Direction.class);
+    private final Map<Direction, Metrics.Counter> flightsWritten = new EnumMap<>(Direction.class);
+    private final Map<Direction, Metrics.Counter> gateChanges = new EnumMap<>(Direction.class);
+    private final Map<Direction, Metrics.Counter> gateHistoryRows = new EnumMap<>(Direction.class);
+
+    /**
+     * @param writerThreads hilos que escriben en la base de datos a la vez
+     * @param queueCapacity vuelos pendientes a partir de los cuales
+     * {@link #submit} se bloquea
+     * @param batchSize vuelos por transacción
+     * @param caches caché de estado de cada dirección, que se actualiza tras
+     * cada commit
+     * @param wal log en el que se guardan los vuelos antes de escribirlos, o
+     * <code>null</code> para encolarlos directamente
+     */
+    public FlightWriteService(int writerThreads, int queueCapacity, int batchSize,
+            Map<Direction, FlightStateCache> caches, WriteAheadLog wal) {
+        int threads = Math.max(1, writerThreads);
+        this.executor = Executors.newFixedThreadPool(threads, IngestExecutors.daemonThreads("db-writer"));
+        this.queue = new WriteBehindQueue(queueCapacity);
+        this.caches = caches;
+        this.batchSize = Math.max(1, batchSize);
+        Metrics metrics = Metrics.registry();
+        for (Direction direction : Direction.values()) {
+            GateHistoryBuffer buffer = new GateHistoryBuffer(direction, Config.GATE_HISTORY_FLUSH_SIZE,
+                    Config.GATE_HISTORY_FLUSH_MS);
+            gateHistory.put(direction, buffer);
+            String table = direction.getTable();
+            batchSeconds.put(direction, metrics.histogram("ingest_db_batch_seconds",
+                    "Duración de cada lote de escritura, de obtener la conexión al commit", "table", table));
+            batchErrors.put(direction, metrics.counter("ingest_db_batch_errors_total",
+                    "Lotes de escritura fallidos", "table", table));
+            flightsWritten.put(direction, metrics.counter("ingest_db_flights_written_total",
+                    "Vuelos insertados o actualizados", "table", table));
+            gateChanges.put(direction, metrics.counter("ingest_gate_changes_total",
+                    "Vuelos nuevos o con cambio de puerta", "table", table));
+            gateHistoryRows.put(direction, metrics.counter("ingest_gate_history_rows_total",
+                    "Filas insertadas en gate_history_*", "table", direction.getGateHistoryTable()));
+            metrics.gauge("ingest_gate_history_pending", "Cambios de puerta pendientes de volcar",
+                    buffer::size, "table", direction.getGateHistoryTable());
+        }
+        metrics.gauge("ingest_write_queue_pending", "Vuelos en la cola de escritura", queue::size);
+        metrics.counter("ingest_write_queue_coalesced_total",
+                "Vuelos fusionados con una versión pendiente anterior", queue::getCoalesced);
+        this.wal = wal;
+        for (int i = 0; i < threads; i++) {
+            executor.execute(this::drain);
+        }
+        if (wal != null) {
+            replayer = IngestExecutors.daemonThreads("wal-replay").newThread(
+                    new WalReplayer(wal, queue, this.batchSize, Config.WAL_COMPACT_SEGMENTS));
+            replayer.start();
+        } else {
+            replayer = null;
+        }
+    }
+
+    /**
+     * Encola la escritura de los vuelos de un feed. Sólo se bloquea si la cola
+     * está llena. Con WAL, los añade al log y no se bloquea.
+     *
+     * @param feed feed del que proceden los vuelos
+     * @param flights vuelos nuevos o cambiados
+     * @return futuro que se completa con el número de vuelos escritos cuando
+     * todos se han confirmado, o falla si alguna de sus transacciones falló;
+     * con WAL, ya completo con el número de vuelos guardados en el log
+     * @throws IOException si no se pudieron guardar en el WAL
+     */
+    public CompletableFuture<Integer> submit(FeedDescriptor feed, List<AvinorFlight> flights)
+            throws InterruptedException, IOException {
+        if (wal != null) {
+            wal.append(feed.getDirection(), flights);
+            return CompletableFuture.completedFuture(flights.size());
+        }
+        return queue.offer(feed.getDirection(), flights);
+    }
+
+    /**
+     * @return vuelos a la espera de ser escritos
+     */
+    public int getPending() {
+        return queue.size();
+    }
+
+    /**
+     * @return cierto si los vuelos se guardan en un {@link WriteAheadLog}
+     * antes de escribirse
+     */
+    public boolean hasWal() {
+        return wal != null;
+    }
+
+    /**
+     * @return vuelos del WAL aún no aplicados, o 0 si no hay WAL
+     */
+    public long getWalLag() {
+        return wal != null ? wal.getLag() : 0;
+    }
+
+    /**
+     * @return vuelos que se fusionaron con una versión pendiente anterior
+     */
+    public long getCoalesced() {
+        return queue.getCoalesced();
+    }
+
+    /**
+     * @return cambios de puerta a la espera de volcarse en
+     * <code>gate_history_*</code>
+     */
+    public int getPendingGateChanges() {
+        int pending = 0;
+        for (GateHistoryBuffer buffer : gateHistory.values()) {
+            pending += buffer.size();
+        }
+        return pending;
+    }
+
+    // Bucle de cada hilo escritor: termina cuando la cola se cierra y queda vacía.
+    private void drain() {
+        try {
+            while (true) {
+                WriteBehindQueue.Batch batch = queue.take(batchSize, 1, TimeUnit.SECONDS);
+                if (batch == null) {
+                    if (executor.isShutdown() && queue.size() == 0) {
+                        // Lo que quede del historial de puertas se vuelca antes de cerrar el pool.
+                        flushGateHistory(true);
+                        return;
+                    }
+                    flushGateHistory(false);
+                    continue;
+                }
+                long start = System.nanoTime();
+                try {
+                    String summary = write(batch.getDirection(), batch.getFlights());
+                    batchSeconds.get(batch.getDirection()).observeNanos(System.nanoTime() - start);
+                    queue.complete(batch, null);
+                    LogEvent.info(LOGGER, "write", "table", batch.getDirection().getTable(),
+                            "latency_ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), "detail", summary);
+                } catch (Exception ex) {
+                    batchErrors.get(batch.getDirection()).inc();
+                    queue.complete(batch, ex);
+                    LogEvent.log(LOGGER, Level.SEVERE, "write_error", ex, "table", batch.getDirection().getTable());
+                }
+                flushGateHistory(false);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushGateHistory(boolean force) {
+        for (Map.Entry<Direction, GateHistoryBuffer> entry : gateHistory.entrySet()) {
+            GateHistoryBuffer buffer = entry.getValue();
+            if (!(force ? buffer.size() > 0 : buffer.shouldFlush())) {
+                continue;
+            }
+            try (Connection conn = Database.getConnection()) {
+                int rows = buffer.flush(conn);
+                gateHistoryRows.get(entry.getKey()).add(rows);
+                LogEvent.log(LOGGER, Level.FINE, "gate_history_flush", "table", entry.getKey().getGateHistoryTable(),
+                        "rows", rows);
+            } catch (SQLException ex) {
+                // Los eventos siguen en el buffer y se reintentan en el siguiente volcado.
+                LogEvent.log(LOGGER, Level.SEVERE, "gate_history_error", ex,
+                        "table", entry.getKey().getGateHistoryTable());
+            }
+        }
+    }
+
+    private String write(Direction direction, List<AvinorFlight> flights) throws Exception {
+        FlightStateCache cache = caches.get(direction);
+        try (Connection conn = Database.getConnection()) {
+            // Con WAL los polls pueden haber empezado sin MySQL; la puerta anterior exige la caché cargada.
+            cache.ensureLoaded(conn);
+            long rowWritesBefore = Config.MEASURE_WRITE_AMPLIFICATION ? rowWrites(conn) : 0;
+            String summary;
+            // Con WAL el historial de puertas va en la transacción del lote (ver la documentación de la clase).
+            try (FlightBatchWriter writer = new FlightBatchWriter(conn, direction, flights.size(), cache,
+                    wal != null ? null : gateHistory.get(direction), Config.COMBINED_MERGE)) {
+                for (AvinorFlight flight : flights) {
+                    // La puerta anterior se lee al escribir, con la caché ya actualizada por los lotes previos.
+                    writer.add(flight, cache.getGate(flight.getUniqueId()));
+                }
+                writer.flush();
+                summary = writer.summary();
+                flightsWritten.get(direction).add(writer.getFlights());
+                gateChanges.get(direction).add(writer.getGateChanges());
+                if (wal != null) {
+                    gateHistoryRows.get(direction).add(writer.getGateChanges());
+                }
+            }
+            if (Config.MEASURE_WRITE_AMPLIFICATION) {
+                long rows = rowWrites(conn) - rowWritesBefore;
+                summary += String.format("; %d escrituras de fila en MySQL (%.2f por vuelo)",
+                        rows, (double) rows / flights.size());
+            }
+            return summary;
+        }
+    }
+
+    // Filas insertadas y actualizadas por el motor en esta sesión desde que se abrió, triggers incluidos.
+    private static long rowWrites(Connection conn) throws SQLException {
+        long rows = 0;
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(
+                        "SHOW SESSION STATUS WHERE Variable_name IN ('Handler_write', 'Handler_update')")) {
+            while (rs.next()) {
+                rows += rs.getLong(2);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Deja de aceptar vuelos; los escritores terminan de vaciar la cola y
+     * después se detienen. Con WAL, lo que aún no se había encolado se queda en
+     * el log para el siguiente arranque.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        if (replayer != null) {
+            replayer.interrupt();
+        }
+        queue.close();
+    }
+
+    /**
+     * Espera a que los escritores vacíen la cola tras {@link #close()}.
+     *
+     * @return cierto si se escribió todo lo pendiente dentro del plazo
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (replayer != null) {
+            TimeUnit.NANOSECONDS.timedJoin(replayer, deadline - System.nanoTime());
+        }
+        return executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,245 @@
+package com.jaime;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffer de solo-añadir de los cambios de puerta de una dirección, que se
+ * vuelca en <code>gate_history_*</code> con INSERT multi-fila.
+ * <p>
+ * {@link FlightBatchWriter} añade aquí un evento por cada vuelo nuevo o con
+ * puerta distinta, después de confirmar el vuelo en la tabla principal (la
+ * clave foránea de <code>gate_history_*</code> exige que exista). El buffer se
+ * vuelca cuando acumula {@link Config#GATE_HISTORY_FLUSH_SIZE} vuelos o cuando
+ * su evento más antiguo supera {@link Config#GATE_HISTORY_FLUSH_MS}
+ * milisegundos, en sentencias de hasta {@link #ROWS_PER_INSERT} filas.
+ * <p>
+ * Dentro de una misma ventana sólo se guarda el último evento de cada vuelo:
+ * si la puerta cambia varias veces, se registra la final; si vuelve a la que
+ * tenía antes de la ventana, no se registra nada. La hora
+ * (<code>update_time</code>) es la del cambio y no la del volcado: se calcula
+ * en MySQL como <code>NOW()</code> menos los segundos transcurridos, para que
+ * siga siendo la hora del servidor.
+ *
+ * @author Jaime Villalba
+ */
+public class GateHistoryBuffer {
+
+    /**
+     * Máximo de filas por INSERT.
+     */
+    static final int ROWS_PER_INSERT = 500;
+
+    private static final class Event {
+
+        // Puerta antes de la ventana; null si el vuelo es nuevo
+        final String previousGate;
+        AvinorFlight flight;
+        long nanos;
+
+        Event(String previousGate, AvinorFlight flight, long nanos) {
+            this.previousGate = previousGate;
+            this.flight = flight;
+            this.nanos = nanos;
+        }
+    }
+
+    private final String table;
+    private final int flushSize;
+    private final long flushIntervalNanos;
+    private final Object flushLock = new Object();
+    private LinkedHashMap<String, Event> pending = new LinkedHashMap<>();
+    private long oldestNanos;
+    private long deduplicated;
+    private long written;
+
+    /**
+     * @param direction dirección, que determina la tabla
+     * <code>gate_history_*</code>
+     * @param flushSize vuelos pendientes a partir de los cuales se vuelca
+     * @param flushIntervalMs antigüedad máxima de un evento pendiente
+     */
+    public GateHistoryBuffer(Direction direction, int flushSize, long flushIntervalMs) {
+        this.table = direction.getGateHistoryTable();
+        this.flushSize = Math.max(1, flushSize);
+        this.flushIntervalNanos = Math.max(0, flushIntervalMs) * 1_000_000;
+    }
+
+    /**
+     * Añade el cambio de puerta de un vuelo ya confirmado en la tabla
+     * principal.
+     *
+     * @param oldGate puerta anterior, o <code>null</code> si el vuelo es nuevo
+     */
+    public synchronized void append(AvinorFlight flight, String oldGate) {
+        long now = System.nanoTime();
+        Event event = pending.get(flight.getUniqueId());
+        if (event != null) {
+            event.flight = flight;
+            event.nanos = now;
+            deduplicated++;
+            return;
+        }
+        if (pending.isEmpty()) {
+            oldestNanos = now;
+        }
+        pending.put(flight.getUniqueId(), new Event(oldGate, flight, now));
+    }
+
+    /**
+     * @return cierto si se alcanzó el tamaño o la antigüedad de volcado
+     */
+    public synchronized boolean shouldFlush() {
+        return !pending.isEmpty()
+                && (pending.size() >= flushSize || System.nanoTime() - oldestNanos >= flushIntervalNanos);
+    }
+
+    /**
+     * Vuelca todo lo pendiente en una transacción. Si falla, los eventos
+     * vuelven al buffer (salvo los que ya tengan una versión más reciente) y se
+     * relanza el error.
+     *
+     * @param conn conexión a MySQL
+     * @return filas insertadas
+     */
+    public int flush(Connection conn) throws SQLException {
+        synchronized (flushLock) {
+            Map<String, Event> events;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return 0;
+                }
+                events = pending;
+                pending = new LinkedHashMap<>();
+            }
+            List<Event> rows = new ArrayList<>(events.size());
+            for (Event event : events.values()) {
+                // Volvió a la puerta que tenía antes de la ventana: no hay cambio que registrar.
+                if (event.previousGate == null || !event.previousGate.equals(event.flight.getGate())) {
+                    rows.add(event);
+                }
+            }
+            try {
+                insert(conn, rows);
+            } catch (SQLException ex) {
+                restore(events);
+                throw ex;
+            }
+            synchronized (this) {
+                deduplicated += events.size() - rows.size();
+                written += rows.size();
+            }
+            return rows.size();
+        }
+    }
+
+    private void insert(Connection conn, List<Event> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        boolean previousAutoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            long now = System.nanoTime();
+            PreparedStatement full = null;
+            try {
+                for (int start = 0; start < rows.size(); start += ROWS_PER_INSERT) {
+                    int count = Math.min(ROWS_PER_INSERT, rows.size() - start);
+                    // Los lotes completos reutilizan la misma sentencia; sólo el último puede ser más corto.
+                    PreparedStatement stmt;
+                    if (count == ROWS_PER_INSERT) {
+                        if (full == null) {
+                            full = conn.prepareStatement(insertQuery(count));
+                        }
+                        stmt = full;
+                    } else {
+                        stmt = conn.prepareStatement(insertQuery(count));
+                    }
+                    try {
+                        int i = 1;
+                        for (Event event : rows.subList(start, start + count)) {
+                            AvinorFlight flight = event.flight;
+                            stmt.setString(i++, flight.getUniqueId());
+                            stmt.setString(i++, flight.getGate());
+                            stmt.setLong(i++, (now - event.nanos) / 1_000_000_000);
+                            stmt.setString(i++, flight.getFlightId());
+                            stmt.setString(i++, flight.getDomInt());
+                            stmt.setString(i++, AvinorTime.format(flight.getScheduleEpoch()));
+                            stmt.setString(i++, flight.getAirport());
+                        }
+                        stmt.executeUpdate();
+                    } finally {
+                        if (stmt != full) {
+                            stmt.close();
+                        }
+                    }
+                }
+            } finally {
+                if (full != null) {
+                    full.close();
+                }
+            }
+            conn.commit();
+        } catch (SQLException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            conn.setAutoCommit(previousAutoCommit);
+        }
+    }
+
+    private String insertQuery(int rows) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table)
+                .append(" (unique_id, gate, update_time, flight_id, dom_int, schedule_time, airport) VALUES ");
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "" : ", ").append("(?, ?, TIMESTAMPADD(SECOND, -?, NOW()), ?, ?, ?, ?)");
+        }
+        return sql.toString();
+    }
+
+    private synchronized void restore(Map<String, Event> events) {
+        LinkedHashMap<String, Event> merged = new LinkedHashMap<>(events);
+        for (Event newer : pending.values()) {
+            Event older = merged.get(newer.flight.getUniqueId());
+            if (older != null) {
+                // Se conserva la puerta de antes de la ventana y se toma la versión más reciente del vuelo.
+                older.flight = newer.flight;
+                older.nanos = newer.nanos;
+            } else {
+                merged.put(newer.flight.getUniqueId(), newer);
+            }
+        }
+        long oldest = pending.isEmpty() ? Long.MAX_VALUE : oldestNanos;
+        for (Event event : events.values()) {
+            oldest = Math.min(oldest, event.nanos);
+        }
+        pending = merged;
+        oldestNanos = oldest;
+    }
+
+    /**
+     * @return vuelos con cambios de puerta pendientes de volcar
+     */
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * @return eventos descartados por repetirse dentro de la misma ventana
+     */
+    public synchronized long getDeduplicated() {
+        return deduplicated;
+    }
+
+    /**
+     * @return filas insertadas en <code>gate_history_*</code>
+     */
+    public synchronized long getWritten() {
+        return written;
+    }
+}
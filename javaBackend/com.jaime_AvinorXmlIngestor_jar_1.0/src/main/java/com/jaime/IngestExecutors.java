@@ -0,0 +1,123 @@
+package com.jaime;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fábrica de los executors de la ingesta.
+ * <p>
+ * Descargar y parsear un feed es trabajo casi todo de E/S, así que en Java 21+
+ * se usan hilos virtuales (un hilo por feed) limitados por un semáforo a
+ * <code>maxConcurrency</code> tareas simultáneas. En versiones anteriores se
+ * usa un pool fijo de ese mismo tamaño. El proyecto compila para Java 15, por
+ * eso los hilos virtuales se obtienen por reflexión.
+ *
+ * @author Jaime Villalba
+ */
+public final class IngestExecutors {
+
+    private static final Logger LOGGER = Logger.getLogger(IngestExecutors.class.getName());
+
+    private IngestExecutors() {
+    }
+
+    /**
+     * @param maxConcurrency número máximo de tareas ejecutándose a la vez
+     * @return executor acotado para descargar y parsear feeds
+     */
+    public static ExecutorService newFetchExecutor(int maxConcurrency) {
+        int bound = Math.max(1, maxConcurrency);
+        ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+        if (virtual != null) {
+            return new BoundedExecutor(virtual, bound);
+        }
+        return Executors.newFixedThreadPool(bound, daemonThreads("ingest-fetch"));
+    }
+
+    /**
+     * @param prefix prefijo del nombre de los hilos
+     * @return ThreadFactory de hilos daemon con nombre numerado
+     */
+    public static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException ex) {
+            // Java < 21: no hay hilos virtuales
+            return null;
+        } catch (ReflectiveOperationException ex) {
+            LOGGER.log(Level.WARNING, "No se pudieron crear hilos virtuales; se usa un pool fijo", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Executor que limita con un semáforo cuántas tareas del executor delegado
+     * se ejecutan a la vez.
+     */
+    private static final class BoundedExecutor extends AbstractExecutorService {
+
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+
+        BoundedExecutor(ExecutorService delegate, int bound) {
+            this.delegate = delegate;
+            this.permits = new Semaphore(bound);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(() -> {
+                permits.acquireUninterruptibly();
+                try {
+                    command.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.jaime;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Todo lo que vive mientras dura la ingesta, creado una sola vez y cerrado en
+ * orden:
+ * <ul>
+ * <li>un único scheduler para todos los feeds ({@link FeedScheduler});</li>
+ * <li>el executor de descarga y parseo ({@link IngestExecutors});</li>
+ * <li>el escritor compartido ({@link FlightWriteService}), con su
+ * {@link WriteAheadLog} si {@link Config#WAL_DIR} tiene valor;</li>
+ * <li>el cliente HTTP ({@link FeedFetcher#newHttpClient()});</li>
+ * <li>el endpoint de métricas ({@link MetricsServer}), si
+ * {@link Config#METRICS_PORT} no es 0, y el resumen de rendimiento
+ * ({@link ThroughputReport}) si {@link Config#THROUGHPUT_REPORT_SECONDS} no es
+ * 0;</li>
+ * <li>el panel en memoria ({@link LiveBoard}), el stream de cambios
+ * ({@link ChangeStream}) y su API ({@link BoardServer}), si
+ * {@link Config#BOARD_PORT} no es 0;</li>
+ * <li>la carga de las exportaciones de movimientos de Tidy
+ * ({@link MovementCsvIngestor}), si {@link Config#MOVEMENTS_CSV_DIR} tiene
+ * valor;</li>
+ * <li>el pool de conexiones ({@link Database}).</li>
+ * </ul>
+ * {@link #close()} (también desde el shutdown hook que registra
+ * {@link #start(List)}) deja de programar polls, espera a que terminen los que
+ * están en curso, vacía la cola de escritura y sólo entonces cierra el pool,
+ * todo dentro de {@link Config#SHUTDOWN_TIMEOUT_SECONDS}. Cada lote se escribe
+ * en su propia transacción, así que un <code>docker stop</code> nunca deja un
+ * lote a medias; lo que no dé tiempo a escribir se vuelve a pedir en el
+ * siguiente arranque, porque su poll no llegó a darse por bueno (o, con WAL,
+ * se aplica desde el log).
+ *
+ * @author Jaime Villalba
+ */
+public final class IngestionRuntime implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(IngestionRuntime.class.getName());
+
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService fetchExecutor;
+    private final FlightWriteService writeService;
+    private final HttpClient httpClient;
+    private volatile MetricsServer metricsServer;
+    // Panel en memoria de los vuelos activos y su API, si BOARD_PORT no es 0
+    private final ChangeStream stream;
+    private final LiveBoard board;
+    private volatile BoardServer boardServer;
+    // Última puerta y huella conocidas de cada vuelo, una caché por tabla de destino compartida por todos los aeropuertos.
+    private final Map<Direction, FlightStateCache> caches = new EnumMap<>(Direction.class);
+    private boolean closed;
+
+    private IngestionRuntime() {
+        for (Direction direction : Direction.values()) {
+            caches.put(direction, new FlightStateCache(direction, Config.CACHE_RETENTION_DAYS));
+        }
+        this.scheduler = Executors.newScheduledThreadPool(1);
+        this.fetchExecutor = IngestExecutors.newFetchExecutor(Config.INGEST_FETCH_CONCURRENCY);
+        this.writeService = new FlightWriteService(Config.DB_WRITER_THREADS, Config.WRITE_QUEUE_CAPACITY,
+                Config.DB_BATCH_SIZE, caches, WriteAheadLog.fromConfig());
+        this.httpClient = FeedFetcher.newHttpClient();
+        this.stream = Config.BOARD_PORT > 0
+                ? new ChangeStream(Config.STREAM_BUFFER_SIZE, Config.STREAM_MAX_SUBSCRIBERS) : null;
+        this.board = Config.BOARD_PORT > 0 ? new LiveBoard(stream) : null;
+    }
+
+    /**
+     * Arranca la ingesta de los feeds y registra un shutdown hook que la cierra
+     * ordenadamente al detener la JVM (SIGTERM, Ctrl+C).
+     *
+     * @param feeds feeds a ingerir
+     * @return el runtime en marcha
+     */
+    public static IngestionRuntime start(List<FeedDescriptor> feeds) {
+        IngestionRuntime runtime = startIdle();
+        SnapshotArchive archive = SnapshotArchive.fromConfig();
+        FeedScheduler feedScheduler = new FeedScheduler(runtime.scheduler, runtime.fetchExecutor);
+        for (FeedDescriptor feed : feeds) {
+            feedScheduler.start(runtime.newIngestor(feed, archive));
+        }
+        if (!Config.MOVEMENTS_CSV_DIR.isBlank()) {
+            // Se ejecuta en el executor de descarga para no retrasar la programación de los polls.
+            MovementCsvIngestor movements = new MovementCsvIngestor(Path.of(Config.MOVEMENTS_CSV_DIR));
+            runtime.scheduler.scheduleWithFixedDelay(() -> runtime.fetchExecutor.execute(movements),
+                    0, Config.MOVEMENTS_SCAN_SECONDS, TimeUnit.SECONDS);
+        }
+        return runtime;
+    }
+
+    /**
+     * Arranca el runtime sin programar ningún poll, para alimentarlo con
+     * {@link FeedIngestor#replay} (ver {@link SnapshotReplay}). Se cierra
+     * igual que el de {@link #start(List)}.
+     *
+     * @return el runtime en marcha
+     */
+    public static IngestionRuntime startIdle() {
+        IngestionRuntime runtime = new IngestionRuntime();
+        runtime.startMetrics();
+        runtime.startBoard();
+        if (Config.THROUGHPUT_REPORT_SECONDS > 0) {
+            runtime.scheduler.scheduleAtFixedRate(new ThroughputReport(Metrics.registry()),
+                    Config.THROUGHPUT_REPORT_SECONDS, Config.THROUGHPUT_REPORT_SECONDS, TimeUnit.SECONDS);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(runtime::close, "ingest-shutdown"));
+        return runtime;
+    }
+
+    /**
+     * @param feed feed a ingerir
+     * @param archive dónde grabar sus respuestas, o <code>null</code>
+     * @return un ingestor del feed que usa la caché, el escritor y el cliente
+     * HTTP de este runtime
+     */
+    public FeedIngestor newIngestor(FeedDescriptor feed, SnapshotArchive archive) {
+        return new FeedIngestor(feed, caches.get(feed.getDirection()), writeService, httpClient, archive, board);
+    }
+
+    private void startMetrics() {
+        Database.metrics().register(Metrics.registry());
+        Metrics.registerMBean();
+        if (Config.METRICS_PORT > 0) {
+            try {
+                metricsServer = MetricsServer.start(Config.METRICS_PORT);
+                LogEvent.info(LOGGER, "metrics_server", "port", metricsServer.getPort());
+            } catch (IOException ex) {
+                // Sin endpoint la ingesta sigue funcionando; las métricas siguen disponibles por JMX.
+                LogEvent.log(LOGGER, Level.WARNING, "metrics_server_error", ex, "port", Config.METRICS_PORT);
+            }
+        }
+    }
+
+    private void startBoard() {
+        if (board == null) {
+            return;
+        }
+        try {
+            boardServer = BoardServer.start(Config.BOARD_PORT, board, stream);
+            LogEvent.info(LOGGER, "board_server", "port", boardServer.getPort());
+        } catch (IOException ex) {
+            LogEvent.log(LOGGER, Level.WARNING, "board_server_error", ex, "port", Config.BOARD_PORT);
+        }
+    }
+
+    /**
+     * Detiene la ingesta: no se programan más polls, se esperan los que están
+     * en curso y se escriben todos los vuelos encolados antes de cerrar el
+     * pool. Llamarlo más de una vez no tiene efecto.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        // Se escribe en consola y no con java.util.logging: LogManager tiene su propio shutdown hook que puede
+        // haber cerrado ya los handlers.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(Config.SHUTDOWN_TIMEOUT_SECONDS);
+        System.out.println("Deteniendo la ingesta: " + writeService.getPending() + " vuelos y "
+                + writeService.getPendingGateChanges() + " cambios de puerta pendientes de escribir");
+        try {
+            // 1. Sin polls nuevos; los que ya han empezado terminan y encolan sus vuelos.
+            scheduler.shutdownNow();
+            fetchExecutor.shutdown();
+            if (!fetchExecutor.awaitTermination(remaining(deadline), TimeUnit.NANOSECONDS)) {
+                System.err.println("Hay polls que no terminaron a tiempo; se interrumpen");
+                fetchExecutor.shutdownNow();
+            }
+            // 2. Los escritores vacían la cola, lote a lote, y vuelcan el historial de puertas.
+            writeService.close();
+            if (!writeService.awaitTermination(remaining(deadline), TimeUnit.NANOSECONDS)) {
+                System.err.println("Quedaron " + writeService.getPending()
+                        + " vuelos sin escribir; se pedirán de nuevo en el próximo arranque");
+            }
+            if (writeService.getWalLag() > 0) {
+                System.out.println(writeService.getWalLag() + " vuelos quedan en el WAL; se aplicarán en el próximo"
+                        + " arranque");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            System.err.println("Parada interrumpida: " + ex);
+        } finally {
+            // 3. El pool se cierra el último, cuando ya nadie escribe.
+            Database.close();
+            if (metricsServer != null) {
+                metricsServer.close();
+            }
+            if (boardServer != null) {
+                boardServer.close();
+            }
+            System.out.println("Ingesta detenida");
+        }
+    }
+
+    private static long remaining(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+}
@@ -10,9 +10,12 @@ package com.jaime;
  */
 public class Ingestor {
     public static void main(String[] args) {
-        
-     IngestorMachines.runArrivalsIngestor();
-     IngestorMachines.runDeparturesIngestor();
+
+     // Log estructurado y asíncrono: los polls nunca esperan a la consola.
+     AsyncLogHandler.install();
+     // Todos los feeds configurados (aeropuertos y direcciones) comparten scheduler, pool, cliente HTTP y escritor.
+     // El runtime registra un shutdown hook que escribe lo pendiente antes de salir (docker stop).
+     IngestorMachines.runIngestors(Config.FEEDS);
         
     }
     
@@ -0,0 +1,358 @@
+package com.jaime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Panel en memoria con los vuelos activos de cada feed, tal como los trae el
+ * último poll, para consultarlos sin pasar por MySQL (ver
+ * {@link BoardServer}).
+ * <p>
+ * Cada feed tiene un {@link Snapshot} inmutable con sus vuelos ordenados por
+ * <code>schedule_time</code> e índices por aerolínea, puerta, código de estado
+ * y aeropuerto de origen/destino. Tras cada poll, {@link #update} construye una
+ * copia nueva y la publica de una vez: quien lee obtiene siempre un panel
+ * completo y coherente, sin cerrojos, y un poll sin cambios no crea copia ni
+ * cambia la versión. Un poll completo sustituye los vuelos del feed; uno
+ * incremental los añade o actualiza, y descarta los que llevan más de
+ * {@link #HORIZON_SECONDS} programados en el pasado.
+ *
+ * @author Jaime Villalba
+ */
+public final class LiveBoard {
+
+    /**
+     * Vuelos ya pasados que se conservan entre polls completos.
+     */
+    static final long HORIZON_SECONDS = 2 * 3600;
+
+    private static final AvinorFlight[] NO_FLIGHTS = new AvinorFlight[0];
+    private static final Comparator<AvinorFlight> BY_SCHEDULE = Comparator
+            .comparingLong(AvinorFlight::getScheduleEpoch).thenComparing(AvinorFlight::getUniqueId);
+
+    /**
+     * Filtros de una consulta; los que son <code>null</code> no se aplican.
+     */
+    public static final class Query {
+
+        String airline;
+        String gate;
+        String statusCode;
+        String airport;
+        long fromEpoch = Long.MIN_VALUE;
+        long toEpoch = Long.MAX_VALUE;
+        int limit = Integer.MAX_VALUE;
+
+        public Query airline(String airline) {
+            this.airline = airline;
+            return this;
+        }
+
+        public Query gate(String gate) {
+            this.gate = gate;
+            return this;
+        }
+
+        /**
+         * @param statusCode código tal cual ("E", "D"...) o "N/A" para los
+         * vuelos sin estado
+         */
+        public Query statusCode(String statusCode) {
+            this.statusCode = statusCode;
+            return this;
+        }
+
+        /**
+         * @param airport aeropuerto de origen (llegadas) o destino (salidas)
+         */
+        public Query airport(String airport) {
+            this.airport = airport;
+            return this;
+        }
+
+        /**
+         * @param fromEpoch <code>schedule_time</code> mínimo, en segundos epoch
+         * @param toEpoch <code>schedule_time</code> máximo, en segundos epoch
+         */
+        public Query scheduled(long fromEpoch, long toEpoch) {
+            this.fromEpoch = fromEpoch;
+            this.toEpoch = toEpoch;
+            return this;
+        }
+
+        public Query limit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        boolean isEmpty() {
+            return airline == null && gate == null && statusCode == null && airport == null
+                    && fromEpoch == Long.MIN_VALUE && toEpoch == Long.MAX_VALUE && limit == Integer.MAX_VALUE;
+        }
+
+        boolean matches(AvinorFlight flight) {
+            long schedule = flight.getScheduleEpoch();
+            return (airline == null || airline.equals(flight.getAirline()))
+                    && (gate == null || gate.equals(flight.getGate()))
+                    && (statusCode == null || statusCode.equals(flight.getStatusCode()))
+                    && (airport == null || airport.equals(flight.getAirport()))
+                    && schedule >= fromEpoch && schedule <= toEpoch;
+        }
+    }
+
+    /**
+     * Estado de un feed tras un poll. Inmutable; los arrays de vuelos e índices
+     * no se modifican una vez publicados.
+     */
+    public static final class Snapshot {
+
+        private final FeedDescriptor feed;
+        private final long version;
+        private final long updatedMillis;
+        private final AvinorFlight[] bySchedule;
+        private final Map<String, AvinorFlight> byId;
+        private final Map<String, AvinorFlight[]> byAirline;
+        private final Map<String, AvinorFlight[]> byGate;
+        private final Map<String, AvinorFlight[]> byStatus;
+        private final Map<String, AvinorFlight[]> byAirport;
+        // JSON del panel completo, generado la primera vez que se pide (ver BoardServer)
+        volatile byte[] json;
+
+        private Snapshot(FeedDescriptor feed, long version, long updatedMillis, Map<String, AvinorFlight> byId) {
+            this.feed = feed;
+            this.version = version;
+            this.updatedMillis = updatedMillis;
+            this.byId = byId;
+            this.bySchedule = byId.values().toArray(NO_FLIGHTS);
+            Arrays.sort(bySchedule, BY_SCHEDULE);
+            Map<String, List<AvinorFlight>> airlines = new HashMap<>();
+            Map<String, List<AvinorFlight>> gates = new HashMap<>();
+            Map<String, List<AvinorFlight>> statuses = new HashMap<>();
+            Map<String, List<AvinorFlight>> airports = new HashMap<>();
+            for (AvinorFlight flight : bySchedule) {
+                airlines.computeIfAbsent(flight.getAirline(), k -> new ArrayList<>()).add(flight);
+                gates.computeIfAbsent(flight.getGate(), k -> new ArrayList<>()).add(flight);
+                statuses.computeIfAbsent(flight.getStatusCode(), k -> new ArrayList<>()).add(flight);
+                airports.computeIfAbsent(flight.getAirport(), k -> new ArrayList<>()).add(flight);
+            }
+            this.byAirline = freeze(airlines);
+            this.byGate = freeze(gates);
+            this.byStatus = freeze(statuses);
+            this.byAirport = freeze(airports);
+        }
+
+        private static Map<String, AvinorFlight[]> freeze(Map<String, List<AvinorFlight>> index) {
+            Map<String, AvinorFlight[]> frozen = new HashMap<>(index.size() * 2);
+            for (Map.Entry<String, List<AvinorFlight>> entry : index.entrySet()) {
+                frozen.put(entry.getKey(), entry.getValue().toArray(NO_FLIGHTS));
+            }
+            return frozen;
+        }
+
+        public FeedDescriptor getFeed() {
+            return feed;
+        }
+
+        /**
+         * @return número que aumenta cada vez que cambia algún vuelo del feed
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return instante (epoch ms) en que se publicó esta versión
+         */
+        public long getUpdatedMillis() {
+            return updatedMillis;
+        }
+
+        public int size() {
+            return bySchedule.length;
+        }
+
+        /**
+         * @return el vuelo con ese <code>uniqueID</code>, o <code>null</code>
+         */
+        public AvinorFlight get(String uniqueId) {
+            return byId.get(uniqueId);
+        }
+
+        /**
+         * @return todos los vuelos, por <code>schedule_time</code>
+         */
+        public List<AvinorFlight> flights() {
+            return Collections.unmodifiableList(Arrays.asList(bySchedule));
+        }
+
+        /**
+         * Parte del índice más selectivo de los filtros pedidos (o del tramo
+         * de horas, con búsqueda binaria) y comprueba el resto vuelo a vuelo.
+         *
+         * @return los vuelos que cumplen todos los filtros, por
+         * <code>schedule_time</code>
+         */
+        public List<AvinorFlight> query(Query query) {
+            AvinorFlight[] candidates = bySchedule;
+            int from = 0;
+            int to = bySchedule.length;
+            candidates = smallest(candidates, byAirline, query.airline);
+            candidates = smallest(candidates, byGate, query.gate);
+            candidates = smallest(candidates, byStatus, query.statusCode);
+            candidates = smallest(candidates, byAirport, query.airport);
+            if (candidates == bySchedule) {
+                from = lowerBound(query.fromEpoch);
+                to = query.toEpoch == Long.MAX_VALUE ? bySchedule.length : lowerBound(query.toEpoch + 1);
+            } else {
+                to = candidates.length;
+            }
+            List<AvinorFlight> result = new ArrayList<>(Math.min(Math.max(0, to - from), query.limit));
+            for (int i = from; i < to && result.size() < query.limit; i++) {
+                if (query.matches(candidates[i])) {
+                    result.add(candidates[i]);
+                }
+            }
+            return result;
+        }
+
+        private static AvinorFlight[] smallest(AvinorFlight[] current, Map<String, AvinorFlight[]> index,
+                String key) {
+            if (key == null) {
+                return current;
+            }
+            AvinorFlight[] indexed = index.getOrDefault(key, NO_FLIGHTS);
+            return indexed.length < current.length ? indexed : current;
+        }
+
+        // Primer vuelo programado en epoch o después
+        private int lowerBound(long epoch) {
+            int low = 0;
+            int high = bySchedule.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (bySchedule[mid].getScheduleEpoch() < epoch) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    private final ConcurrentMap<String, Snapshot> boards = new ConcurrentHashMap<>();
+    private final ChangeStream stream;
+
+    public LiveBoard() {
+        this(null);
+    }
+
+    /**
+     * @param stream dónde publicar los cambios de cada poll, o
+     * <code>null</code>
+     */
+    public LiveBoard(ChangeStream stream) {
+        this.stream = stream;
+    }
+
+    /**
+     * @param feedName nombre del feed, p. ej. "OSL-D"
+     * @return el estado actual del feed, o <code>null</code> si aún no hubo
+     * ningún poll
+     */
+    public Snapshot get(String feedName) {
+        return boards.get(feedName);
+    }
+
+    /**
+     * @return el estado actual de todos los feeds
+     */
+    public Collection<Snapshot> snapshots() {
+        List<Snapshot> snapshots = new ArrayList<>(boards.values());
+        snapshots.sort(Comparator.comparing(snapshot -> snapshot.getFeed().getName()));
+        return snapshots;
+    }
+
+    /**
+     * Aplica el resultado de un poll y publica la nueva versión del feed si
+     * algo cambió. Con {@link ChangeStream}, los cambios de cada vuelo respecto
+     * a la versión anterior (vuelo nuevo, puerta, estado, retraso, cinta) se
+     * publican después, ya con la versión nueva visible. La primera carga de un
+     * feed no genera eventos: ese estado inicial se obtiene del panel.
+     *
+     * @param flights vuelos del poll, sin repetidos
+     * @param full cierto si el poll trajo el feed completo
+     * @param nowEpoch instante del poll, en segundos epoch
+     * @return el estado publicado (el anterior si no cambió nada)
+     */
+    public Snapshot update(FeedDescriptor feed, List<AvinorFlight> flights, boolean full, long nowEpoch) {
+        List<ChangeStream.Change> changes = new ArrayList<>();
+        Snapshot snapshot = boards.compute(feed.getName(), (name, previous) -> {
+            changes.clear();
+            Map<String, AvinorFlight> old = previous != null ? previous.byId : Collections.emptyMap();
+            long version = previous != null ? previous.version + 1 : 1;
+            boolean diff = stream != null && previous != null;
+            Map<String, AvinorFlight> next = new HashMap<>(full ? flights.size() * 2 : old.size() * 2 + 16);
+            if (!full) {
+                next.putAll(old);
+            }
+            boolean changed = full && flights.size() != old.size();
+            for (AvinorFlight flight : flights) {
+                AvinorFlight before = old.get(flight.getUniqueId());
+                if (before == null || before.fingerprint() != flight.fingerprint()) {
+                    changed = true;
+                    next.put(flight.getUniqueId(), flight);
+                    if (diff) {
+                        diff(name, version, before, flight, changes);
+                    }
+                } else {
+                    // Sin cambios: se conserva la misma instancia
+                    next.put(flight.getUniqueId(), before);
+                }
+            }
+            long horizon = nowEpoch - HORIZON_SECONDS;
+            changed |= next.values().removeIf(flight -> flight.getScheduleEpoch() != AvinorTime.NONE
+                    && flight.getScheduleEpoch() < horizon);
+            if (!changed && previous != null) {
+                return previous;
+            }
+            return new Snapshot(feed, version, System.currentTimeMillis(), next);
+        });
+        if (!changes.isEmpty()) {
+            stream.publish(changes);
+        }
+        return snapshot;
+    }
+
+    private static void diff(String feed, long version, AvinorFlight before, AvinorFlight after,
+            List<ChangeStream.Change> changes) {
+        if (before == null) {
+            changes.add(new ChangeStream.Change(FlightEvent.Type.NEW_FLIGHT, feed, version, after, null, null));
+            return;
+        }
+        if (!before.getGate().equals(after.getGate())) {
+            changes.add(new ChangeStream.Change(FlightEvent.Type.GATE_CHANGE, feed, version, after,
+                    before.getGate(), after.getGate()));
+        }
+        if (!before.getStatusCode().equals(after.getStatusCode())) {
+            changes.add(new ChangeStream.Change(FlightEvent.Type.STATUS_CHANGE, feed, version, after,
+                    before.getStatusCode(), after.getStatusCode()));
+        }
+        if (before.isDelayed() != after.isDelayed()) {
+            changes.add(new ChangeStream.Change(FlightEvent.Type.DELAY_CHANGE, feed, version, after,
+                    before.isDelayed() ? "Y" : "N", after.isDelayed() ? "Y" : "N"));
+        }
+        if (!before.getBelt().equals(after.getBelt())) {
+            changes.add(new ChangeStream.Change(FlightEvent.Type.BELT_CHANGE, feed, version, after,
+                    before.getBelt(), after.getBelt()));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.jaime;
+
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Evento de log estructurado: un nombre corto (<code>poll</code>,
+ * <code>write</code>...) y pares campo/valor, en lugar de un mensaje
+ * concatenado.
+ * <p>
+ * El texto no se construye al registrar el evento sino en el hilo de
+ * {@link AsyncLogHandler}, con {@link LogfmtFormatter}. Los valores deben ser
+ * inmutables (cadenas, números, enums), porque se leen más tarde desde otro
+ * hilo.
+ *
+ * @author Jaime Villalba
+ */
+public final class LogEvent extends LogRecord {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Object[] fields;
+
+    private LogEvent(Level level, String event, Object[] fields) {
+        super(level, event);
+        if (fields.length % 2 != 0) {
+            throw new IllegalArgumentException("Los campos van en pares nombre, valor");
+        }
+        this.fields = fields;
+    }
+
+    /**
+     * @param fields pares nombre, valor
+     */
+    public static void log(Logger logger, Level level, String event, Object... fields) {
+        log(logger, level, event, null, fields);
+    }
+
+    /**
+     * @param thrown excepción asociada, o <code>null</code>
+     * @param fields pares nombre, valor
+     */
+    public static void log(Logger logger, Level level, String event, Throwable thrown, Object... fields) {
+        if (!logger.isLoggable(level)) {
+            return;
+        }
+        LogEvent record = new LogEvent(level, event, fields);
+        record.setLoggerName(logger.getName());
+        record.setThrown(thrown);
+        logger.log(record);
+    }
+
+    public static void info(Logger logger, String event, Object... fields) {
+        log(logger, Level.INFO, event, null, fields);
+    }
+
+    /**
+     * @return el nombre del evento
+     */
+    public String getEvent() {
+        return getMessage();
+    }
+
+    /**
+     * @return pares nombre, valor
+     */
+    public Object[] getFields() {
+        return fields;
+    }
+}
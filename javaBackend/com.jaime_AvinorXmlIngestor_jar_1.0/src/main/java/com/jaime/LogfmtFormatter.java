@@ -0,0 +1,111 @@
+package com.jaime;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+
+/**
+ * Formato de una línea por evento, en logfmt:
+ * <pre>
+ * ts=2025-01-16T10:00:03.120Z level=INFO logger=FeedIngestor event=poll feed=OSL-A new=3 changed=12
+ * </pre>
+ * Los {@link LogEvent} se escriben con sus campos; el resto de registros (los
+ * de HikariCP, por ejemplo) con su mensaje en <code>msg</code>. Si hay
+ * excepción se añade <code>error</code> y la traza en las líneas siguientes,
+ * sangrada.
+ *
+ * @author Jaime Villalba
+ */
+public class LogfmtFormatter extends Formatter {
+
+    @Override
+    public String format(LogRecord record) {
+        StringBuilder out = new StringBuilder(160);
+        format(record, 0, out);
+        return out.toString();
+    }
+
+    /**
+     * Añade el registro a <code>out</code>, sin crear la cadena intermedia.
+     *
+     * @param suppressed registros iguales descartados desde el anterior que se
+     * escribió (ver {@link AsyncLogHandler})
+     */
+    void format(LogRecord record, int suppressed, StringBuilder out) {
+        out.append("ts=").append(Instant.ofEpochMilli(record.getMillis()))
+                .append(" level=").append(record.getLevel().getName())
+                .append(" logger=").append(shortName(record.getLoggerName()));
+        if (record instanceof LogEvent) {
+            LogEvent event = (LogEvent) record;
+            out.append(" event=").append(event.getEvent());
+            Object[] fields = event.getFields();
+            for (int i = 0; i < fields.length; i += 2) {
+                out.append(' ').append(fields[i]).append('=');
+                value(String.valueOf(fields[i + 1]), out);
+            }
+        } else {
+            out.append(" msg=");
+            value(formatMessage(record), out);
+        }
+        if (suppressed > 0) {
+            out.append(" suppressed=").append(suppressed);
+        }
+        Throwable thrown = record.getThrown();
+        if (thrown != null) {
+            out.append(" error=");
+            value(thrown.toString(), out);
+            StringWriter trace = new StringWriter();
+            thrown.printStackTrace(new PrintWriter(trace));
+            out.append('\n');
+            for (String line : trace.toString().split("\\R")) {
+                if (!line.isEmpty()) {
+                    out.append('\t').append(line).append('\n');
+                }
+            }
+        } else {
+            out.append('\n');
+        }
+    }
+
+    private static String shortName(String loggerName) {
+        if (loggerName == null || loggerName.isEmpty()) {
+            return "root";
+        }
+        return loggerName.substring(loggerName.lastIndexOf('.') + 1);
+    }
+
+    // Sin comillas si no hacen falta; con comillas y escapes si hay espacios, '=', comillas o saltos de línea.
+    private static void value(String value, StringBuilder out) {
+        boolean quote = value.isEmpty();
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c <= ' ' || c == '=' || c == '"';
+        }
+        if (!quote) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,352 @@
+package com.jaime;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Métricas de la ingesta, publicadas en formato de texto de Prometheus por
+ * {@link MetricsServer} y como atributos JMX (<code>com.jaime:type=Metrics</code>).
+ * <p>
+ * Cada métrica se crea una vez (al construir el feed o el escritor) y quien la
+ * actualiza guarda la referencia, así que registrar un valor no busca nada en
+ * mapas ni crea objetos: es un {@link LongAdder#add}, que no se disputa entre
+ * hilos. Los histogramas tienen cubos fijos en segundos; los totales y los
+ * cubos acumulados se calculan sólo cuando alguien lee las métricas.
+ *
+ * @author Jaime Villalba
+ */
+public final class Metrics implements DynamicMBean {
+
+    /**
+     * Cubos por defecto de los histogramas de latencia, en segundos.
+     */
+    static final double[] LATENCY_BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30};
+
+    private static final Metrics REGISTRY = new Metrics();
+
+    /**
+     * Contador monótono.
+     */
+    public static final class Counter {
+
+        private final LongAdder value = new LongAdder();
+
+        public void inc() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * Histograma de duraciones con cubos fijos.
+     */
+    public static final class Histogram {
+
+        private final double[] bounds;
+        private final long[] boundNanos;
+        private final LongAdder[] buckets;
+        private final LongAdder sumNanos = new LongAdder();
+
+        private Histogram(double[] bounds) {
+            this.bounds = bounds;
+            this.boundNanos = new long[bounds.length];
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < bounds.length; i++) {
+                boundNanos[i] = (long) (bounds[i] * 1_000_000_000L);
+            }
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * @param nanos duración medida con <code>System.nanoTime()</code>
+         */
+        public void observeNanos(long nanos) {
+            int i = 0;
+            while (i < boundNanos.length && nanos > boundNanos[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            sumNanos.add(nanos);
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (LongAdder bucket : buckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        public double getSumSeconds() {
+            return sumNanos.sum() / 1e9;
+        }
+    }
+
+    // Una métrica con nombre y tipo, y sus series (una por combinación de etiquetas).
+    private static final class Family {
+
+        final String name;
+        final String help;
+        final String type;
+        final Map<String, Object> series = new ConcurrentSkipListMap<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * @return el registro de la aplicación
+     */
+    public static Metrics registry() {
+        return REGISTRY;
+    }
+
+    /**
+     * Publica el registro en el servidor JMX de la plataforma como
+     * <code>com.jaime:type=Metrics</code>. Llamarlo más de una vez no tiene
+     * efecto.
+     */
+    public static void registerMBean() {
+        try {
+            MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.jaime:type=Metrics");
+            if (!mbeans.isRegistered(name)) {
+                mbeans.registerMBean(REGISTRY, name);
+            }
+        } catch (JMException ex) {
+            throw new IllegalStateException("No se pudieron registrar las métricas en JMX", ex);
+        }
+    }
+
+    /**
+     * @param labels pares nombre, valor
+     * @return el contador con esas etiquetas, creándolo si no existe
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, "counter").series.computeIfAbsent(labels(labels), k -> new Counter());
+    }
+
+    /**
+     * @param labels pares nombre, valor
+     * @return el histograma de duraciones con esas etiquetas, creándolo si no
+     * existe
+     */
+    public Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) family(name, help, "histogram").series.computeIfAbsent(labels(labels),
+                k -> new Histogram(LATENCY_BUCKETS));
+    }
+
+    /**
+     * Registra un contador que ya lleva otro componente y que se lee en el
+     * momento de exportar.
+     *
+     * @param labels pares nombre, valor
+     */
+    public void counter(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "counter").series.put(labels(labels), value);
+    }
+
+    /**
+     * Registra un valor que se lee en el momento de exportar (tamaño de una
+     * cola, conexiones activas...).
+     *
+     * @param labels pares nombre, valor
+     */
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "gauge").series.put(labels(labels), value);
+    }
+
+    /**
+     * @return la suma de todas las series de la métrica (de los histogramas,
+     * el número de observaciones), o 0 si no existe
+     */
+    public double sum(String name) {
+        Family family = families.get(name);
+        if (family == null) {
+            return 0;
+        }
+        double total = 0;
+        for (Object metric : family.series.values()) {
+            if (metric instanceof Counter) {
+                total += ((Counter) metric).get();
+            } else if (metric instanceof DoubleSupplier) {
+                total += ((DoubleSupplier) metric).getAsDouble();
+            } else {
+                total += ((Histogram) metric).getCount();
+            }
+        }
+        return total;
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, k -> new Family(name, help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("La métrica " + name + " ya existe como " + family.type);
+        }
+        return family;
+    }
+
+    private static String labels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Las etiquetas van en pares nombre, valor");
+        }
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            out.append(i == 0 ? "" : ",").append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Escribe todas las métricas en el formato de texto de Prometheus
+     * (versión 0.0.4).
+     */
+    public void writePrometheus(StringBuilder out) {
+        List<String> names = new ArrayList<>(families.keySet());
+        names.sort(null);
+        for (String name : names) {
+            Family family = families.get(name);
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Object> entry : family.series.entrySet()) {
+                String labels = entry.getKey();
+                Object metric = entry.getValue();
+                if (metric instanceof Counter) {
+                    sample(out, name, labels, ((Counter) metric).get());
+                } else if (metric instanceof DoubleSupplier) {
+                    sample(out, name, labels, ((DoubleSupplier) metric).getAsDouble());
+                } else {
+                    Histogram histogram = (Histogram) metric;
+                    String prefix = labels.isEmpty() ? "" : labels + ",";
+                    long cumulative = 0;
+                    for (int i = 0; i < histogram.buckets.length; i++) {
+                        cumulative += histogram.buckets[i].sum();
+                        String le = i < histogram.bounds.length ? format(histogram.bounds[i]) : "+Inf";
+                        sample(out, name + "_bucket", prefix + "le=\"" + le + "\"", cumulative);
+                    }
+                    sample(out, name + "_sum", labels, histogram.getSumSeconds());
+                    sample(out, name + "_count", labels, cumulative);
+                }
+            }
+        }
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(format(value)).append('\n');
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value)
+                : Double.toString(value);
+    }
+
+    // JMX: cada serie es un atributo de sólo lectura; de los histogramas se publican el número y la suma.
+
+    private Map<String, Object> attributes() {
+        Map<String, Object> attributes = new TreeMap<>();
+        for (Family family : families.values()) {
+            for (Map.Entry<String, Object> entry : family.series.entrySet()) {
+                String name = family.name + (entry.getKey().isEmpty() ? ""
+                        : "." + entry.getKey().replaceAll("[^A-Za-z0-9_=,-]", "").replace('=', '_').replace(',', '.'));
+                Object metric = entry.getValue();
+                if (metric instanceof Counter) {
+                    attributes.put(name, ((Counter) metric).get());
+                } else if (metric instanceof DoubleSupplier) {
+                    attributes.put(name, ((DoubleSupplier) metric).getAsDouble());
+                } else {
+                    Histogram histogram = (Histogram) metric;
+                    attributes.put(name + ".count", histogram.getCount());
+                    attributes.put(name + ".sumMillis", TimeUnit.NANOSECONDS.toMillis(histogram.sumNanos.sum()));
+                }
+            }
+        }
+        return attributes;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Object value = attributes().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] names) {
+        Map<String, Object> attributes = attributes();
+        AttributeList list = new AttributeList();
+        for (String name : names) {
+            if (attributes.containsKey(name)) {
+                list.add(new Attribute(name, attributes.get(name)));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) {
+        throw new UnsupportedOperationException("Las métricas son de sólo lectura");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> infos = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : attributes().entrySet()) {
+            infos.add(new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+                    entry.getKey(), true, false, false));
+        }
+        return new MBeanInfo(Metrics.class.getName(), "Métricas de la ingesta",
+                infos.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[0], null);
+    }
+}
@@ -0,0 +1,185 @@
+package com.jaime;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+/**
+ * Fila de la exportación "Movement Progress" de Tidy, tal como se guarda en
+ * <code>movement_progress</code> (clave <code>flight, date, ac_reg</code>).
+ * <p>
+ * Las horas se guardan como minutos del día y los desfases en minutos, en
+ * enteros y no en objetos: una exportación de varios años son cientos de miles
+ * de filas. Los campos vacíos o que no se pudieron interpretar valen
+ * {@link #NONE} y se escriben como NULL.
+ *
+ * @author Jaime Villalba
+ */
+public final class Movement {
+
+    /**
+     * Valor de una hora o un desfase ausente.
+     */
+    public static final int NONE = Integer.MIN_VALUE;
+
+    private final String flight;
+    private final LocalDate date;
+    private final String from;
+    private final String to;
+    private final String acReg;
+    private final int std;
+    private final int atd;
+    private final int sta;
+    private final int ata;
+    private final int toff;
+    private final int tdwn;
+    private final int atdOffset;
+    private final int ataOffset;
+    private final int blkOffset;
+    private final int taxiToff;
+    private final int taxiAta;
+    private final String delayCodes;
+    private final String cnl;
+
+    Movement(String flight, LocalDate date, String from, String to, String acReg, int std, int atd, int sta,
+            int ata, int toff, int tdwn, int atdOffset, int ataOffset, int blkOffset, int taxiToff, int taxiAta,
+            String delayCodes, String cnl) {
+        this.flight = flight;
+        this.date = date;
+        this.from = CodePool.intern(from);
+        this.to = CodePool.intern(to);
+        this.acReg = CodePool.intern(acReg);
+        this.std = std;
+        this.atd = atd;
+        this.sta = sta;
+        this.ata = ata;
+        this.toff = toff;
+        this.tdwn = tdwn;
+        this.atdOffset = atdOffset;
+        this.ataOffset = ataOffset;
+        this.blkOffset = blkOffset;
+        this.taxiToff = taxiToff;
+        this.taxiAta = taxiAta;
+        this.delayCodes = delayCodes;
+        this.cnl = CodePool.intern(cnl);
+    }
+
+    /**
+     * @return minutos del día como hora, o <code>null</code> si es
+     * {@link #NONE}
+     */
+    public static LocalTime toLocalTime(int minutes) {
+        return minutes == NONE ? null : LocalTime.of(minutes / 60, minutes % 60);
+    }
+
+    public String getFlight() {
+        return flight;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public String getAcReg() {
+        return acReg;
+    }
+
+    /**
+     * @return STD en minutos del día, o {@link #NONE}
+     */
+    public int getStd() {
+        return std;
+    }
+
+    /**
+     * @return ATD en minutos del día, o {@link #NONE}
+     */
+    public int getAtd() {
+        return atd;
+    }
+
+    /**
+     * @return STA en minutos del día, o {@link #NONE}
+     */
+    public int getSta() {
+        return sta;
+    }
+
+    /**
+     * @return ATA en minutos del día, o {@link #NONE}
+     */
+    public int getAta() {
+        return ata;
+    }
+
+    /**
+     * @return hora de despegue en minutos del día, o {@link #NONE}
+     */
+    public int getToff() {
+        return toff;
+    }
+
+    /**
+     * @return hora de aterrizaje en minutos del día, o {@link #NONE}
+     */
+    public int getTdwn() {
+        return tdwn;
+    }
+
+    /**
+     * @return ATD - STD en minutos, o {@link #NONE}
+     */
+    public int getAtdOffset() {
+        return atdOffset;
+    }
+
+    /**
+     * @return ATA - STA en minutos, o {@link #NONE}
+     */
+    public int getAtaOffset() {
+        return ataOffset;
+    }
+
+    /**
+     * @return diferencia del tiempo de bloque real con el programado, en
+     * minutos, o {@link #NONE}
+     */
+    public int getBlkOffset() {
+        return blkOffset;
+    }
+
+    /**
+     * @return minutos de rodaje hasta el despegue, o {@link #NONE}
+     */
+    public int getTaxiToff() {
+        return taxiToff;
+    }
+
+    /**
+     * @return minutos de rodaje desde el aterrizaje, o {@link #NONE}
+     */
+    public int getTaxiAta() {
+        return taxiAta;
+    }
+
+    /**
+     * @return códigos de retraso (p. ej. "0003/RA, 0018/WR"), o "" si no hay
+     */
+    public String getDelayCodes() {
+        return delayCodes;
+    }
+
+    /**
+     * @return "CNL" si el vuelo se canceló, o ""
+     */
+    public String getCnl() {
+        return cnl;
+    }
+}
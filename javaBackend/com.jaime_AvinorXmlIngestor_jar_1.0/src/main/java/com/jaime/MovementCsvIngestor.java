@@ -0,0 +1,209 @@
+package com.jaime;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Carga en <code>movement_progress</code> las exportaciones CSV de "Movement
+ * Progress" de Tidy que descarga <code>tidyMovementsIngestor.js</code>.
+ * <p>
+ * Cada fichero se parsea en paralelo con {@link MovementCsvParser} (en el
+ * {@link ForkJoinPool#commonPool()}) y se upserta por la clave
+ * <code>(flight, date, ac_reg)</code> con un PreparedStatement por lotes de
+ * {@link Config#DB_BATCH_SIZE} filas, en una transacción por lote. Las
+ * conexiones salen del pool de {@link Database} y los contadores se publican
+ * con las demás {@link Metrics}.
+ * <p>
+ * Dentro de la ingesta (ver {@link IngestionRuntime}), con
+ * {@link Config#MOVEMENTS_CSV_DIR} se revisa el directorio cada
+ * {@link Config#MOVEMENTS_SCAN_SECONDS} segundos y se cargan los
+ * <code>.csv</code> nuevos o modificados. Para una carga puntual (p. ej. una
+ * exportación de varios años):
+ * <pre>
+ * java -cp AvinorXmlIngestor-1.0.jar com.jaime.MovementCsvIngestor movements-2023.csv movements-2024.csv
+ * </pre>
+ * Los desfases a 0 se guardan como 0 y las horas o desfases vacíos como NULL;
+ * los códigos de retraso y CNL vacíos, como cadena vacía.
+ *
+ * @author Jaime Villalba
+ */
+public final class MovementCsvIngestor implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(MovementCsvIngestor.class.getName());
+
+    private static final String UPSERT = "INSERT INTO movement_progress ("
+            + "  flight, date, `from`, `to`, ac_reg, std, atd, sta, ata, toff, tdwn, "
+            + "  atd_offset, ata_offset, blk_offset, taxi_toff, taxi_ata, delay_codes, cnl"
+            + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
+            + " ON DUPLICATE KEY UPDATE "
+            + "  std=VALUES(std), atd=VALUES(atd), sta=VALUES(sta), ata=VALUES(ata), toff=VALUES(toff), "
+            + "  tdwn=VALUES(tdwn), atd_offset=VALUES(atd_offset), ata_offset=VALUES(ata_offset), "
+            + "  blk_offset=VALUES(blk_offset), taxi_toff=VALUES(taxi_toff), taxi_ata=VALUES(taxi_ata), "
+            + "  delay_codes=VALUES(delay_codes), cnl=VALUES(cnl)";
+
+    private final Path dir;
+    // Última modificación de cada fichero ya cargado
+    private final Map<Path, FileTime> loaded = new HashMap<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * @param dir directorio de descargas de las exportaciones
+     */
+    public MovementCsvIngestor(Path dir) {
+        this.dir = dir;
+    }
+
+    public static void main(String[] args) throws Exception {
+        AsyncLogHandler.install();
+        if (args.length == 0) {
+            throw new IllegalArgumentException("Uso: MovementCsvIngestor <fichero.csv> [...]");
+        }
+        try {
+            for (String arg : args) {
+                load(Path.of(arg));
+            }
+        } finally {
+            Database.close();
+        }
+    }
+
+    /**
+     * Carga los <code>.csv</code> del directorio que no se hayan cargado aún o
+     * que hayan cambiado desde la última vez. Si la ejecución anterior sigue
+     * en curso no hace nada.
+     */
+    @Override
+    public void run() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.csv")) {
+                for (Path file : stream) {
+                    files.add(file);
+                }
+            }
+            files.sort(null);
+            for (Path file : files) {
+                FileTime modified = Files.getLastModifiedTime(file);
+                if (modified.equals(loaded.get(file))) {
+                    continue;
+                }
+                load(file);
+                loaded.put(file, modified);
+            }
+        } catch (Exception ex) {
+            // El fichero se vuelve a intentar en la siguiente revisión.
+            LogEvent.log(LOGGER, Level.WARNING, "movements_error", ex, "dir", dir.toString());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Parsea y upserta un fichero.
+     *
+     * @return filas escritas
+     */
+    public static int load(Path file) throws IOException, SQLException {
+        Metrics metrics = Metrics.registry();
+        long start = System.nanoTime();
+        MovementCsvParser.Result result = MovementCsvParser.parse(file, ForkJoinPool.commonPool());
+        long parsed = System.nanoTime();
+        metrics.histogram("ingest_movements_parse_seconds", "Tiempo de parseo de cada exportación de movimientos")
+                .observeNanos(parsed - start);
+        metrics.counter("ingest_movements_skipped_total", "Filas de movimientos descartadas por no tener vuelo o fecha")
+                .add(result.getSkipped());
+
+        int written = write(result.getMovements());
+        long end = System.nanoTime();
+        metrics.histogram("ingest_movements_write_seconds", "Tiempo de escritura de cada exportación de movimientos")
+                .observeNanos(end - parsed);
+        metrics.counter("ingest_movements_total", "Movimientos escritos en movement_progress").add(written);
+        double seconds = Math.max(1e-3, (end - start) / 1e9);
+        LogEvent.info(LOGGER, "movements", "file", file.toString(), "rows", written, "skipped", result.getSkipped(),
+                "parse_s", Math.round((parsed - start) / 1e7) / 100.0,
+                "write_s", Math.round((end - parsed) / 1e7) / 100.0, "rows_per_s", Math.round(written / seconds));
+        return written;
+    }
+
+    private static int write(List<Movement> movements) throws SQLException {
+        if (movements.isEmpty()) {
+            return 0;
+        }
+        int batchSize = Math.max(1, Config.DB_BATCH_SIZE);
+        try (Connection conn = Database.getConnection()) {
+            boolean previousAutoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(UPSERT)) {
+                for (int i = 0; i < movements.size(); i++) {
+                    bind(stmt, movements.get(i));
+                    stmt.addBatch();
+                    if ((i + 1) % batchSize == 0 || i == movements.size() - 1) {
+                        stmt.executeBatch();
+                        conn.commit();
+                    }
+                }
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setAutoCommit(previousAutoCommit);
+            }
+        }
+        return movements.size();
+    }
+
+    private static void bind(PreparedStatement stmt, Movement movement) throws SQLException {
+        stmt.setString(1, movement.getFlight());
+        stmt.setObject(2, movement.getDate());
+        stmt.setString(3, movement.getFrom());
+        stmt.setString(4, movement.getTo());
+        stmt.setString(5, movement.getAcReg());
+        setTime(stmt, 6, movement.getStd());
+        setTime(stmt, 7, movement.getAtd());
+        setTime(stmt, 8, movement.getSta());
+        setTime(stmt, 9, movement.getAta());
+        setTime(stmt, 10, movement.getToff());
+        setTime(stmt, 11, movement.getTdwn());
+        setInt(stmt, 12, movement.getAtdOffset());
+        setInt(stmt, 13, movement.getAtaOffset());
+        setInt(stmt, 14, movement.getBlkOffset());
+        setInt(stmt, 15, movement.getTaxiToff());
+        setInt(stmt, 16, movement.getTaxiAta());
+        stmt.setString(17, movement.getDelayCodes());
+        stmt.setString(18, movement.getCnl());
+    }
+
+    private static void setTime(PreparedStatement stmt, int index, int minutes) throws SQLException {
+        if (minutes == Movement.NONE) {
+            stmt.setNull(index, Types.TIME);
+        } else {
+            stmt.setObject(index, Movement.toLocalTime(minutes));
+        }
+    }
+
+    private static void setInt(PreparedStatement stmt, int index, int value) throws SQLException {
+        if (value == Movement.NONE) {
+            stmt.setNull(index, Types.INTEGER);
+        } else {
+            stmt.setInt(index, value);
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.jaime;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Parser de la exportación "Movement Progress" de Tidy
+ * (<code>MovementProgressExport.csv</code>): campos separados por
+ * <code>;</code>, una cabecera y una fila por movimiento.
+ * <pre>
+ * Flight;Date;From;To;AC reg;STD;ATD;STA;ATA;TOFF;TDWN;ATD +/-;ATA +/-;BLK +/-;TAXI -&gt; TOFF;TAXI -&gt; ATA;Delaycodes;CNL;
+ * D82882;2025-03-25;HEL;AGP;SERTK;0455 ; 0450;0940 ; 0929;0509;0926;-5;-11;-6;+19;+3;;;
+ * </pre>
+ * Tidy separa STD/ATD y STA/ATA con <code>" ; "</code>, así que los espacios
+ * alrededor de cada campo se ignoran. Las horas vienen como
+ * <code>HHMM</code> y los desfases con signo opcional (<code>+19</code>,
+ * <code>-5</code>, <code>0</code>).
+ * <p>
+ * El fichero se proyecta en memoria (<code>FileChannel.map</code>) en trozos
+ * que empiezan y terminan en un salto de línea, y los trozos se parsean en
+ * paralelo en un {@link ForkJoinPool}. Las horas, desfases y la fecha se leen
+ * directamente de los bytes, sin crear cadenas intermedias; sólo los campos de
+ * texto se decodifican. El resultado mantiene el orden del fichero, así que si
+ * un movimiento aparece dos veces gana la última fila, como al cargarlo fila a
+ * fila.
+ *
+ * @author Jaime Villalba
+ */
+public final class MovementCsvParser {
+
+    // Flight, Date, From, To, AC reg; el resto puede faltar al final de la fila.
+    private static final int KEY_FIELDS = 5;
+    private static final int FIELDS = 18;
+    private static final int MIN_CHUNK_BYTES = 1 << 20;
+    private static final int MAX_CHUNK_BYTES = 64 << 20;
+
+    /**
+     * Movimientos de un fichero y filas que no se pudieron leer.
+     */
+    public static final class Result {
+
+        private final List<Movement> movements;
+        private final long skipped;
+
+        Result(List<Movement> movements, long skipped) {
+            this.movements = movements;
+            this.skipped = skipped;
+        }
+
+        /**
+         * @return movimientos en el orden del fichero
+         */
+        public List<Movement> getMovements() {
+            return movements;
+        }
+
+        /**
+         * @return filas descartadas por no tener vuelo o fecha válida
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+    }
+
+    private MovementCsvParser() {
+    }
+
+    /**
+     * Parsea el fichero completo (sin la primera línea, que es la cabecera).
+     *
+     * @param file exportación CSV de Tidy
+     * @param pool pool en el que se parsean los trozos
+     * @return movimientos leídos y filas descartadas
+     */
+    public static Result parse(Path file, ForkJoinPool pool) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = lineStart(channel, 1, size);
+            long chunkSize = Math.max(MIN_CHUNK_BYTES,
+                    Math.min(MAX_CHUNK_BYTES, (size - start) / (pool.getParallelism() * 4L) + 1));
+            List<Long> bounds = new ArrayList<>();
+            bounds.add(start);
+            for (long next = start + chunkSize; next < size; next += chunkSize) {
+                long bound = lineStart(channel, next, size);
+                if (bound > bounds.get(bounds.size() - 1) && bound < size) {
+                    bounds.add(bound);
+                }
+            }
+            bounds.add(size);
+            if (bounds.get(0) >= size) {
+                return new Result(new ArrayList<>(), 0);
+            }
+            LongAdder skipped = new LongAdder();
+            try {
+                List<Movement> movements = pool.invoke(new ChunkTask(channel, bounds, 0, bounds.size() - 1,
+                        skipped));
+                return new Result(movements, skipped.sum());
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+
+    // Primera posición en o después de 'from' que empieza una línea (la que sigue a un '\n').
+    private static long lineStart(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long position = from - 1;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Parsea los trozos [from, to) de <code>bounds</code>, dividiendo el rango
+     * por la mitad hasta quedarse con uno.
+     */
+    private static final class ChunkTask extends RecursiveTask<List<Movement>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final List<Long> bounds;
+        private final int from;
+        private final int to;
+        private final LongAdder skipped;
+
+        ChunkTask(FileChannel channel, List<Long> bounds, int from, int to, LongAdder skipped) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+            this.skipped = skipped;
+        }
+
+        @Override
+        protected List<Movement> compute() {
+            if (to - from == 1) {
+                try {
+                    long start = bounds.get(from);
+                    ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, bounds.get(to) - start);
+                    return new ChunkParser(chunk, skipped).parse();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+            int middle = (from + to) >>> 1;
+            ChunkTask left = new ChunkTask(channel, bounds, from, middle, skipped);
+            left.fork();
+            List<Movement> right = new ChunkTask(channel, bounds, middle, to, skipped).compute();
+            List<Movement> movements = left.join();
+            movements.addAll(right);
+            return movements;
+        }
+    }
+
+    /**
+     * Lee las filas de un trozo. Las posiciones de los campos se guardan en dos
+     * arrays que se reutilizan en cada fila.
+     */
+    private static final class ChunkParser {
+
+        private final ByteBuffer buffer;
+        private final LongAdder skipped;
+        private final int[] starts = new int[FIELDS];
+        private final int[] ends = new int[FIELDS];
+        private byte[] scratch = new byte[64];
+
+        ChunkParser(ByteBuffer buffer, LongAdder skipped) {
+            this.buffer = buffer;
+            this.skipped = skipped;
+        }
+
+        List<Movement> parse() {
+            List<Movement> movements = new ArrayList<>(buffer.limit() / 96 + 1);
+            int limit = buffer.limit();
+            int position = 0;
+            while (position < limit) {
+                int end = position;
+                while (end < limit && buffer.get(end) != '\n') {
+                    end++;
+                }
+                Movement movement = parseLine(position, end > position && buffer.get(end - 1) == '\r' ? end - 1 : end);
+                if (movement != null) {
+                    movements.add(movement);
+                }
+                position = end + 1;
+            }
+            return movements;
+        }
+
+        private Movement parseLine(int start, int end) {
+            int fields = split(start, end);
+            if (fields == 0) {
+                // Línea en blanco
+                return null;
+            }
+            LocalDate date = fields > 1 ? date(starts[1], ends[1]) : null;
+            if (fields < KEY_FIELDS || starts[0] == ends[0] || date == null) {
+                skipped.increment();
+                return null;
+            }
+            return new Movement(text(0), date, text(2), text(3), text(4),
+                    time(fields, 5), time(fields, 6), time(fields, 7), time(fields, 8), time(fields, 9),
+                    time(fields, 10), offset(fields, 11), offset(fields, 12), offset(fields, 13),
+                    offset(fields, 14), offset(fields, 15),
+                    fields > 16 ? text(16) : "", fields > 17 ? text(17) : "");
+        }
+
+        // Posiciones de los campos, sin los espacios de alrededor; devuelve 0 si la línea está vacía.
+        private int split(int start, int end) {
+            int fields = 0;
+            int fieldStart = start;
+            boolean blank = true;
+            for (int i = start; i <= end && fields < FIELDS; i++) {
+                if (i == end || buffer.get(i) == ';') {
+                    int s = fieldStart;
+                    int e = i;
+                    while (s < e && buffer.get(s) == ' ') {
+                        s++;
+                    }
+                    while (e > s && buffer.get(e - 1) == ' ') {
+                        e--;
+                    }
+                    starts[fields] = s;
+                    ends[fields] = e;
+                    blank &= s == e;
+                    fields++;
+                    fieldStart = i + 1;
+                }
+            }
+            return blank ? 0 : fields;
+        }
+
+        private String text(int field) {
+            int length = ends[field] - starts[field];
+            if (length == 0) {
+                return "";
+            }
+            if (length > scratch.length) {
+                scratch = new byte[length];
+            }
+            buffer.get(starts[field], scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        // HHMM -> minutos del día
+        private int time(int fields, int field) {
+            if (field >= fields || ends[field] - starts[field] != 4) {
+                return Movement.NONE;
+            }
+            int hours = digits(starts[field], 2);
+            int minutes = digits(starts[field] + 2, 2);
+            if (hours < 0 || minutes < 0 || hours > 23 || minutes > 59) {
+                return Movement.NONE;
+            }
+            return hours * 60 + minutes;
+        }
+
+        // [+-]dígitos -> minutos
+        private int offset(int fields, int field) {
+            if (field >= fields) {
+                return Movement.NONE;
+            }
+            int start = starts[field];
+            int end = ends[field];
+            boolean negative = false;
+            if (start < end && (buffer.get(start) == '+' || buffer.get(start) == '-')) {
+                negative = buffer.get(start) == '-';
+                start++;
+            }
+            if (start == end || end - start > 9) {
+                return Movement.NONE;
+            }
+            int value = digits(start, end - start);
+            if (value < 0) {
+                return Movement.NONE;
+            }
+            return negative ? -value : value;
+        }
+
+        // YYYY-MM-DD
+        private LocalDate date(int start, int end) {
+            if (end - start != 10 || buffer.get(start + 4) != '-' || buffer.get(start + 7) != '-') {
+                return null;
+            }
+            int year = digits(start, 4);
+            int month = digits(start + 5, 2);
+            int day = digits(start + 8, 2);
+            if (year < 0 || month < 0 || day < 0) {
+                return null;
+            }
+            try {
+                return LocalDate.of(year, month, day);
+            } catch (DateTimeException ex) {
+                return null;
+            }
+        }
+
+        // Valor de 'count' dígitos ASCII desde 'start', o -1 si alguno no lo es.
+        private int digits(int start, int count) {
+            int value = 0;
+            for (int i = start; i < start + count; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+    }
+}
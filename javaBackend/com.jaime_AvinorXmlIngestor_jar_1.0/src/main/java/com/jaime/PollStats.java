@@ -0,0 +1,100 @@
+package com.jaime;
+
+/**
+ * Contadores de una ejecución (poll) de un feed:
+ * <ul>
+ * <li><b>new</b>: vuelos que no estaban en la base de datos.</li>
+ * <li><b>changed</b>: vuelos conocidos cuyo contenido cambió desde el último
+ * poll.</li>
+ * <li><b>unchanged</b>: vuelos idénticos al último poll; no se escriben.</li>
+ * <li><b>skipped</b>: vuelos descartados sin escribir (sin uniqueID o repetidos
+ * dentro del mismo feed).</li>
+ * </ul>
+ * Sólo los nuevos y los cambiados llegan a MySQL. Si el servidor respondió 304
+ * Not Modified, todos los contadores quedan a cero y {@link #isNotModified()}
+ * es cierto.
+ *
+ * @author Jaime Villalba
+ */
+public class PollStats {
+
+    private int newFlights;
+    private int changed;
+    private int unchanged;
+    private int skipped;
+    private boolean notModified;
+    private boolean incremental;
+
+    public void countNew() {
+        newFlights++;
+    }
+
+    public void countChanged() {
+        changed++;
+    }
+
+    public void countUnchanged() {
+        unchanged++;
+    }
+
+    public void countSkipped() {
+        skipped++;
+    }
+
+    public void markNotModified() {
+        notModified = true;
+    }
+
+    public boolean isNotModified() {
+        return notModified;
+    }
+
+    /**
+     * @param incremental cierto si se pidieron sólo los cambios desde el
+     * último poll (<code>lastUpdate</code>)
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public int getNew() {
+        return newFlights;
+    }
+
+    public int getChanged() {
+        return changed;
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return vuelos que se enviaron a la base de datos
+     */
+    public int getWritten() {
+        return newFlights + changed;
+    }
+
+    public int getTotal() {
+        return newFlights + changed + unchanged + skipped;
+    }
+
+    @Override
+    public String toString() {
+        String mode = incremental ? "[incremental] " : "[completo] ";
+        if (notModified) {
+            return mode + "feed sin cambios (304 Not Modified)";
+        }
+        return mode + getTotal() + " vuelos en el feed: " + newFlights + " nuevos, " + changed + " cambiados, "
+                + unchanged + " sin cambios, " + skipped + " omitidos";
+    }
+}
@@ -0,0 +1,101 @@
+package com.jaime;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métricas del pool de conexiones, alimentadas por HikariCP a través de
+ * {@link MetricsTrackerFactory}.
+ * <p>
+ * Expone las conexiones activas, ociosas y los hilos en espera, además del
+ * tiempo de espera para obtener una conexión (total, máximo y número de
+ * timeouts). Sirve para dimensionar <code>DB_POOL_MAX_SIZE</code> bajo carga:
+ * si el tiempo de espera crece, faltan conexiones.
+ *
+ * @author Jaime Villalba
+ */
+public class PoolMetrics implements MetricsTrackerFactory {
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder timeouts = new LongAdder();
+    private volatile PoolStats poolStats;
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolStats = poolStats;
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquisitions.increment();
+                waitNanos.add(elapsedAcquiredNanos);
+                maxWaitNanos.accumulateAndGet(elapsedAcquiredNanos, Math::max);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        };
+    }
+
+    /**
+     * Publica estas métricas en el registro de la aplicación.
+     */
+    public void register(Metrics metrics) {
+        metrics.gauge("db_pool_active_connections", "Conexiones en uso", this::getActiveConnections);
+        metrics.gauge("db_pool_idle_connections", "Conexiones ociosas", this::getIdleConnections);
+        metrics.gauge("db_pool_pending_threads", "Hilos esperando una conexión", this::getPendingThreads);
+        metrics.counter("db_pool_acquisitions_total", "Conexiones obtenidas del pool", this::getAcquisitions);
+        metrics.counter("db_pool_wait_seconds_total", "Tiempo total de espera para obtener una conexión",
+                () -> waitNanos.sum() / 1e9);
+        metrics.gauge("db_pool_max_wait_seconds", "Espera máxima para obtener una conexión",
+                () -> maxWaitNanos.get() / 1e9);
+        metrics.counter("db_pool_timeouts_total", "Esperas que agotaron el tiempo", this::getTimeouts);
+    }
+
+    public int getActiveConnections() {
+        PoolStats stats = poolStats;
+        return stats != null ? stats.getActiveConnections() : 0;
+    }
+
+    public int getIdleConnections() {
+        PoolStats stats = poolStats;
+        return stats != null ? stats.getIdleConnections() : 0;
+    }
+
+    public int getPendingThreads() {
+        PoolStats stats = poolStats;
+        return stats != null ? stats.getPendingThreads() : 0;
+    }
+
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    public long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.sum());
+    }
+
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    @Override
+    public String toString() {
+        long count = getAcquisitions();
+        double avgWaitMillis = count > 0 ? waitNanos.sum() / 1_000_000.0 / count : 0;
+        return String.format("pool: %d activas, %d ociosas, %d en espera; espera media %.2f ms, máx %d ms, %d timeouts",
+                getActiveConnections(), getIdleConnections(), getPendingThreads(),
+                avgWaitMillis, getMaxWaitMillis(), getTimeouts());
+    }
+}
@@ -0,0 +1,344 @@
+package com.jaime;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Archivo local de las respuestas de los feeds, tal como llegaron, para
+ * reproducir un poll concreto o volver a ingerir un día entero con
+ * {@link SnapshotReplay}.
+ * <p>
+ * Cada respuesta con cuerpo (no los 304) se guarda comprimida en
+ * <pre>
+ * SNAPSHOT_DIR/2025-01-16/OSL-A/20250116T100003.120Z-full.xml.gz
+ * </pre>
+ * (día UTC, feed, instante del inicio del poll y si fue completo o
+ * incremental). El XML se copia mientras el parser lo lee, sin un segundo
+ * recorrido ni un buffer con la respuesta entera; se comprime con el nivel más
+ * rápido y se escribe con un nombre temporal que sólo se renombra al terminar,
+ * así que una reproducción nunca ve un fichero a medias. También se guardan
+ * las respuestas que fallan al parsear: son las que más interesa reproducir.
+ * <p>
+ * Un error de disco no afecta al poll: se registra un aviso y esa respuesta
+ * se queda sin grabar. Los días con más de
+ * {@link Config#SNAPSHOT_RETENTION_DAYS} de antigüedad se borran al empezar
+ * un día nuevo.
+ *
+ * @author Jaime Villalba
+ */
+public final class SnapshotArchive {
+
+    private static final Logger LOGGER = Logger.getLogger(SnapshotArchive.class.getName());
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss.SSSX")
+            .withZone(ZoneOffset.UTC);
+    private static final String SUFFIX = ".xml.gz";
+
+    /**
+     * Una respuesta grabada.
+     */
+    public static final class Snapshot {
+
+        private final Path path;
+        private final FeedDescriptor feed;
+        private final Instant time;
+        private final boolean full;
+
+        private Snapshot(Path path, FeedDescriptor feed, Instant time, boolean full) {
+            this.path = path;
+            this.feed = feed;
+            this.time = time;
+            this.full = full;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * @return el feed (aeropuerto y dirección), sin URL
+         */
+        public FeedDescriptor getFeed() {
+            return feed;
+        }
+
+        /**
+         * @return inicio del poll que la descargó
+         */
+        public Instant getTime() {
+            return time;
+        }
+
+        /**
+         * @return cierto si fue una descarga completa (sin
+         * <code>lastUpdate</code>)
+         */
+        public boolean isFull() {
+            return full;
+        }
+
+        /**
+         * @return el XML descomprimido; hay que cerrarlo
+         */
+        public InputStream open() throws IOException {
+            return new GZIPInputStream(Files.newInputStream(path), 64 * 1024);
+        }
+    }
+
+    private final Path root;
+    private final int retentionDays;
+    private volatile LocalDate lastPurge;
+
+    /**
+     * @param root directorio del archivo
+     * @param retentionDays días que se conservan; 0 los conserva todos
+     */
+    public SnapshotArchive(Path root, int retentionDays) {
+        this.root = root;
+        this.retentionDays = retentionDays;
+    }
+
+    /**
+     * @return el archivo de {@link Config#SNAPSHOT_DIR}, o <code>null</code>
+     * si la grabación está desactivada
+     */
+    public static SnapshotArchive fromConfig() {
+        if (Config.SNAPSHOT_DIR.isBlank()) {
+            return null;
+        }
+        return new SnapshotArchive(Path.of(Config.SNAPSHOT_DIR), Config.SNAPSHOT_RETENTION_DAYS);
+    }
+
+    /**
+     * Envuelve el cuerpo de una respuesta para que lo que se lea de él quede
+     * grabado. Al cerrar el stream devuelto se termina el fichero (y se cierra
+     * <code>body</code>).
+     *
+     * @param pollStart inicio del poll
+     * @param full cierto si es una descarga completa
+     * @param body XML descomprimido
+     * @return el stream que hay que leer en lugar de <code>body</code>
+     */
+    public InputStream record(FeedDescriptor feed, Instant pollStart, boolean full, InputStream body) {
+        LocalDate day = LocalDate.ofInstant(pollStart, ZoneOffset.UTC);
+        purge(day);
+        Path dir = root.resolve(day.toString()).resolve(feed.getName());
+        Path target = dir.resolve(FILE_TIME.format(pollStart) + (full ? "-full" : "-incr") + SUFFIX);
+        try {
+            Files.createDirectories(dir);
+            Path temp = dir.resolve(target.getFileName() + ".tmp");
+            OutputStream out = new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp), 8192) {
+                {
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+            }, 64 * 1024);
+            return new TeeInputStream(body, out, temp, target, feed);
+        } catch (IOException ex) {
+            LogEvent.log(LOGGER, Level.WARNING, "snapshot_error", ex, "feed", feed.getName());
+            return body;
+        }
+    }
+
+    // Borra los días caducados, una vez por día.
+    private void purge(LocalDate today) {
+        if (retentionDays <= 0 || today.equals(lastPurge)) {
+            return;
+        }
+        lastPurge = today;
+        LocalDate oldest = today.minusDays(retentionDays);
+        try (DirectoryStream<Path> days = Files.newDirectoryStream(root)) {
+            for (Path day : days) {
+                LocalDate date = parseDay(day);
+                if (date != null && date.isBefore(oldest)) {
+                    deleteTree(day);
+                    LogEvent.info(LOGGER, "snapshot_purge", "day", date.toString());
+                }
+            }
+        } catch (IOException ex) {
+            LogEvent.log(LOGGER, Level.WARNING, "snapshot_error", ex, "dir", root.toString());
+        }
+    }
+
+    private static LocalDate parseDay(Path dir) {
+        try {
+            return LocalDate.parse(dir.getFileName().toString());
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Busca las respuestas grabadas bajo un directorio: el archivo entero, un
+     * día o un feed de un día.
+     *
+     * @param dir directorio a recorrer
+     * @return las respuestas, por orden de instante (y de nombre de feed, a
+     * igual instante)
+     */
+    public static List<Snapshot> list(Path dir) throws IOException {
+        List<Snapshot> snapshots = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Snapshot snapshot = parse(path);
+                if (snapshot != null) {
+                    snapshots.add(snapshot);
+                }
+            }
+        }
+        snapshots.sort(Comparator.comparing(Snapshot::getTime)
+                .thenComparing(snapshot -> snapshot.getFeed().getName()));
+        return snapshots;
+    }
+
+    // .../OSL-A/20250116T100003.120Z-full.xml.gz
+    private static Snapshot parse(Path path) {
+        String name = path.getFileName().toString();
+        Path parent = path.getParent();
+        if (!name.endsWith(SUFFIX) || parent == null || !Files.isRegularFile(path)) {
+            return null;
+        }
+        String feedName = parent.getFileName().toString();
+        int dash = name.lastIndexOf('-');
+        int feedDash = feedName.lastIndexOf('-');
+        if (dash < 0 || feedDash < 0) {
+            return null;
+        }
+        try {
+            Instant time = FILE_TIME.parse(name.substring(0, dash), Instant::from);
+            boolean full = name.startsWith("full", dash + 1);
+            Direction direction = Direction.fromCode(feedName.substring(feedDash + 1));
+            return new Snapshot(path, new FeedDescriptor(feedName.substring(0, feedDash), direction, ""), time,
+                    full);
+        } catch (DateTimeParseException | IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    // Copia al fichero lo que lee el parser. Si el disco falla se deja de grabar, pero la lectura sigue.
+    private static final class TeeInputStream extends FilterInputStream {
+
+        private final OutputStream out;
+        private final Path temp;
+        private final Path target;
+        private final FeedDescriptor feed;
+        private boolean failed;
+        private boolean closed;
+
+        TeeInputStream(InputStream in, OutputStream out, Path temp, Path target, FeedDescriptor feed) {
+            super(in);
+            this.out = out;
+            this.temp = temp;
+            this.target = target;
+            this.feed = feed;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                copy(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                copy(buffer, offset, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Lo saltado también se graba: se lee en lugar de saltarlo.
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            int read = read(buffer, 0, buffer.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void copy(byte[] buffer, int offset, int length) {
+            if (failed) {
+                return;
+            }
+            try {
+                out.write(buffer, offset, length);
+            } catch (IOException ex) {
+                fail(ex);
+            }
+        }
+
+        private void fail(IOException ex) {
+            failed = true;
+            LogEvent.log(LOGGER, Level.WARNING, "snapshot_error", ex, "feed", feed.getName());
+            try {
+                out.close();
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // Ya se ha avisado del primer error
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                // El parser puede no haber leído lo que sigue al elemento raíz; se graba igualmente.
+                byte[] buffer = new byte[8192];
+                while (!failed && read(buffer, 0, buffer.length) > 0) {
+                    // copiado en read
+                }
+            } catch (IOException ex) {
+                // Respuesta cortada: se conserva lo recibido
+            } finally {
+                super.close();
+                if (!failed) {
+                    try {
+                        out.close();
+                        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                                StandardCopyOption.ATOMIC_MOVE);
+                    } catch (IOException ex) {
+                        fail(ex);
+                    }
+                }
+            }
+        }
+    }
+}
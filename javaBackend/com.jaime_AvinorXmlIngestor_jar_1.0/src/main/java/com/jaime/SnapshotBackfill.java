@@ -0,0 +1,539 @@
+package com.jaime;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Carga masiva de un archivo de {@link SnapshotArchive} (un día, un mes...) en
+ * <code>avinor_xml_*</code>, <code>dy_xml_*</code> y
+ * <code>gate_history_*</code>, sin pasar por los upserts fila a fila de
+ * {@link SnapshotReplay}.
+ * <pre>
+ * java -cp AvinorXmlIngestor-1.0.jar com.jaime.SnapshotBackfill snapshots/ [--feeds=OSL-A,OSL-D]
+ *     [--work-dir=/tmp/backfill] [--keep-files] [--insert] [--suspend-triggers]
+ * </pre>
+ * <ol>
+ * <li>Las respuestas se parsean en paralelo, un hilo por feed y cada feed en
+ * el orden en que se grabó. En memoria sólo queda la última versión de cada
+ * vuelo (con el instante en que cambió por última vez) y sus cambios de
+ * puerta.</li>
+ * <li>Por cada dirección se escriben dos ficheros separados por tabuladores,
+ * los vuelos ordenados por <code>unique_id</code> (el orden de la clave
+ * primaria) y los cambios de puerta por instante, y se cargan con
+ * <code>LOAD DATA LOCAL INFILE</code> en tablas temporales. Con
+ * <code>--insert</code> se cargan con INSERT multi-fila, para servidores con
+ * <code>local_infile</code> desactivado.</li>
+ * <li>Las tablas reales se actualizan con unas pocas sentencias
+ * <code>INSERT ... SELECT</code> en una transacción por dirección.
+ * <code>last_update</code> y <code>update_time</code> son los instantes de la
+ * grabación, y un vuelo que ya está en la tabla con un
+ * <code>last_update</code> posterior no se toca, así que cargar un mes
+ * antiguo no pisa datos más recientes.</li>
+ * </ol>
+ * Un vuelo visto por primera vez en el archivo genera una fila en el historial
+ * de puertas salvo que la tabla ya lo tenga con esa misma puerta, igual que en
+ * la ingesta en vivo, y los cambios que ya están en el historial con el mismo
+ * instante no se repiten, así que cargar dos veces el mismo archivo no añade
+ * filas. Con <code>--suspend-triggers</code> la sesión define
+ * <code>@ingestor_combined_merge</code> (requiere
+ * <code>db/combined_merge_triggers.sql</code>) y <code>combined_flights</code>
+ * y <code>fullyscraped_combined_flights</code> se actualizan también con una
+ * sentencia cada una, en lugar de con los triggers de cada fila.
+ * <p>
+ * A diferencia de {@link SnapshotReplay}, aquí no se ven los cambios
+ * intermedios de un vuelo salvo los de puerta: es la forma de reconstruir las
+ * tablas, no de medir la ingesta.
+ *
+ * @author Jaime Villalba
+ */
+public final class SnapshotBackfill {
+
+    private static final Logger LOGGER = Logger.getLogger(SnapshotBackfill.class.getName());
+
+    private static final String FLIGHTS_TABLE = "backfill_flights";
+    private static final String GATES_TABLE = "backfill_gates";
+    // Mismo orden que los parámetros de FlightBatchWriter.bindUpsert, más el instante del último cambio
+    private static final String FLIGHT_COLUMNS = "unique_id, flight_id, airline, dom_int, schedule_time, arr_dep, "
+            + "airport, check_in, gate, belt, status_code, status_time, dlayed, local_time, changed_epoch";
+    private static final String GATE_COLUMNS = "seq, unique_id, gate, changed_epoch, flight_id, dom_int, "
+            + "schedule_time, airport, first_seen";
+    // Columnas de avinor_xml_*/dy_xml_* que se actualizan (sin unique_id ni last_update)
+    private static final String[] UPDATED_COLUMNS = {"flight_id", "airline", "dom_int", "schedule_time", "arr_dep",
+        "airport", "check_in", "gate", "belt", "status_code", "status_time", "dlayed"};
+    private static final String NULL = "\\N";
+
+    /**
+     * Última versión de un vuelo en el archivo.
+     */
+    private static final class Version {
+
+        final AvinorFlight flight;
+        final long fingerprint;
+        final long changed;
+
+        Version(AvinorFlight flight, long fingerprint, long changed) {
+            this.flight = flight;
+            this.fingerprint = fingerprint;
+            this.changed = changed;
+        }
+    }
+
+    /**
+     * Fila del historial de puertas: la versión del vuelo con la puerta nueva.
+     */
+    private static final class GateChange {
+
+        final AvinorFlight flight;
+        final long time;
+        final boolean firstSeen;
+
+        GateChange(AvinorFlight flight, long time, boolean firstSeen) {
+            this.flight = flight;
+            this.time = time;
+            this.firstSeen = firstSeen;
+        }
+    }
+
+    /**
+     * Resultado de parsear las respuestas de un feed.
+     */
+    private static final class FeedState {
+
+        final Direction direction;
+        final Map<String, Version> flights = new HashMap<>();
+        final List<GateChange> gates = new ArrayList<>();
+        long parsed;
+        int errors;
+
+        FeedState(Direction direction) {
+            this.direction = direction;
+        }
+    }
+
+    private SnapshotBackfill() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        AsyncLogHandler.install();
+        if (args.length == 0 || args[0].startsWith("--")) {
+            throw new IllegalArgumentException("Uso: SnapshotBackfill <directorio> [--feeds=OSL-A,...] "
+                    + "[--work-dir=DIR] [--keep-files] [--insert] [--suspend-triggers]");
+        }
+        Path dir = Path.of(args[0]);
+        Set<String> feeds = new HashSet<>();
+        Path workDir = null;
+        boolean keepFiles = false;
+        boolean insert = false;
+        boolean suspendTriggers = false;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--feeds=")) {
+                for (String feed : args[i].substring("--feeds=".length()).split(",")) {
+                    feeds.add(feed.trim().toUpperCase());
+                }
+            } else if (args[i].startsWith("--work-dir=")) {
+                workDir = Path.of(args[i].substring("--work-dir=".length()));
+            } else if (args[i].equals("--keep-files")) {
+                keepFiles = true;
+            } else if (args[i].equals("--insert")) {
+                insert = true;
+            } else if (args[i].equals("--suspend-triggers")) {
+                suspendTriggers = true;
+            } else {
+                throw new IllegalArgumentException("Parámetro desconocido: " + args[i]);
+            }
+        }
+
+        // Respuestas de cada feed, en el orden de la grabación
+        Map<String, List<SnapshotArchive.Snapshot>> byFeed = new LinkedHashMap<>();
+        int snapshots = 0;
+        for (SnapshotArchive.Snapshot snapshot : SnapshotArchive.list(dir)) {
+            if (feeds.isEmpty() || feeds.contains(snapshot.getFeed().getName())) {
+                byFeed.computeIfAbsent(snapshot.getFeed().getName(), name -> new ArrayList<>()).add(snapshot);
+                snapshots++;
+            }
+        }
+        if (byFeed.isEmpty()) {
+            LogEvent.log(LOGGER, Level.WARNING, "backfill_empty", "dir", dir.toString());
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<FeedState> states = parse(byFeed);
+        Map<Direction, List<FeedState>> byDirection = new EnumMap<>(Direction.class);
+        long parsed = 0;
+        int errors = 0;
+        for (FeedState state : states) {
+            byDirection.computeIfAbsent(state.direction, direction -> new ArrayList<>()).add(state);
+            parsed += state.parsed;
+            errors += state.errors;
+        }
+        LogEvent.info(LOGGER, "backfill_parsed", "feeds", byFeed.size(), "snapshots", snapshots, "flights", parsed,
+                "errors", errors, "parse_s", seconds(System.nanoTime() - start));
+
+        boolean tempDir = workDir == null;
+        if (tempDir) {
+            workDir = Files.createTempDirectory("backfill-");
+        } else {
+            Files.createDirectories(workDir);
+        }
+        workDir = workDir.toAbsolutePath();
+        // Conexión propia y no del pool: LOAD DATA LOCAL sólo se permite para ficheros de workDir.
+        String url = Config.DB_URL + (insert ? "" : "&allowLoadLocalInfileInPath=" + workDir);
+        try (Connection conn = DriverManager.getConnection(url, Config.DB_USER, Config.DB_PASSWORD)) {
+            if (suspendTriggers) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("SET @ingestor_combined_merge = 1");
+                }
+            }
+            for (Map.Entry<Direction, List<FeedState>> entry : byDirection.entrySet()) {
+                load(conn, entry.getKey(), entry.getValue(), workDir, insert, suspendTriggers);
+            }
+        } finally {
+            if (!keepFiles) {
+                for (Direction direction : byDirection.keySet()) {
+                    Files.deleteIfExists(flightsFile(workDir, direction));
+                    Files.deleteIfExists(gatesFile(workDir, direction));
+                }
+                if (tempDir) {
+                    Files.deleteIfExists(workDir);
+                }
+            }
+        }
+        LogEvent.info(LOGGER, "backfill", "snapshots", snapshots, "flights", parsed, "errors", errors,
+                "total_s", seconds(System.nanoTime() - start));
+    }
+
+    // Un hilo por feed (hasta el número de procesadores); cada feed se procesa en orden.
+    private static List<FeedState> parse(Map<String, List<SnapshotArchive.Snapshot>> byFeed) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(byFeed.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<FeedState>> futures = new ArrayList<>();
+            for (List<SnapshotArchive.Snapshot> snapshots : byFeed.values()) {
+                futures.add(executor.submit(() -> parseFeed(snapshots)));
+            }
+            List<FeedState> states = new ArrayList<>();
+            for (Future<FeedState> future : futures) {
+                states.add(future.get());
+            }
+            return states;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static FeedState parseFeed(List<SnapshotArchive.Snapshot> snapshots) {
+        FeedState state = new FeedState(snapshots.get(0).getFeed().getDirection());
+        for (SnapshotArchive.Snapshot snapshot : snapshots) {
+            long time = snapshot.getTime().getEpochSecond();
+            Set<String> seen = new HashSet<>();
+            try (InputStream xml = snapshot.open()) {
+                state.parsed += AvinorXmlParser.parse(xml, flight -> {
+                    // Mismo filtro que FeedIngestor: sin unique_id o repetido en la misma respuesta se ignora.
+                    String uniqueId = flight.getUniqueId();
+                    if ("N/A".equals(uniqueId) || !seen.add(uniqueId)) {
+                        return;
+                    }
+                    Version previous = state.flights.get(uniqueId);
+                    long fingerprint = flight.fingerprint();
+                    if (previous == null || previous.fingerprint != fingerprint) {
+                        state.flights.put(uniqueId, new Version(flight, fingerprint, time));
+                    }
+                    if (previous == null || !previous.flight.getGate().equals(flight.getGate())) {
+                        state.gates.add(new GateChange(flight, time, previous == null));
+                    }
+                });
+            } catch (Exception ex) {
+                // Los vuelos leídos antes del error se conservan; el resto de la respuesta se pierde.
+                state.errors++;
+                LogEvent.log(LOGGER, Level.WARNING, "backfill_error", ex, "file", snapshot.getPath().toString());
+            }
+        }
+        return state;
+    }
+
+    private static void load(Connection conn, Direction direction, List<FeedState> states, Path workDir,
+            boolean insert, boolean suspendTriggers) throws SQLException, IOException {
+        long start = System.nanoTime();
+        // Si un vuelo aparece en varios feeds de la misma dirección, gana su último cambio.
+        Map<String, Version> latest = new HashMap<>();
+        List<GateChange> gates = new ArrayList<>();
+        for (FeedState state : states) {
+            for (Version version : state.flights.values()) {
+                latest.merge(version.flight.getUniqueId(), version,
+                        (current, other) -> other.changed > current.changed ? other : current);
+            }
+            gates.addAll(state.gates);
+        }
+        List<Version> flights = new ArrayList<>(latest.values());
+        flights.sort(Comparator.comparing(version -> version.flight.getUniqueId()));
+        gates.sort(Comparator.comparingLong(change -> change.time));
+
+        try (Statement stmt = conn.createStatement()) {
+            createStaging(stmt);
+            if (insert) {
+                insertStaging(conn, flights, gates);
+            } else {
+                Path flightsFile = flightsFile(workDir, direction);
+                Path gatesFile = gatesFile(workDir, direction);
+                writeFlights(flightsFile, flights);
+                writeGates(gatesFile, gates);
+                stmt.execute(loadQuery(flightsFile, FLIGHTS_TABLE, FLIGHT_COLUMNS));
+                stmt.execute(loadQuery(gatesFile, GATES_TABLE, GATE_COLUMNS));
+            }
+        }
+        long loaded = System.nanoTime();
+
+        int gateRows;
+        int dyRows;
+        int combined = 0;
+        int fullyScraped = 0;
+        boolean previousAutoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            // Antes del upsert: un vuelo nuevo en el archivo que ya estaba en la tabla con esa puerta no es un cambio.
+            stmt.executeUpdate("DELETE FROM " + GATES_TABLE + " WHERE first_seen = 1 AND EXISTS (SELECT 1 FROM "
+                    + direction.getTable() + " t WHERE t.unique_id = " + GATES_TABLE + ".unique_id AND t.gate = "
+                    + GATES_TABLE + ".gate)");
+            // Cambios ya cargados por una ejecución anterior sobre el mismo archivo
+            stmt.executeUpdate("DELETE FROM " + GATES_TABLE + " WHERE EXISTS (SELECT 1 FROM "
+                    + direction.getGateHistoryTable() + " h WHERE h.unique_id = " + GATES_TABLE + ".unique_id"
+                    + " AND h.gate = " + GATES_TABLE + ".gate AND h.update_time = FROM_UNIXTIME("
+                    + GATES_TABLE + ".changed_epoch))");
+            stmt.executeUpdate(mergeQuery(direction.getTable(), direction.getTimeColumn(), false));
+            dyRows = stmt.executeUpdate(mergeQuery(direction.getDyTable(), direction.getTimeColumn(), true));
+            // El historial va después de la tabla principal, por la clave foránea.
+            gateRows = stmt.executeUpdate("INSERT INTO " + direction.getGateHistoryTable()
+                    + " (unique_id, gate, update_time, flight_id, dom_int, schedule_time, airport)"
+                    + " SELECT unique_id, gate, FROM_UNIXTIME(changed_epoch), flight_id, dom_int, schedule_time,"
+                    + " airport FROM " + GATES_TABLE + " ORDER BY seq");
+            if (suspendTriggers && direction.getCombinedTable() != null) {
+                combined = stmt.executeUpdate(combinedQuery(direction));
+                fullyScraped = stmt.executeUpdate(CombinedFlightMerger.fullyScrapedQuery(
+                        direction.getCombinedTable(), "SELECT unique_id FROM " + FLIGHTS_TABLE));
+            }
+            conn.commit();
+        } catch (SQLException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            conn.setAutoCommit(previousAutoCommit);
+        }
+        LogEvent.info(LOGGER, "backfill_loaded", "direction", direction.getCode(), "mode", insert ? "insert" : "file",
+                "flights", flights.size(), "dy_rows", dyRows, "gate_changes", gateRows, "combined", combined,
+                "fully_scraped", fullyScraped, "stage_s", seconds(loaded - start),
+                "merge_s", seconds(System.nanoTime() - loaded));
+    }
+
+    private static void createStaging(Statement stmt) throws SQLException {
+        stmt.execute("DROP TEMPORARY TABLE IF EXISTS " + FLIGHTS_TABLE);
+        stmt.execute("DROP TEMPORARY TABLE IF EXISTS " + GATES_TABLE);
+        stmt.execute("CREATE TEMPORARY TABLE " + FLIGHTS_TABLE + " ("
+                + " unique_id VARCHAR(12) NOT NULL PRIMARY KEY, flight_id VARCHAR(20), airline VARCHAR(10),"
+                + " dom_int VARCHAR(5), schedule_time DATETIME NOT NULL, arr_dep VARCHAR(5), airport VARCHAR(10),"
+                + " check_in VARCHAR(50), gate VARCHAR(10), belt VARCHAR(5), status_code VARCHAR(5),"
+                + " status_time DATETIME NULL, dlayed VARCHAR(5), local_time TIME NULL,"
+                + " changed_epoch BIGINT NOT NULL)");
+        stmt.execute("CREATE TEMPORARY TABLE " + GATES_TABLE + " ("
+                + " seq INT NOT NULL PRIMARY KEY, unique_id VARCHAR(12) NOT NULL, gate VARCHAR(10),"
+                + " changed_epoch BIGINT NOT NULL, flight_id VARCHAR(20), dom_int VARCHAR(5),"
+                + " schedule_time VARCHAR(25), airport VARCHAR(10), first_seen TINYINT NOT NULL)");
+    }
+
+    // Con rewriteBatchedStatements (ver Config#DB_URL) cada lote es un INSERT multi-fila.
+    private static void insertStaging(Connection conn, List<Version> flights, List<GateChange> gates)
+            throws SQLException {
+        int batchSize = Math.max(1, Config.DB_BATCH_SIZE);
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO " + FLIGHTS_TABLE + " (" + FLIGHT_COLUMNS
+                + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < flights.size(); i++) {
+                Version version = flights.get(i);
+                FlightBatchWriter.bindUpsert(stmt, version.flight);
+                stmt.setLong(15, version.changed);
+                stmt.addBatch();
+                if ((i + 1) % batchSize == 0 || i == flights.size() - 1) {
+                    stmt.executeBatch();
+                }
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO " + GATES_TABLE + " (" + GATE_COLUMNS
+                + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < gates.size(); i++) {
+                GateChange change = gates.get(i);
+                stmt.setInt(1, i);
+                stmt.setString(2, change.flight.getUniqueId());
+                stmt.setString(3, change.flight.getGate());
+                stmt.setLong(4, change.time);
+                stmt.setString(5, change.flight.getFlightId());
+                stmt.setString(6, change.flight.getDomInt());
+                stmt.setString(7, AvinorTime.format(change.flight.getScheduleEpoch()));
+                stmt.setString(8, change.flight.getAirport());
+                stmt.setInt(9, change.firstSeen ? 1 : 0);
+                stmt.addBatch();
+                if ((i + 1) % batchSize == 0 || i == gates.size() - 1) {
+                    stmt.executeBatch();
+                }
+            }
+        }
+    }
+
+    private static Path flightsFile(Path workDir, Direction direction) {
+        return workDir.resolve("flights-" + direction.getCode() + ".tsv");
+    }
+
+    private static Path gatesFile(Path workDir, Direction direction) {
+        return workDir.resolve("gates-" + direction.getCode() + ".tsv");
+    }
+
+    // Mismas conversiones que FlightBatchWriter.bindUpsert, como texto para LOAD DATA.
+    private static void writeFlights(Path file, List<Version> flights) throws IOException {
+        try (Writer out = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), 1 << 16)) {
+            for (Version version : flights) {
+                AvinorFlight flight = version.flight;
+                LocalTime localTime = flight.getLocalTime();
+                field(out, flight.getUniqueId(), false);
+                field(out, flight.getFlightId(), false);
+                field(out, flight.getAirline(), false);
+                field(out, flight.getDomInt(), false);
+                // schedule_time es NOT NULL: sin hora programada se guarda el valor por defecto de la columna.
+                long schedule = flight.getScheduleEpoch();
+                field(out, AvinorTime.format(schedule == AvinorTime.NONE ? 0 : schedule), false);
+                field(out, flight.getArrDep(), false);
+                field(out, flight.getAirport(), false);
+                field(out, flight.getCheckIn(), false);
+                field(out, flight.getGate(), false);
+                field(out, flight.getBelt(), false);
+                field(out, flight.getStatusCode(), false);
+                long status = flight.getStatusEpoch();
+                field(out, status == AvinorTime.NONE ? null : AvinorTime.format(status), false);
+                field(out, flight.isDelayed() ? "Y" : "N/A", false);
+                field(out, localTime == null ? null : DateTimeFormatter.ISO_LOCAL_TIME.format(localTime), false);
+                field(out, Long.toString(version.changed), true);
+            }
+        }
+    }
+
+    private static void writeGates(Path file, List<GateChange> gates) throws IOException {
+        try (Writer out = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), 1 << 16)) {
+            for (int i = 0; i < gates.size(); i++) {
+                GateChange change = gates.get(i);
+                field(out, Integer.toString(i), false);
+                field(out, change.flight.getUniqueId(), false);
+                field(out, change.flight.getGate(), false);
+                field(out, Long.toString(change.time), false);
+                field(out, change.flight.getFlightId(), false);
+                field(out, change.flight.getDomInt(), false);
+                field(out, AvinorTime.format(change.flight.getScheduleEpoch()), false);
+                field(out, change.flight.getAirport(), false);
+                field(out, change.firstSeen ? "1" : "0", true);
+            }
+        }
+    }
+
+    // Formato por defecto de LOAD DATA: tabuladores, \n y barra invertida como escape; \N es NULL.
+    private static void field(Writer out, String value, boolean last) throws IOException {
+        if (value == null) {
+            out.write(NULL);
+        } else {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '\t':
+                        out.write("\\t");
+                        break;
+                    case '\n':
+                        out.write("\\n");
+                        break;
+                    case '\r':
+                        out.write("\\r");
+                        break;
+                    case '\\':
+                        out.write("\\\\");
+                        break;
+                    default:
+                        out.write(c);
+                }
+            }
+        }
+        out.write(last ? '\n' : '\t');
+    }
+
+    private static String loadQuery(Path file, String table, String columns) {
+        String path = file.toString().replace('\\', '/').replace("'", "\\'");
+        return "LOAD DATA LOCAL INFILE '" + path + "' INTO TABLE " + table
+                + " CHARACTER SET utf8mb4 (" + columns + ")";
+    }
+
+    /**
+     * Upsert desde la tabla temporal. Cada columna sólo se sobrescribe si la
+     * fila guardada no es más reciente que la del archivo; por eso
+     * <code>last_update</code> se asigna la última, cuando las demás ya se
+     * han comparado con su valor anterior.
+     */
+    private static String mergeQuery(String table, String timeColumn, boolean dyOnly) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (")
+                .append(String.join(", ", UPDATED_COLUMNS)).append(", unique_id, ").append(timeColumn)
+                .append(", last_update) SELECT ").append(String.join(", ", UPDATED_COLUMNS))
+                .append(", unique_id, local_time, FROM_UNIXTIME(changed_epoch) FROM ").append(FLIGHTS_TABLE);
+        if (dyOnly) {
+            sql.append(" WHERE airline IN ('DY', 'D8')");
+        }
+        sql.append(" ORDER BY unique_id ON DUPLICATE KEY UPDATE ");
+        String newer = table + ".last_update <= VALUES(last_update)";
+        List<String> columns = new ArrayList<>(List.of(UPDATED_COLUMNS));
+        columns.add(timeColumn);
+        for (String column : columns) {
+            sql.append(column).append(" = CASE WHEN ").append(newer).append(" THEN VALUES(").append(column)
+                    .append(") ELSE ").append(table).append('.').append(column).append(" END, ");
+        }
+        sql.append("last_update = GREATEST(").append(table).append(".last_update, VALUES(last_update))");
+        return sql.toString();
+    }
+
+    // Lo que harían los triggers de dy_xml_arrivals con las filas DY/D8 que acaban de cargarse; al actualizar se
+    // usan las mismas columnas que ellos y que CombinedFlightMerger (flight_id no se toca).
+    private static String combinedQuery(Direction direction) {
+        String timeColumn = direction.getTimeColumn();
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(direction.getCombinedTable()).append(" (")
+                .append(String.join(", ", UPDATED_COLUMNS)).append(", unique_id, ").append(timeColumn)
+                .append(", last_update) SELECT ");
+        for (String column : UPDATED_COLUMNS) {
+            sql.append("d.").append(column).append(", ");
+        }
+        sql.append("d.unique_id, d.").append(timeColumn).append(", d.last_update FROM ")
+                .append(direction.getDyTable()).append(" d JOIN ").append(FLIGHTS_TABLE)
+                .append(" s ON s.unique_id = d.unique_id ON DUPLICATE KEY UPDATE ")
+                .append(CombinedFlightMerger.updateClause());
+        return sql.toString();
+    }
+
+    private static double seconds(long nanos) {
+        return Math.round(nanos / 1e7) / 100.0;
+    }
+}
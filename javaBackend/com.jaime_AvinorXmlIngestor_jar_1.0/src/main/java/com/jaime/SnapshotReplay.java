@@ -0,0 +1,137 @@
+package com.jaime;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Vuelve a ingerir respuestas grabadas por {@link SnapshotArchive}, por el
+ * mismo camino que los polls en vivo: parseo, comparación con la
+ * {@link FlightStateCache} y escritura con el {@link FlightWriteService}, contra
+ * la base de datos del <code>.env</code>.
+ * <pre>
+ * java -cp AvinorXmlIngestor-1.0.jar com.jaime.SnapshotReplay snapshots/2025-01-16 [--speed=60] [--feeds=OSL-A,OSL-D]
+ * </pre>
+ * Las respuestas se procesan de una en una en el orden en que se grabaron
+ * (por instante y, a igual instante, por feed), así que dos reproducciones
+ * del mismo directorio sobre la misma base de datos dejan el mismo estado.
+ * Sin <code>--speed</code> (o con 0) van tan rápido como lo permitan el
+ * parseo y la escritura, que es lo que sirve para medir el techo de la ingesta
+ * con tráfico real o reconstruir las tablas tras un cambio de esquema;
+ * <code>--speed=N</code> respeta los intervalos grabados divididos por N.
+ * <p>
+ * Las horas que calcula MySQL (<code>NOW()</code> en el historial de puertas y
+ * en los triggers) son las de la reproducción, no las de la grabación. A toda
+ * velocidad la cola de escritura agrupa varias versiones de un mismo vuelo,
+ * así que el estado final es el mismo pero el historial de puertas puede
+ * tener menos cambios intermedios que en vivo.
+ *
+ * @author Jaime Villalba
+ */
+public final class SnapshotReplay {
+
+    private static final Logger LOGGER = Logger.getLogger(SnapshotReplay.class.getName());
+
+    private SnapshotReplay() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        AsyncLogHandler.install();
+        if (args.length == 0 || args[0].startsWith("--")) {
+            throw new IllegalArgumentException("Uso: SnapshotReplay <directorio> [--speed=N] [--feeds=OSL-A,...]");
+        }
+        Path dir = Path.of(args[0]);
+        double speed = 0;
+        Set<String> feeds = new HashSet<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--speed=")) {
+                speed = Double.parseDouble(args[i].substring("--speed=".length()));
+            } else if (args[i].startsWith("--feeds=")) {
+                for (String feed : args[i].substring("--feeds=".length()).split(",")) {
+                    feeds.add(feed.trim().toUpperCase());
+                }
+            } else {
+                throw new IllegalArgumentException("Parámetro desconocido: " + args[i]);
+            }
+        }
+
+        List<SnapshotArchive.Snapshot> snapshots = new ArrayList<>();
+        for (SnapshotArchive.Snapshot snapshot : SnapshotArchive.list(dir)) {
+            if (feeds.isEmpty() || feeds.contains(snapshot.getFeed().getName())) {
+                snapshots.add(snapshot);
+            }
+        }
+        if (snapshots.isEmpty()) {
+            LogEvent.log(LOGGER, Level.WARNING, "replay_empty", "dir", dir.toString());
+            return;
+        }
+        try (IngestionRuntime runtime = IngestionRuntime.startIdle()) {
+            replay(runtime, snapshots, speed);
+        }
+    }
+
+    private static void replay(IngestionRuntime runtime, List<SnapshotArchive.Snapshot> snapshots, double speed)
+            throws InterruptedException {
+        Map<String, FeedIngestor> ingestors = new HashMap<>();
+        List<CompletableFuture<Integer>> writes = new ArrayList<>(snapshots.size());
+        long flights = 0;
+        int errors = 0;
+        long firstRecorded = snapshots.get(0).getTime().toEpochMilli();
+        long start = System.nanoTime();
+        LogEvent.info(LOGGER, "replay_start", "snapshots", snapshots.size(),
+                "from", snapshots.get(0).getTime().toString(),
+                "to", snapshots.get(snapshots.size() - 1).getTime().toString(), "speed", speed);
+
+        for (SnapshotArchive.Snapshot snapshot : snapshots) {
+            if (speed > 0) {
+                // Mismo intervalo que en la grabación, dividido por la velocidad.
+                long due = start + (long) ((snapshot.getTime().toEpochMilli() - firstRecorded) * 1_000_000L / speed);
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+            }
+            FeedIngestor ingestor = ingestors.computeIfAbsent(snapshot.getFeed().getName(),
+                    name -> runtime.newIngestor(snapshot.getFeed(), null));
+            PollStats stats = new PollStats();
+            try (InputStream xml = snapshot.open()) {
+                writes.add(ingestor.replay(xml, snapshot.getTime(), snapshot.isFull(), stats));
+                flights += stats.getTotal();
+            } catch (Exception ex) {
+                // Una respuesta cortada o corrupta no detiene la reproducción.
+                errors++;
+                LogEvent.log(LOGGER, Level.WARNING, "replay_error", ex, "file", snapshot.getPath().toString());
+            }
+        }
+        long parsedNanos = System.nanoTime() - start;
+
+        // Se espera a que se escriba todo antes de medir y cerrar.
+        long written = 0;
+        for (CompletableFuture<Integer> write : writes) {
+            try {
+                written += write.join();
+            } catch (RuntimeException ex) {
+                errors++;
+            }
+        }
+        long totalNanos = System.nanoTime() - start;
+        double seconds = Math.max(1e-3, totalNanos / 1e9);
+        Duration recorded = Duration.between(snapshots.get(0).getTime(),
+                snapshots.get(snapshots.size() - 1).getTime());
+        LogEvent.info(LOGGER, "replay", "snapshots", snapshots.size(), "flights", flights, "written", written,
+                "errors", errors, "parse_s", Math.round(parsedNanos / 1e7) / 100.0,
+                "total_s", Math.round(seconds * 100) / 100.0,
+                "flights_per_s", Math.round(flights / seconds), "written_per_s", Math.round(written / seconds),
+                "recorded_span_s", recorded.getSeconds());
+    }
+}
@@ -0,0 +1,65 @@
+package com.jaime;
+
+import java.util.logging.Logger;
+
+/**
+ * Resumen periódico del rendimiento de la ingesta, calculado a partir de las
+ * {@link Metrics}: vuelos parseados y escritos por segundo, polls, bytes
+ * recibidos y lotes desde el resumen anterior, además de la cola de escritura.
+ * <p>
+ * Contra {@link FeedSimulator} con muchos vuelos y tasas de cambio altas, el
+ * máximo sostenido de <code>written_per_s</code> mientras
+ * <code>queue</code> no crece es el techo de vuelos por segundo de la ingesta.
+ * Se programa cada {@link Config#THROUGHPUT_REPORT_SECONDS} en el scheduler
+ * de {@link IngestionRuntime}.
+ *
+ * @author Jaime Villalba
+ */
+final class ThroughputReport implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(ThroughputReport.class.getName());
+
+    private final Metrics metrics;
+    private long lastNanos = System.nanoTime();
+    private double lastParsed;
+    private double lastWritten;
+    private double lastPolls;
+    private double lastErrors;
+    private double lastBytes;
+    private double lastBatches;
+
+    ThroughputReport(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void run() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-3, (now - lastNanos) / 1e9);
+        double parsed = metrics.sum("ingest_flights_total");
+        double written = metrics.sum("ingest_db_flights_written_total");
+        double polls = metrics.sum("ingest_polls_total");
+        double errors = metrics.sum("ingest_poll_errors_total") + metrics.sum("ingest_db_batch_errors_total");
+        double bytes = metrics.sum("ingest_fetch_bytes_total");
+        double batches = metrics.sum("ingest_db_batch_seconds");
+        LogEvent.info(LOGGER, "throughput",
+                "parsed_per_s", Math.round((parsed - lastParsed) / seconds),
+                "written_per_s", Math.round((written - lastWritten) / seconds),
+                "polls_per_s", round1((polls - lastPolls) / seconds),
+                "batches_per_s", round1((batches - lastBatches) / seconds),
+                "kb_per_s", Math.round((bytes - lastBytes) / seconds / 1024),
+                "errors", Math.round(errors - lastErrors),
+                "queue", Math.round(metrics.sum("ingest_write_queue_pending")));
+        lastNanos = now;
+        lastParsed = parsed;
+        lastWritten = written;
+        lastPolls = polls;
+        lastErrors = errors;
+        lastBytes = bytes;
+        lastBatches = batches;
+    }
+
+    private static double round1(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+}
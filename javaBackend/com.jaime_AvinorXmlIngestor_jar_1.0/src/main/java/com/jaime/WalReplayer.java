@@ -0,0 +1,147 @@
+package com.jaime;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Aplica el {@link WriteAheadLog} en MySQL, en orden, a través de la
+ * {@link WriteBehindQueue} y los escritores del {@link FlightWriteService}.
+ * <p>
+ * Toma hasta <code>batchSize</code> registros del log, los encola y espera a
+ * que se confirmen, con sus cambios de puerta en la misma transacción, antes
+ * de avanzar el checkpoint. Un mismo vuelo no se repite
+ * dentro de un lote: así la cola no fusiona sus versiones y cada cambio de
+ * puerta llega a <code>gate_history_*</code>. Si la escritura falla (MySQL
+ * caído o en mantenimiento), reintenta el mismo lote con una espera que crece
+ * de 1 a 30 segundos, y entretanto compacta el log. Volver a aplicar un lote
+ * que llegó a confirmarse en parte no cambia nada: los upserts son
+ * idempotentes y la caché de estado evita repetir cambios de puerta.
+ *
+ * @author Jaime Villalba
+ */
+final class WalReplayer implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(WalReplayer.class.getName());
+    private static final long MIN_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private final WriteAheadLog wal;
+    private final WriteBehindQueue queue;
+    private final int batchSize;
+    private final int compactSegments;
+    private final Metrics.Counter replayed;
+    private final Metrics.Counter retries;
+
+    /**
+     * @param batchSize registros por lote
+     * @param compactSegments segmentos cerrados sin aplicar a partir de los
+     * cuales se compacta el log
+     */
+    WalReplayer(WriteAheadLog wal, WriteBehindQueue queue, int batchSize, int compactSegments) {
+        this.wal = wal;
+        this.queue = queue;
+        this.batchSize = Math.max(1, batchSize);
+        this.compactSegments = compactSegments;
+        Metrics metrics = Metrics.registry();
+        replayed = metrics.counter("ingest_wal_replayed_total", "Vuelos del WAL aplicados en MySQL");
+        retries = metrics.counter("ingest_wal_retries_total", "Lotes del WAL que hubo que reintentar");
+    }
+
+    /**
+     * Aplica el log hasta que se interrumpe el hilo; entonces cierra la cola y
+     * el log. Lo que quede sin aplicar se aplica en el siguiente arranque.
+     */
+    @Override
+    public void run() {
+        WriteAheadLog.Cursor cursor = wal.cursor(wal.getApplied());
+        List<WriteAheadLog.Record> pending = new ArrayList<>();
+        long backoff = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                compact();
+                if (pending.size() < batchSize) {
+                    cursor.next(pending, batchSize - pending.size());
+                }
+                if (pending.isEmpty()) {
+                    wal.awaitRecords(cursor.getLast(), 1, TimeUnit.SECONDS);
+                    continue;
+                }
+                int count = batch(pending);
+                try {
+                    write(pending.subList(0, count));
+                } catch (ExecutionException ex) {
+                    // El escritor ya registró el error; el lote sigue en el log y se reintenta.
+                    retries.inc();
+                    backoff = Math.min(Math.max(MIN_BACKOFF_MS, backoff * 2), MAX_BACKOFF_MS);
+                    LogEvent.log(LOGGER, Level.WARNING, "wal_retry", "flights", count, "lag", wal.getLag(),
+                            "retry_ms", backoff);
+                    TimeUnit.MILLISECONDS.sleep(backoff);
+                    continue;
+                }
+                if (backoff > 0) {
+                    LogEvent.info(LOGGER, "wal_resumed", "lag", wal.getLag());
+                    backoff = 0;
+                }
+                replayed.add(count);
+                try {
+                    wal.markApplied(pending.get(count - 1).getSeq());
+                } catch (IOException ex) {
+                    LogEvent.log(LOGGER, Level.SEVERE, "wal_error", ex, "op", "checkpoint");
+                }
+                pending.subList(0, count).clear();
+            }
+        } catch (InterruptedException ex) {
+            // Parada de la ingesta
+            Thread.currentThread().interrupt();
+        } catch (IllegalStateException ex) {
+            // La cola se cerró mientras se encolaba un lote
+        } finally {
+            queue.close();
+            wal.close();
+        }
+    }
+
+    // Registros iniciales de pending que forman un lote: hasta batchSize, sin repetir vuelo.
+    private int batch(List<WriteAheadLog.Record> pending) {
+        Set<String> ids = new HashSet<>();
+        int count = 0;
+        for (WriteAheadLog.Record record : pending) {
+            if (count == batchSize || !ids.add(record.getDirection().getCode() + record.getFlight().getUniqueId())) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private void write(List<WriteAheadLog.Record> records) throws InterruptedException, ExecutionException {
+        Map<Direction, List<AvinorFlight>> byDirection = new EnumMap<>(Direction.class);
+        for (WriteAheadLog.Record record : records) {
+            byDirection.computeIfAbsent(record.getDirection(), direction -> new ArrayList<>())
+                    .add(record.getFlight());
+        }
+        List<CompletableFuture<Integer>> written = new ArrayList<>();
+        for (Map.Entry<Direction, List<AvinorFlight>> entry : byDirection.entrySet()) {
+            written.add(queue.offer(entry.getKey(), entry.getValue()));
+        }
+        CompletableFuture.allOf(written.toArray(new CompletableFuture<?>[0])).get();
+    }
+
+    private void compact() {
+        try {
+            wal.compact(compactSegments);
+        } catch (IOException ex) {
+            LogEvent.log(LOGGER, Level.SEVERE, "wal_error", ex, "op", "compact");
+        }
+    }
+}
@@ -0,0 +1,551 @@
+package com.jaime;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead log local de los vuelos pendientes de escribir en MySQL (ver
+ * {@link Config#WAL_DIR}).
+ * <p>
+ * {@link FlightWriteService#submit} añade aquí los vuelos nuevos o cambiados
+ * de cada poll antes de tocar la base de datos, y el poll se da por bueno en
+ * cuanto están en el log. Un {@link WalReplayer} los lee en orden y los
+ * escribe en lotes; si MySQL no responde, los reintenta hasta que vuelve. Así
+ * una parada de la base de datos no frena la ingesta ni pierde los cambios de
+ * puerta intermedios.
+ * <p>
+ * El log son segmentos de {@link Config#WAL_SEGMENT_MB} MB proyectados en
+ * memoria (<code>MappedByteBuffer</code>): añadir un vuelo es copiar sus bytes,
+ * sin una llamada al sistema por vuelo. Cada registro es
+ * <pre>
+ * longitud (int) | CRC32C (int) | secuencia (long) | dirección (byte) | campos del vuelo
+ * </pre>
+ * Al arrancar se recorre cada segmento hasta el primer registro incompleto o
+ * con el CRC incorrecto (una escritura cortada por una caída). Lo copiado en
+ * el mapa sobrevive a la muerte del proceso; con {@link Config#WAL_SYNC},
+ * además, cada poll se fuerza a disco y sobrevive a la del sistema.
+ * <p>
+ * El fichero <code>checkpoint</code> guarda la secuencia del último registro
+ * aplicado, y los segmentos aplicados por completo se borran. Cuando se
+ * acumulan segmentos cerrados sin aplicar, {@link #compact} los reescribe en
+ * uno: de cada <code>unique_id</code> conserva la última versión y las que
+ * cambian de puerta respecto a la anterior, de modo que
+ * <code>gate_history_*</code> recibe los mismos cambios que sin la caída.
+ *
+ * @author Jaime Villalba
+ */
+public final class WriteAheadLog implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(WriteAheadLog.class.getName());
+    private static final String SUFFIX = ".wal";
+    private static final String CHECKPOINT = "checkpoint";
+    // Longitud y CRC de cada registro
+    private static final int HEADER = 8;
+    private static final int MIN_SEGMENT_BYTES = 1024 * 1024;
+
+    /**
+     * Un vuelo leído del log.
+     */
+    static final class Record {
+
+        private final long seq;
+        private final Direction direction;
+        private final AvinorFlight flight;
+
+        private Record(long seq, Direction direction, AvinorFlight flight) {
+            this.seq = seq;
+            this.direction = direction;
+            this.flight = flight;
+        }
+
+        long getSeq() {
+            return seq;
+        }
+
+        Direction getDirection() {
+            return direction;
+        }
+
+        AvinorFlight getFlight() {
+            return flight;
+        }
+    }
+
+    // Un fichero del log; end es la posición tras el último registro válido.
+    private static final class Segment {
+
+        final Path path;
+        final MappedByteBuffer buffer;
+        int end;
+        long lastSeq;
+
+        Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Lectura secuencial del log a partir de una secuencia. La usa un único
+     * hilo; sigue funcionando aunque se compacten o borren segmentos.
+     */
+    final class Cursor {
+
+        private Segment segment;
+        private int position;
+        private long last;
+
+        private Cursor(long after) {
+            this.last = after;
+        }
+
+        /**
+         * Añade a <code>out</code> hasta <code>max</code> registros
+         * posteriores al último leído, sin esperar.
+         *
+         * @return registros añadidos
+         */
+        int next(List<Record> out, int max) {
+            synchronized (WriteAheadLog.this) {
+                if (segment == null || !segments.contains(segment)) {
+                    // Primera lectura, o el segmento se compactó: se vuelve a buscar desde el principio.
+                    segment = segments.get(0);
+                    position = 0;
+                }
+                int added = 0;
+                while (added < max) {
+                    if (position >= segment.end) {
+                        int index = segments.indexOf(segment);
+                        if (index == segments.size() - 1) {
+                            break;
+                        }
+                        segment = segments.get(index + 1);
+                        position = 0;
+                        continue;
+                    }
+                    Record record = decode(segment.buffer, position);
+                    position += HEADER + segment.buffer.getInt(position);
+                    if (record.seq > last) {
+                        out.add(record);
+                        last = record.seq;
+                        added++;
+                    }
+                }
+                return added;
+            }
+        }
+
+        /**
+         * @return secuencia del último registro leído
+         */
+        long getLast() {
+            return last;
+        }
+    }
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final boolean sync;
+    private final List<Segment> segments = new ArrayList<>();
+    private final ByteBuffer scratch = ByteBuffer.allocate(64 * 1024);
+    private final CRC32C crc = new CRC32C();
+    private long nextSeq;
+    private volatile long lastSeq;
+    private volatile long applied;
+    private volatile int segmentCount;
+    // Segmentos cerrados que quedaron tras la última compactación (o intento sin nada que descartar)
+    private int compactedSegments;
+    private boolean closed;
+    private final Metrics.Counter appended;
+    private final Metrics.Counter compacted;
+
+    /**
+     * Abre el log, recuperando lo que haya en el directorio.
+     *
+     * @param dir directorio del log; se crea si no existe
+     * @param segmentBytes tamaño de cada segmento
+     * @param sync cierto para forzar a disco cada {@link #append}
+     */
+    WriteAheadLog(Path dir, int segmentBytes, boolean sync) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = Math.max(MIN_SEGMENT_BYTES, segmentBytes);
+        this.sync = sync;
+        Files.createDirectories(dir);
+        recover();
+        Metrics metrics = Metrics.registry();
+        appended = metrics.counter("ingest_wal_appended_total", "Vuelos añadidos al WAL");
+        compacted = metrics.counter("ingest_wal_compacted_total", "Vuelos descartados al compactar el WAL");
+        metrics.gauge("ingest_wal_lag", "Vuelos del WAL pendientes de aplicar en MySQL", this::getLag);
+        metrics.gauge("ingest_wal_segments", "Segmentos del WAL en disco", () -> segmentCount);
+    }
+
+    /**
+     * @return el log de {@link Config#WAL_DIR}, o <code>null</code> si está
+     * desactivado
+     */
+    public static WriteAheadLog fromConfig() {
+        if (Config.WAL_DIR.isBlank()) {
+            return null;
+        }
+        try {
+            return new WriteAheadLog(Path.of(Config.WAL_DIR), Config.WAL_SEGMENT_MB * 1024 * 1024, Config.WAL_SYNC);
+        } catch (IOException ex) {
+            // Sin el WAL configurado no se arranca: la ingesta perdería la garantía que se ha pedido.
+            throw new UncheckedIOException("No se pudo abrir el WAL en " + Config.WAL_DIR, ex);
+        }
+    }
+
+    private void recover() throws IOException {
+        Path checkpoint = dir.resolve(CHECKPOINT);
+        applied = Files.exists(checkpoint) ? Long.parseLong(Files.readString(checkpoint).trim()) : 0;
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            files.forEach(paths::add);
+        }
+        paths.sort(Comparator.comparingLong(WriteAheadLog::firstSeq));
+        long last = applied;
+        for (int i = 0; i < paths.size(); i++) {
+            Segment segment = open(paths.get(i), 0);
+            boolean active = i == paths.size() - 1;
+            scan(segment);
+            // Aplicado por completo, vacío o sobrante de una compactación interrumpida (ya contenido en el anterior)
+            if (!active && segment.lastSeq <= last) {
+                Files.delete(segment.path);
+                continue;
+            }
+            last = Math.max(last, segment.lastSeq);
+            segments.add(segment);
+        }
+        nextSeq = last + 1;
+        lastSeq = last;
+        if (segments.isEmpty()) {
+            segments.add(open(segmentPath(nextSeq), segmentBytes));
+        }
+        segmentCount = segments.size();
+        LogEvent.info(LOGGER, "wal_open", "dir", dir.toString(), "segments", segments.size(), "applied", applied,
+                "lag", getLag());
+    }
+
+    // Deja end y lastSeq tras el último registro válido del segmento.
+    private void scan(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        while (position + HEADER <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER + length > buffer.capacity()) {
+                break;
+            }
+            ByteBuffer payload = buffer.duplicate();
+            payload.limit(position + HEADER + length).position(position + HEADER);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                LogEvent.log(LOGGER, Level.WARNING, "wal_truncated", "segment", segment.path.getFileName().toString(),
+                        "position", position);
+                break;
+            }
+            segment.lastSeq = buffer.getLong(position + HEADER);
+            position += HEADER + length;
+        }
+        segment.end = position;
+    }
+
+    /**
+     * Añade los vuelos de un poll al log.
+     *
+     * @return secuencia del último vuelo añadido
+     * @throws IllegalStateException si el log ya se cerró
+     */
+    synchronized long append(Direction direction, List<AvinorFlight> flights) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("El WAL está cerrado");
+        }
+        Segment segment = segments.get(segments.size() - 1);
+        int start = segment.end;
+        for (AvinorFlight flight : flights) {
+            scratch.clear();
+            scratch.putLong(nextSeq).put((byte) direction.getCode().charAt(0));
+            encode(flight);
+            int length = scratch.position();
+            if (segment.end + HEADER + length > segment.buffer.capacity()) {
+                force(segment, start);
+                segment = open(segmentPath(nextSeq), segmentBytes);
+                segments.add(segment);
+                segmentCount = segments.size();
+                start = 0;
+            }
+            crc.reset();
+            crc.update(scratch.array(), 0, length);
+            ByteBuffer out = segment.buffer.duplicate();
+            out.position(segment.end);
+            out.putInt(length).putInt((int) crc.getValue()).put(scratch.array(), 0, length);
+            // Marca de fin, por si tras el registro quedan restos de una escritura cortada
+            if (out.remaining() >= 4) {
+                out.putInt(out.position(), 0);
+            }
+            segment.end = out.position();
+            segment.lastSeq = nextSeq++;
+        }
+        force(segment, start);
+        appended.add(flights.size());
+        lastSeq = nextSeq - 1;
+        notifyAll();
+        return lastSeq;
+    }
+
+    private void force(Segment segment, int from) {
+        if (sync && segment.end > from) {
+            segment.buffer.force(from, segment.end - from);
+        }
+    }
+
+    /**
+     * Espera a que haya registros posteriores a <code>after</code>.
+     *
+     * @return cierto si los hay; falso si se agotó el tiempo o el log se cerró
+     */
+    synchronized boolean awaitRecords(long after, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (lastSeq <= after && !closed) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (millis <= 0) {
+                return false;
+            }
+            wait(millis);
+        }
+        return lastSeq > after;
+    }
+
+    /**
+     * @param after secuencia del último registro ya procesado
+     * @return un lector de los registros posteriores
+     */
+    Cursor cursor(long after) {
+        return new Cursor(after);
+    }
+
+    /**
+     * Registra que todos los vuelos hasta <code>seq</code> están en MySQL y
+     * borra los segmentos que ya no hacen falta. Si el checkpoint no llega a
+     * disco, esos vuelos se vuelven a aplicar en el siguiente arranque, sin
+     * efecto.
+     */
+    void markApplied(long seq) throws IOException {
+        applied = seq;
+        Path checkpoint = dir.resolve(CHECKPOINT);
+        Path temp = dir.resolve(CHECKPOINT + ".tmp");
+        Files.writeString(temp, Long.toString(seq));
+        Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        List<Segment> obsolete = new ArrayList<>();
+        synchronized (this) {
+            while (segments.size() > 1 && segments.get(0).lastSeq <= seq) {
+                obsolete.add(segments.remove(0));
+            }
+            segmentCount = segments.size();
+            compactedSegments = Math.min(compactedSegments, segments.size() - 1);
+        }
+        for (Segment segment : obsolete) {
+            Files.deleteIfExists(segment.path);
+        }
+    }
+
+    /**
+     * Compacta los segmentos cerrados (todos menos el activo) si se han
+     * cerrado al menos <code>minSegments</code> desde la última compactación.
+     * Los segmentos cerrados son inmutables, así que se leen y reescriben sin
+     * bloquear {@link #append}. Sólo debe llamarlo el hilo que llama a
+     * {@link #markApplied}.
+     *
+     * @param minSegments 0 no compacta nunca
+     * @return vuelos descartados
+     */
+    int compact(int minSegments) throws IOException {
+        List<Segment> sealed;
+        synchronized (this) {
+            if (minSegments <= 0 || segments.size() - 1 - compactedSegments < minSegments) {
+                return 0;
+            }
+            sealed = new ArrayList<>(segments.subList(0, segments.size() - 1));
+            compactedSegments = sealed.size();
+        }
+        List<Record> records = new ArrayList<>();
+        List<ByteBuffer> raw = new ArrayList<>();
+        Map<String, Record> latest = new HashMap<>();
+        for (Segment segment : sealed) {
+            for (int position = 0; position < segment.end; ) {
+                int length = segment.buffer.getInt(position);
+                Record record = decode(segment.buffer, position);
+                if (record.seq > applied) {
+                    ByteBuffer bytes = segment.buffer.duplicate();
+                    bytes.limit(position + HEADER + length).position(position);
+                    records.add(record);
+                    raw.add(bytes.slice());
+                    latest.put(key(record), record);
+                }
+                position += HEADER + length;
+            }
+        }
+        // De cada vuelo: la última versión y las que cambian de puerta respecto a la anterior.
+        List<ByteBuffer> kept = new ArrayList<>();
+        Map<String, String> gates = new HashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            Record record = records.get(i);
+            String key = key(record);
+            String previousGate = gates.put(key, record.flight.getGate());
+            if (previousGate == null || !previousGate.equals(record.flight.getGate()) || latest.get(key) == record) {
+                kept.add(raw.get(i));
+            }
+        }
+        int dropped = records.size() - kept.size();
+        if (dropped == 0) {
+            return 0;
+        }
+        // Ocupa el lugar del primer segmento; si se corta antes de borrar los demás, recover() los descarta.
+        Path target = sealed.get(0).path;
+        Path temp = dir.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] buffers = kept.toArray(new ByteBuffer[0]);
+            long total = 0;
+            for (ByteBuffer buffer : buffers) {
+                total += buffer.remaining();
+            }
+            for (long written = 0; written < total; ) {
+                written += channel.write(buffers);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Segment merged = open(target, 0);
+        scan(merged);
+        synchronized (this) {
+            segments.subList(0, sealed.size()).clear();
+            segments.add(0, merged);
+            segmentCount = segments.size();
+            compactedSegments = 1;
+        }
+        for (Segment segment : sealed.subList(1, sealed.size())) {
+            Files.deleteIfExists(segment.path);
+        }
+        compacted.add(dropped);
+        LogEvent.info(LOGGER, "wal_compact", "segments", sealed.size(), "kept", kept.size(), "dropped", dropped);
+        return dropped;
+    }
+
+    private static String key(Record record) {
+        return record.direction.getCode() + record.flight.getUniqueId();
+    }
+
+    /**
+     * @return secuencia del último vuelo aplicado en MySQL
+     */
+    long getApplied() {
+        return applied;
+    }
+
+    /**
+     * @return vuelos añadidos y aún no aplicados (antes de compactar)
+     */
+    long getLag() {
+        return lastSeq - applied;
+    }
+
+    /**
+     * Deja de aceptar vuelos y fuerza a disco lo escrito.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        segments.get(segments.size() - 1).buffer.force();
+        notifyAll();
+    }
+
+    private Path segmentPath(long firstSeq) {
+        return dir.resolve(String.format("%020d%s", firstSeq, SUFFIX));
+    }
+
+    private static long firstSeq(Path path) {
+        String name = path.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException ex) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    // size 0: el tamaño actual del fichero (segmentos ya escritos y compactados)
+    private static Segment open(Path path, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long length = size > 0 ? size : channel.size();
+            return new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, length));
+        }
+    }
+
+    private void encode(AvinorFlight flight) {
+        putString(flight.getUniqueId());
+        putString(flight.getAirline());
+        putString(flight.getFlightId());
+        putString(flight.getDomInt());
+        scratch.putLong(flight.getScheduleEpoch());
+        putString(flight.getArrDep());
+        putString(flight.getAirport());
+        putString(flight.getCheckIn());
+        putString(flight.getGate());
+        putString(flight.getStatusCode());
+        scratch.putLong(flight.getStatusEpoch());
+        putString(flight.getBelt());
+        scratch.put((byte) (flight.isDelayed() ? 1 : 0));
+    }
+
+    private void putString(String value) {
+        if (value == null) {
+            scratch.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        scratch.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static Record decode(MappedByteBuffer buffer, int position) {
+        ByteBuffer in = buffer.duplicate();
+        in.position(position + HEADER);
+        long seq = in.getLong();
+        Direction direction = Direction.fromCode(String.valueOf((char) in.get()));
+        AvinorFlight flight = new AvinorFlight(getString(in), getString(in), getString(in), getString(in),
+                in.getLong(), getString(in), getString(in), getString(in), getString(in), getString(in),
+                in.getLong(), getString(in), in.get() != 0);
+        return new Record(seq, direction, flight);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,284 @@
+package com.jaime;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cola acotada entre la etapa de comparación (polls) y la de escritura
+ * ({@link FlightWriteService}).
+ * <p>
+ * Los vuelos pendientes se guardan por dirección y <code>unique_id</code>. Si
+ * llega una versión nueva de un vuelo que aún no se ha escrito, sustituye a la
+ * anterior (se fusionan): sólo se escribe la última, una vez. Si el vuelo ya se
+ * está escribiendo, la versión nueva espera a que termine esa escritura, de
+ * modo que nunca hay dos escrituras del mismo vuelo a la vez ni fuera de
+ * orden.
+ * <p>
+ * Cuando la cola llega a su capacidad, el poll que encola con {@link #offer}
+ * se bloquea hasta que los escritores liberan sitio (backpressure): un MySQL
+ * lento frena la ingesta en lugar de acumular memoria sin límite.
+ * <p>
+ * Cada llamada a {@link #offer} devuelve un futuro que se completa cuando todos
+ * sus vuelos (o las versiones que los sustituyeron) se han confirmado en la
+ * base de datos, o falla con el error de la escritura.
+ *
+ * @author Jaime Villalba
+ */
+final class WriteBehindQueue {
+
+    /**
+     * Vuelos que un escritor ha sacado de la cola para escribirlos en una
+     * transacción.
+     */
+    static final class Batch {
+
+        private final Direction direction;
+        private final List<Pending> entries;
+
+        private Batch(Direction direction, List<Pending> entries) {
+            this.direction = direction;
+            this.entries = entries;
+        }
+
+        Direction getDirection() {
+            return direction;
+        }
+
+        List<AvinorFlight> getFlights() {
+            List<AvinorFlight> flights = new ArrayList<>(entries.size());
+            for (Pending entry : entries) {
+                flights.add(entry.flight);
+            }
+            return flights;
+        }
+    }
+
+    // Un vuelo pendiente y los offer() que esperan a que se escriba.
+    private static final class Pending {
+
+        AvinorFlight flight;
+        final List<Ticket> tickets = new ArrayList<>(1);
+
+        Pending(AvinorFlight flight, Ticket ticket) {
+            this.flight = flight;
+            tickets.add(ticket);
+        }
+    }
+
+    // Seguimiento de un offer(): cuántos de sus vuelos quedan por escribir.
+    private static final class Ticket {
+
+        final CompletableFuture<Integer> future = new CompletableFuture<>();
+        int remaining;
+        int written;
+        boolean sealed;
+
+        void flightWritten() {
+            remaining--;
+            written++;
+            completeIfDone();
+        }
+
+        void completeIfDone() {
+            if (sealed && remaining == 0) {
+                future.complete(written);
+            }
+        }
+    }
+
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notEmpty = lock.newCondition();
+    private final Map<Direction, LinkedHashMap<String, Pending>> pending = new EnumMap<>(Direction.class);
+    private final Map<Direction, Set<String>> inFlight = new EnumMap<>(Direction.class);
+    private int size;
+    private long coalesced;
+    private int nextDirection;
+    private boolean closed;
+
+    /**
+     * @param capacity máximo de vuelos pendientes de escribir antes de bloquear
+     * a quien encola
+     */
+    WriteBehindQueue(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        for (Direction direction : Direction.values()) {
+            pending.put(direction, new LinkedHashMap<>());
+            inFlight.put(direction, new HashSet<>());
+        }
+    }
+
+    /**
+     * Encola los vuelos de un poll, bloqueando mientras la cola esté llena.
+     *
+     * @return futuro con el número de vuelos del poll que se escribieron
+     * @throws IllegalStateException si la cola ya se cerró
+     */
+    CompletableFuture<Integer> offer(Direction direction, List<AvinorFlight> flights) throws InterruptedException {
+        Ticket ticket = new Ticket();
+        Map<String, Pending> byId = pending.get(direction);
+        lock.lockInterruptibly();
+        try {
+            for (AvinorFlight flight : flights) {
+                if (closed) {
+                    throw new IllegalStateException("La cola de escritura está cerrada");
+                }
+                Pending existing = byId.get(flight.getUniqueId());
+                if (existing != null) {
+                    // Versión más reciente de un vuelo aún no escrito: sustituye a la anterior.
+                    existing.flight = flight;
+                    if (!existing.tickets.contains(ticket)) {
+                        existing.tickets.add(ticket);
+                        ticket.remaining++;
+                    }
+                    coalesced++;
+                    continue;
+                }
+                while (size >= capacity && !closed) {
+                    notFull.await();
+                }
+                if (closed) {
+                    throw new IllegalStateException("La cola de escritura está cerrada");
+                }
+                byId.put(flight.getUniqueId(), new Pending(flight, ticket));
+                ticket.remaining++;
+                size++;
+                notEmpty.signal();
+            }
+            ticket.sealed = true;
+            ticket.completeIfDone();
+        } finally {
+            lock.unlock();
+        }
+        return ticket.future;
+    }
+
+    /**
+     * Saca hasta <code>max</code> vuelos de una misma dirección que no se estén
+     * escribiendo ya. Las direcciones se atienden por turnos.
+     *
+     * @return el lote, o <code>null</code> si se agotó el tiempo de espera o la
+     * cola está cerrada y vacía
+     */
+    Batch take(int max, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                Batch batch = poll(Math.max(1, max));
+                if (batch != null) {
+                    return batch;
+                }
+                if ((closed && size == 0) || nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Batch poll(int max) {
+        Direction[] directions = Direction.values();
+        for (int i = 0; i < directions.length; i++) {
+            Direction direction = directions[(nextDirection + i) % directions.length];
+            Set<String> busy = inFlight.get(direction);
+            List<Pending> entries = new ArrayList<>();
+            Iterator<Pending> it = pending.get(direction).values().iterator();
+            while (it.hasNext() && entries.size() < max) {
+                Pending entry = it.next();
+                if (busy.add(entry.flight.getUniqueId())) {
+                    it.remove();
+                    entries.add(entry);
+                }
+            }
+            if (!entries.isEmpty()) {
+                nextDirection = (nextDirection + i + 1) % directions.length;
+                size -= entries.size();
+                notFull.signalAll();
+                return new Batch(direction, entries);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Marca un lote como terminado.
+     *
+     * @param error <code>null</code> si el lote se confirmó; si no, los polls
+     * que esperaban esos vuelos fallan con este error
+     */
+    void complete(Batch batch, Throwable error) {
+        lock.lock();
+        try {
+            Set<String> busy = inFlight.get(batch.direction);
+            for (Pending entry : batch.entries) {
+                busy.remove(entry.flight.getUniqueId());
+                for (Ticket ticket : entry.tickets) {
+                    if (error == null) {
+                        ticket.flightWritten();
+                    } else {
+                        ticket.future.completeExceptionally(error);
+                    }
+                }
+            }
+            // Puede haber versiones nuevas de estos vuelos esperando a que terminara la escritura.
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deja de aceptar vuelos. Los escritores siguen vaciando lo pendiente y
+     * {@link #take} devuelve <code>null</code> cuando no queda nada.
+     */
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return vuelos pendientes de escribir (sin contar los que se están
+     * escribiendo)
+     */
+    int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return vuelos que se fusionaron con una versión anterior pendiente desde
+     * el arranque
+     */
+    long getCoalesced() {
+        lock.lock();
+        try {
+            return coalesced;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
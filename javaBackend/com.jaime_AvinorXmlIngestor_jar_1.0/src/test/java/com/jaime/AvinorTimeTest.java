@@ -0,0 +1,98 @@
+package com.jaime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests de {@link AvinorTime} contra <code>java.time</code>.
+ *
+ * @author Jaime Villalba
+ */
+class AvinorTimeTest {
+
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss");
+
+    @Test
+    void matchesJavaTimeOnEdgeDates() {
+        String[] dates = {
+            "1970-01-01T00:00:00", // epoch 0
+            "1969-12-31T23:59:59",
+            "1970-01-01T00:00:01",
+            "1900-02-28T12:00:00", // 1900 no es bisiesto
+            "1900-03-01T00:00:00",
+            "1600-02-29T06:30:00", // 1600 sí
+            "2000-02-29T23:59:59",
+            "2000-03-01T00:00:00",
+            "2024-02-29T10:15:30",
+            "2024-12-31T23:59:59",
+            "2025-01-16T10:00:00",
+            "0001-01-01T00:00:00",
+            "9999-12-31T23:59:59"
+        };
+        for (String date : dates) {
+            assertMatches(LocalDateTime.parse(date));
+        }
+    }
+
+    @Test
+    void matchesJavaTimeEveryDayFrom1899To2101() {
+        LocalTime[] times = {LocalTime.MIDNIGHT, LocalTime.of(12, 34, 56), LocalTime.of(23, 59, 59)};
+        for (LocalDate day = LocalDate.of(1899, 1, 1); day.getYear() <= 2101; day = day.plusDays(1)) {
+            for (LocalTime time : times) {
+                assertMatches(day.atTime(time));
+            }
+        }
+    }
+
+    @Test
+    void acceptsTheSuffixesOfTheFeedAndMySql() {
+        long expected = LocalDateTime.of(2025, 1, 16, 10, 0).toEpochSecond(ZoneOffset.UTC);
+        assertEquals(expected, AvinorTime.parseEpochSeconds("2025-01-16T10:00:00Z"));
+        assertEquals(expected, AvinorTime.parseEpochSeconds("2025-01-16T10:00:00.123Z"));
+        assertEquals(expected, AvinorTime.parseEpochSeconds("2025-01-16T10:00:00.5"));
+        assertEquals(expected, AvinorTime.parseEpochSeconds("2025-01-16 10:00:00"));
+    }
+
+    @Test
+    void rejectsInvalidDates() {
+        String[] invalid = {
+            null,
+            "",
+            "2025-01-16",
+            "1900-02-29T00:00:00",
+            "2023-02-29T00:00:00",
+            "2024-04-31T00:00:00",
+            "2024-13-01T00:00:00",
+            "2024-00-10T00:00:00",
+            "2024-01-00T00:00:00",
+            "2024-01-01T24:00:00",
+            "2024-01-01T23:60:00",
+            "2024-01-01T23:59:60",
+            "2024-01-01X10:00:00",
+            "2024-01-01T10:00:00+01:00",
+            "2024-01-01T10:00:00ZZ"
+        };
+        for (String text : invalid) {
+            assertEquals(AvinorTime.NONE, AvinorTime.parseEpochSeconds(text), text);
+        }
+        assertEquals("N/A", AvinorTime.format(AvinorTime.NONE));
+        assertNull(AvinorTime.toLocalDateTime(AvinorTime.NONE));
+        assertNull(AvinorTime.toLocalTime(AvinorTime.NONE));
+    }
+
+    private static void assertMatches(LocalDateTime dateTime) {
+        String text = FORMAT.format(dateTime);
+        long epochSeconds = dateTime.toEpochSecond(ZoneOffset.UTC);
+        assertEquals(epochSeconds, AvinorTime.parseEpochSeconds(text + "Z"), text);
+        assertEquals(text, AvinorTime.format(epochSeconds));
+        assertEquals(dateTime, AvinorTime.toLocalDateTime(epochSeconds));
+        assertEquals(dateTime.toLocalTime(), AvinorTime.toLocalTime(epochSeconds));
+    }
+}
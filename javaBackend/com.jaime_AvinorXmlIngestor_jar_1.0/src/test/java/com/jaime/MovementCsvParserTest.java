@@ -0,0 +1,165 @@
+package com.jaime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests de {@link MovementCsvParser} con filas de
+ * <code>jsScraping/tidyScraper/csv/movements.csv</code>.
+ *
+ * @author Jaime Villalba
+ */
+class MovementCsvParserTest {
+
+    private static final String HEADER = "Flight;Date;From;To;AC reg;STD;ATD;STA;ATA;TOFF;TDWN;ATD +/-;ATA +/-;"
+            + "BLK +/-;TAXI -> TOFF;TAXI -> ATA;Delaycodes;CNL;";
+    private static final String[] ROWS = {
+        "D82882;2025-03-25;HEL;AGP;SERTK;0455 ; 0450;0940 ; 0929;0509;0926;-5;-11;-6;+19;+3;;;",
+        "D83999;2025-03-25;DWC;ARN;SERTO;0520 ; 0520;1255 ; 1314;0531;1308;0;+19;19;+11;+6;;;",
+        "DY421;2025-03-25;MOL;OSL;LNNHE;0545 ; 0544;0640 ; 0802;0000;0000;-1;+82;83;0;0;;CNL;",
+        "DY522;2025-03-25;OSL;SVG;LNENU;0600 ; 0603;0655 ; 0658;0613;0652;+3;+3;0;+10;+6;0003/FT;;",
+        "DY183;2025-03-25;HAU;OSL;LNNIL;0850;;0945;;0000;0000;0;0;0;0;0;;CNL;"
+    };
+
+    private static ForkJoinPool pool;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void stopPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    void parsesTidyRows() throws IOException {
+        MovementCsvParser.Result result = MovementCsvParser.parse(write("movements.csv", "\n", ROWS), pool);
+        assertEquals(0, result.getSkipped());
+        assertRows(result.getMovements());
+    }
+
+    @Test
+    void parsesCrlfLineEndings() throws IOException {
+        MovementCsvParser.Result result = MovementCsvParser.parse(write("movements.csv", "\r\n", ROWS), pool);
+        assertEquals(0, result.getSkipped());
+        assertRows(result.getMovements());
+    }
+
+    @Test
+    void skipsRowsWithoutFlightOrDate() throws IOException {
+        MovementCsvParser.Result result = MovementCsvParser.parse(write("movements.csv", "\n", ROWS[0], "",
+                ";2025-03-25;HEL;AGP;SERTK;0455 ; 0450;0940 ; 0929;0509;0926;-5;-11;-6;+19;+3;;;",
+                "D82882;2025-02-30;HEL;AGP;SERTK;0455 ; 0450;0940 ; 0929;0509;0926;-5;-11;-6;+19;+3;;;",
+                "D82882;2025-03-25;HEL", ROWS[1]), pool);
+        assertEquals(3, result.getSkipped());
+        assertEquals(2, result.getMovements().size());
+        assertEquals("D82882", result.getMovements().get(0).getFlight());
+        assertEquals("D83999", result.getMovements().get(1).getFlight());
+    }
+
+    @Test
+    void keepsFileOrderAcrossChunks() throws IOException {
+        // Unos 3,5 MB: varios trozos de al menos 1 MB, con filas partidas en cada frontera
+        int count = 40_000;
+        String[] rows = new String[count];
+        for (int i = 0; i < count; i++) {
+            String row = ROWS[i % ROWS.length];
+            rows[i] = "X" + i + row.substring(row.indexOf(';'));
+        }
+        Path file = write("large.csv", i -> i % 2 == 0 ? "\n" : "\r\n", rows);
+        assertTrue(Files.size(file) > 3 * 1024 * 1024);
+
+        MovementCsvParser.Result result = MovementCsvParser.parse(file, pool);
+        assertEquals(0, result.getSkipped());
+        List<Movement> movements = result.getMovements();
+        assertEquals(count, movements.size());
+        for (int i = 0; i < count; i++) {
+            Movement movement = movements.get(i);
+            assertEquals("X" + i, movement.getFlight());
+            assertEquals(i % ROWS.length == 2 || i % ROWS.length == 4 ? "CNL" : "", movement.getCnl());
+        }
+    }
+
+    private static void assertRows(List<Movement> movements) {
+        assertEquals(ROWS.length, movements.size());
+
+        Movement first = movements.get(0);
+        assertEquals("D82882", first.getFlight());
+        assertEquals(LocalDate.of(2025, 3, 25), first.getDate());
+        assertEquals("HEL", first.getFrom());
+        assertEquals("AGP", first.getTo());
+        assertEquals("SERTK", first.getAcReg());
+        // "0455 ; 0450" son STD y ATD
+        assertEquals(4 * 60 + 55, first.getStd());
+        assertEquals(4 * 60 + 50, first.getAtd());
+        assertEquals(9 * 60 + 40, first.getSta());
+        assertEquals(9 * 60 + 29, first.getAta());
+        assertEquals(5 * 60 + 9, first.getToff());
+        assertEquals(9 * 60 + 26, first.getTdwn());
+        assertEquals(-5, first.getAtdOffset());
+        assertEquals(-11, first.getAtaOffset());
+        assertEquals(-6, first.getBlkOffset());
+        assertEquals(19, first.getTaxiToff());
+        assertEquals(3, first.getTaxiAta());
+        assertEquals("", first.getDelayCodes());
+        assertEquals("", first.getCnl());
+
+        Movement onTime = movements.get(1);
+        assertEquals(0, onTime.getAtdOffset());
+        assertEquals(19, onTime.getAtaOffset());
+        assertEquals(19, onTime.getBlkOffset());
+
+        Movement cancelled = movements.get(2);
+        assertEquals("DY421", cancelled.getFlight());
+        assertEquals(0, cancelled.getToff());
+        assertEquals(0, cancelled.getTdwn());
+        assertEquals(82, cancelled.getAtaOffset());
+        assertEquals(0, cancelled.getTaxiToff());
+        assertEquals("", cancelled.getDelayCodes());
+        assertEquals("CNL", cancelled.getCnl());
+
+        assertEquals("0003/FT", movements.get(3).getDelayCodes());
+        assertEquals("", movements.get(3).getCnl());
+
+        // Sin ATD ni ATA
+        Movement noActuals = movements.get(4);
+        assertEquals(8 * 60 + 50, noActuals.getStd());
+        assertEquals(Movement.NONE, noActuals.getAtd());
+        assertEquals(9 * 60 + 45, noActuals.getSta());
+        assertEquals(Movement.NONE, noActuals.getAta());
+        assertEquals("CNL", noActuals.getCnl());
+    }
+
+    private Path write(String name, String lineEnd, String... rows) throws IOException {
+        return write(name, i -> lineEnd, rows);
+    }
+
+    private Path write(String name, IntFunction<String> lineEnd, String... rows)
+            throws IOException {
+        StringBuilder text = new StringBuilder(HEADER).append(lineEnd.apply(0));
+        for (int i = 0; i < rows.length; i++) {
+            text.append(rows[i]).append(lineEnd.apply(i));
+        }
+        Path file = dir.resolve(name);
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+        return file;
+    }
+}
@@ -0,0 +1,251 @@
+package com.jaime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests de {@link WriteAheadLog}: lectura de lo escrito, recuperación tras una
+ * escritura cortada y compactación.
+ *
+ * @author Jaime Villalba
+ */
+class WriteAheadLogTest {
+
+    // Segmentos del tamaño mínimo (1 MB): unas 13.000 versiones de un vuelo cada uno
+    private static final int SEGMENT_BYTES = 1024 * 1024;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsBackWhatWasAppended() throws IOException {
+        AvinorFlight arrival = flight("A1", "SK", "SK4035", "A12", "E", 1_737_021_600L, true);
+        AvinorFlight departure = new AvinorFlight("D1", "DY", "DY1302", "I", 1_737_025_200L, "D", "BGO",
+                null, null, null, AvinorTime.NONE, null, false);
+        try (WriteAheadLog wal = new WriteAheadLog(dir, SEGMENT_BYTES, true)) {
+            assertEquals(1, wal.append(Direction.ARRIVALS, List.of(arrival)));
+            assertEquals(2, wal.append(Direction.DEPARTURES, List.of(departure)));
+            assertEquals(2, wal.getLag());
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(dir, SEGMENT_BYTES, true)) {
+            List<WriteAheadLog.Record> records = read(wal);
+            assertEquals(2, records.size());
+            assertEquals(1, records.get(0).getSeq());
+            assertEquals(Direction.ARRIVALS, records.get(0).getDirection());
+            assertSameFlight(arrival, records.get(0).getFlight());
+            assertEquals(2, records.get(1).getSeq());
+            assertEquals(Direction.DEPARTURES, records.get(1).getDirection());
+            assertSameFlight(departure, records.get(1).getFlight());
+        }
+    }
+
+    @Test
+    void resumesAfterTheCheckpoint() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(dir, SEGMENT_BYTES, true)) {
+            wal.append(Direction.ARRIVALS, List.of(flight("A1", "A1", 0), flight("A2", "A2", 0),
+                    flight("A3", "A3", 0)));
+            wal.markApplied(2);
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(dir, SEGMENT_BYTES, true)) {
+            assertEquals(2, wal.getApplied());
+            assertEquals(1, wal.getLag());
+            List<WriteAheadLog.Record> records = read(wal);
+            assertEquals(1, records.size());
+            assertEquals("A3", records.get(0).getFlight().getUniqueId());
+        }
+    }
+
+    @Test
+    void discardsATornRecordAtTheEnd() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(dir, SEGMENT_BYTES, true)) {
+            wal.append(Direction.ARRIVALS, List.of(flight("A1", "A1", 0), flight("A2", "A2", 0),
+                    flight("A3", "A3", 0)));
+        }
+        // Último byte del tercer registro cambiado, como si la escritura se hubiera cortado a medias
+        Path segment = segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            int position = 0;
+            for (int i = 0; i < 2; i++) {
+                position += 8 + buffer.getInt(position);
+            }
+            int last = position + 8 + buffer.getInt(position) - 1;
+            buffer.put(last, (byte) (buffer.get(last) ^ 0xFF));
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(dir, SEGMENT_BYTES, true)) {
+            assertEquals(2, wal.getLag());
+            // Lo siguiente se escribe encima del registro descartado y con su secuencia
+            assertEquals(3, wal.append(Direction.ARRIVALS, List.of(flight("A4", "A4", 0))));
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(dir, SEGMENT_BYTES, true)) {
+            List<WriteAheadLog.Record> records = read(wal);
+            assertEquals(List.of("A1", "A2", "A4"), uniqueIds(records));
+            assertEquals(3, records.get(2).getSeq());
+        }
+    }
+
+    @Test
+    void compactionKeepsGateChangesAndTheLatestVersion() throws IOException {
+        int versions = 30_000;
+        List<String> gates;
+        try (WriteAheadLog wal = new WriteAheadLog(dir, SEGMENT_BYTES, false)) {
+            gates = appendVersions(wal, versions);
+            assertTrue(segments().size() >= 3, "hacen falta al menos dos segmentos cerrados");
+
+            int dropped = wal.compact(1);
+            assertTrue(dropped > 0);
+            assertEquals(versions, wal.getLag());
+            assertCompacted(read(wal), gates, versions - dropped);
+        }
+
+        // Tras reabrir se lee lo mismo
+        try (WriteAheadLog wal = new WriteAheadLog(dir, SEGMENT_BYTES, false)) {
+            List<WriteAheadLog.Record> records = read(wal);
+            assertTrue(records.size() < versions);
+            assertCompacted(records, gates, records.size());
+        }
+    }
+
+    @Test
+    void recoversFromACompactionCutBeforeDeletingTheOldSegments() throws IOException {
+        int versions = 30_000;
+        List<String> gates;
+        List<Path> leftovers = new ArrayList<>();
+        int kept;
+        try (WriteAheadLog wal = new WriteAheadLog(dir, SEGMENT_BYTES, false)) {
+            gates = appendVersions(wal, versions);
+            // Los segmentos cerrados que la compactación borra al terminar (todos menos el primero y el activo)
+            List<Path> segments = segments();
+            for (Path segment : segments.subList(1, segments.size() - 1)) {
+                Path copy = dir.resolve(segment.getFileName() + ".bak");
+                Files.copy(segment, copy);
+                leftovers.add(copy);
+            }
+            kept = versions - wal.compact(1);
+        }
+        // La caída deja los segmentos antiguos junto al compactado
+        for (Path copy : leftovers) {
+            String name = copy.getFileName().toString();
+            Files.move(copy, dir.resolve(name.substring(0, name.length() - ".bak".length())));
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(dir, SEGMENT_BYTES, false)) {
+            assertCompacted(read(wal), gates, kept);
+            assertEquals(2, segments().size());
+        }
+    }
+
+    // Versiones de un mismo vuelo con la puerta A1, luego B2 y luego A1 otra vez; devuelve la puerta de cada una.
+    private static List<String> appendVersions(WriteAheadLog wal, int versions) throws IOException {
+        List<String> gates = new ArrayList<>();
+        List<AvinorFlight> poll = new ArrayList<>();
+        for (int i = 0; i < versions; i++) {
+            String gate = i < versions / 3 || i >= 2 * versions / 3 ? "A1" : "B2";
+            gates.add(gate);
+            poll.add(flight("A1", gate, i));
+            if (poll.size() == 100) {
+                wal.append(Direction.ARRIVALS, poll);
+                poll.clear();
+            }
+        }
+        wal.append(Direction.ARRIVALS, poll);
+        return gates;
+    }
+
+    // Cada cambio de puerta sigue en el log con su versión, y la última versión también.
+    private static void assertCompacted(List<WriteAheadLog.Record> records, List<String> gates, int expected) {
+        assertEquals(expected, records.size());
+        List<Long> changes = new ArrayList<>();
+        for (int i = 0; i < gates.size(); i++) {
+            if (i == 0 || !gates.get(i).equals(gates.get(i - 1))) {
+                changes.add((long) i);
+            }
+        }
+        List<Long> keptChanges = new ArrayList<>();
+        String previous = null;
+        long previousSeq = 0;
+        for (WriteAheadLog.Record record : records) {
+            assertTrue(record.getSeq() > previousSeq);
+            previousSeq = record.getSeq();
+            AvinorFlight flight = record.getFlight();
+            // La hora de estado de cada versión es su posición
+            assertEquals(gates.get((int) flight.getStatusEpoch()), flight.getGate());
+            if (!flight.getGate().equals(previous)) {
+                keptChanges.add(flight.getStatusEpoch());
+                previous = flight.getGate();
+            }
+        }
+        assertEquals(changes, keptChanges);
+        assertEquals(gates.size(), records.get(records.size() - 1).getSeq());
+        assertEquals(gates.size() - 1, records.get(records.size() - 1).getFlight().getStatusEpoch());
+    }
+
+    private static AvinorFlight flight(String uniqueId, String gate, long statusEpoch) {
+        return new AvinorFlight(uniqueId, "SK", "SK4035", "D", 1_737_021_600L, "A", "TRD", null, gate, "E",
+                statusEpoch, null, false);
+    }
+
+    private static AvinorFlight flight(String uniqueId, String airline, String flightId, String gate,
+            String statusCode, long statusEpoch, boolean delayed) {
+        return new AvinorFlight(uniqueId, airline, flightId, "D", 1_737_021_600L, "A", "TRD", "C", gate,
+                statusCode, statusEpoch, "3", delayed);
+    }
+
+    private static List<WriteAheadLog.Record> read(WriteAheadLog wal) {
+        List<WriteAheadLog.Record> records = new ArrayList<>();
+        WriteAheadLog.Cursor cursor = wal.cursor(wal.getApplied());
+        while (cursor.next(records, 1000) > 0) {
+            // Hasta el final del log
+        }
+        return records;
+    }
+
+    private static List<String> uniqueIds(List<WriteAheadLog.Record> records) {
+        List<String> ids = new ArrayList<>();
+        for (WriteAheadLog.Record record : records) {
+            ids.add(record.getFlight().getUniqueId());
+        }
+        return ids;
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.wal")) {
+            files.forEach(paths::add);
+        }
+        paths.sort(null);
+        return paths;
+    }
+
+    private static void assertSameFlight(AvinorFlight expected, AvinorFlight actual) {
+        assertEquals(expected.getUniqueId(), actual.getUniqueId());
+        assertEquals(expected.getAirline(), actual.getAirline());
+        assertEquals(expected.getFlightId(), actual.getFlightId());
+        assertEquals(expected.getDomInt(), actual.getDomInt());
+        assertEquals(expected.getScheduleEpoch(), actual.getScheduleEpoch());
+        assertEquals(expected.getArrDep(), actual.getArrDep());
+        assertEquals(expected.getAirport(), actual.getAirport());
+        assertEquals(expected.getCheckIn(), actual.getCheckIn());
+        assertEquals(expected.getGate(), actual.getGate());
+        assertEquals(expected.getStatusCode(), actual.getStatusCode());
+        assertEquals(expected.getStatusEpoch(), actual.getStatusEpoch());
+        assertEquals(expected.getBelt(), actual.getBelt());
+        assertEquals(expected.isDelayed(), actual.isDelayed());
+    }
+}